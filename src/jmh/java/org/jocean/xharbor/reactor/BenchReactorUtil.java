@@ -0,0 +1,81 @@
+package org.jocean.xharbor.reactor;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.server.HttpServerBuilder.HttpTrade;
+import org.jocean.idiom.StopWatch;
+import org.jocean.xharbor.api.ParsedRequest;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.jocean.xharbor.api.TradeReactor.ReactContext;
+
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.noop.NoopTracerFactory;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * in-memory ReactContext & InOut for offline benchmark, same as TestReactorUtil.nullctx
+ * but with immediate scheduler, so parallel match run in caller thread.
+ */
+class BenchReactorUtil {
+    private static final Tracer NOOP_TRACER = NoopTracerFactory.create();
+
+    static ReactContext ctx(final int concurrent) {
+        return new ReactContext() {
+
+            @Override
+            public HttpTrade trade() {
+                return null;
+            }
+
+            @Override
+            public ParsedRequest request() {
+                return null;
+            }
+
+            @Override
+            public StopWatch watch() {
+                return null;
+            }
+
+            @Override
+            public Tracer tracer() {
+                return NOOP_TRACER;
+            }
+
+            @Override
+            public Span span() {
+                return NoopSpan.INSTANCE;
+            }
+
+            @Override
+            public Scheduler scheduler() {
+                return Schedulers.immediate();
+            }
+
+            @Override
+            public int concurrent() {
+                return concurrent;
+            }
+
+            @Override
+            public void bindOperation(final String operation) {
+            }};
+    }
+
+    static InOut io() {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return null;
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return null;
+            }};
+    }
+}
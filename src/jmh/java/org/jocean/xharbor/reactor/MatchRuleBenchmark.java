@@ -0,0 +1,92 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+/**
+ * first-match over N MatchRule (like CompositeForward before indexing) and via RouteIndex,
+ * request matched by the last rule, which is the worst case of linear scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchRuleBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int _ruleCount;
+
+    @Param({"false", "true"})
+    boolean _withHeaders;
+
+    @Setup
+    public void setup() {
+        this._forwards = new ForwardTrade[this._ruleCount];
+        for (int idx = 0; idx < this._ruleCount; idx++) {
+            final MatchRule matcher = new MatchRule();
+            matcher.setMethod(idx % 2 == 0 ? "GET" : "GET|POST");
+            matcher.setPath("^/api/service" + idx + "/");
+            if (this._withHeaders) {
+                matcher.setHeaders("x-app,app" + idx + ",x-canary,==null");
+            }
+            final ForwardData data = new ForwardData();
+            data._serviceName = "service" + idx;
+            data._matcher = matcher;
+            this._forwards[idx] = new ForwardTrade(data, null, null, null, null, null, null);
+        }
+        this._index = new RouteIndex(this._forwards);
+
+        final int last = this._ruleCount - 1;
+        this._request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET,
+                "/api/service" + last + "/users/1?from=bench");
+        if (this._withHeaders) {
+            this._request.headers().set("x-app", "app" + last);
+        }
+    }
+
+    @Benchmark
+    public ForwardTrade linearScan() {
+        return firstMatched(this._forwards, this._request);
+    }
+
+    @Benchmark
+    public ForwardTrade indexed() {
+        return firstMatched(this._index.candidatesOf(this._request.method().name(), this._request.uri()), this._request);
+    }
+
+    @Benchmark
+    public boolean singleRule() {
+        return this._forwards[this._ruleCount - 1].matcher().match(this._request);
+    }
+
+    private static ForwardTrade firstMatched(final ForwardTrade[] forwards, final HttpRequest req) {
+        for (final ForwardTrade fwdt : forwards) {
+            if (fwdt.matcher().match(req)) {
+                return fwdt;
+            }
+        }
+        return null;
+    }
+
+    private ForwardTrade[] _forwards;
+    private RouteIndex _index;
+    private HttpRequest _request;
+}
@@ -0,0 +1,92 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.jocean.xharbor.api.TradeReactor.ReactContext;
+import org.jocean.xharbor.relay.ReactUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rx.Single;
+
+/**
+ * CompositeReactor with N SingleReactors, only the last one matched & handled the trade.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReactorChainBenchmark {
+
+    private static class StubReactor extends SingleReactor {
+        StubReactor(final boolean handled) {
+            this._handled = handled;
+        }
+
+        @Override
+        public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+            return Single.just(this._handled);
+        }
+
+        @Override
+        public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+            return Single.just(this._handled ? io : null);
+        }
+
+        private final boolean _handled;
+    }
+
+    @Param({"1", "10", "50"})
+    int _reactorCount;
+
+    @Param({"1", "4"})
+    int _concurrent;
+
+    @Setup
+    public void setup() {
+        this._all = new CompositeReactor(ReactUtil.reactAll());
+        this._first = new CompositeReactor(ReactUtil.reactFirst());
+        this._parallelFirst = new CompositeReactor(ReactUtil.parallelFirst());
+        for (int idx = 0; idx < this._reactorCount; idx++) {
+            final boolean handled = idx == this._reactorCount - 1;
+            this._all.addReactor(new StubReactor(handled));
+            this._first.addReactor(new StubReactor(handled));
+            this._parallelFirst.addReactor(new StubReactor(handled));
+        }
+        this._ctx = BenchReactorUtil.ctx(this._concurrent);
+        this._io = BenchReactorUtil.io();
+    }
+
+    @Benchmark
+    public InOut reactAll() {
+        return this._all.react(this._ctx, this._io).toBlocking().value();
+    }
+
+    @Benchmark
+    public InOut reactFirst() {
+        return this._first.react(this._ctx, this._io).toBlocking().value();
+    }
+
+    @Benchmark
+    public InOut parallelFirst() {
+        return this._parallelFirst.react(this._ctx, this._io).toBlocking().value();
+    }
+
+    private CompositeReactor _all;
+    private CompositeReactor _first;
+    private CompositeReactor _parallelFirst;
+    private ReactContext _ctx;
+    private InOut _io;
+}
@@ -0,0 +1,76 @@
+package org.jocean.xharbor.reactor;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.http.Feature;
+import org.jocean.xharbor.api.Target;
+import org.jocean.xharbor.util.ServiceMemoImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rx.functions.Func0;
+
+/**
+ * ForwardTrade.selectTarget of each balance policy from 1 thread and under contention of 8 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectTargetBenchmark {
+
+    private static final Feature[] EMPTY_FEATURES = new Feature[0];
+
+    @Param({"2", "8", "32"})
+    int _targetCount;
+
+    @Param({TargetBalancer.ROUND_ROBIN, TargetBalancer.LEAST_OUTSTANDING, TargetBalancer.P2C, TargetBalancer.PEAK_EWMA})
+    String _policy;
+
+    @Setup
+    public void setup() {
+        final ForwardData data = new ForwardData();
+        data._matcher = new MatchRule();
+        data._balancePolicy = this._policy;
+        this._fwdt = new ForwardTrade(data, null, null, new ServiceMemoImpl(), null, null, null);
+        for (int idx = 0; idx < this._targetCount; idx++) {
+            final URI uri = URI.create("http://10.0.0." + (idx + 1) + ":8080");
+            this._fwdt.addTarget(new Target() {
+                @Override
+                public URI serviceUri() {
+                    return uri;
+                }
+                @Override
+                public Func0<Feature[]> features() {
+                    return () -> EMPTY_FEATURES;
+                }});
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Target selectTarget() {
+        return this._fwdt.selectTarget();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Target selectTargetContended() {
+        return this._fwdt.selectTarget();
+    }
+
+    private ForwardTrade _fwdt;
+}
@@ -0,0 +1,92 @@
+package org.jocean.xharbor.util;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.http.Feature;
+import org.jocean.xharbor.api.RelayMemo;
+import org.jocean.xharbor.api.RelayMemo.RESULT;
+import org.jocean.xharbor.api.RelayMemo.STEP;
+import org.jocean.xharbor.api.RoutingInfo;
+import org.jocean.xharbor.api.Target;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rx.functions.Func0;
+
+/**
+ * RelayMemoBuilderForStats.build (and build + record) for a fixed set of paths,
+ * register is no-op, so only cost of building memo is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RelayMemoBuilderBenchmark {
+
+    @Param({"1", "64"})
+    int _pathCount;
+
+    @Setup
+    public void setup() throws Exception {
+        this._builder = new RelayMemoBuilderForStats((name, getter) -> {});
+        final URI uri = URI.create("http://127.0.0.1:8080");
+        this._target = new Target() {
+            @Override
+            public URI serviceUri() {
+                return uri;
+            }
+            @Override
+            public Func0<Feature[]> features() {
+                return null;
+            }};
+        this._infos = new RoutingInfo[this._pathCount];
+        for (int idx = 0; idx < this._pathCount; idx++) {
+            final String path = "/api/service" + idx + "/users:query";
+            this._infos[idx] = new RoutingInfo() {
+                @Override
+                public String getMethod() {
+                    return "GET";
+                }
+                @Override
+                public String getPath() {
+                    return path;
+                }};
+        }
+    }
+
+    @Benchmark
+    public RelayMemo build() {
+        return this._builder.build(this._target, nextInfo());
+    }
+
+    @Benchmark
+    public RelayMemo buildAndRecord() {
+        final RelayMemo memo = this._builder.build(this._target, nextInfo());
+        memo.beginBizStep(STEP.ROUTING);
+        memo.incBizResult(RESULT.RELAY_SUCCESS, 1L);
+        return memo;
+    }
+
+    private RoutingInfo nextInfo() {
+        final RoutingInfo info = this._infos[this._cursor];
+        this._cursor = (this._cursor + 1) % this._infos.length;
+        return info;
+    }
+
+    private RelayMemoBuilderForStats _builder;
+    private Target _target;
+    private RoutingInfo[] _infos;
+    private int _cursor = 0;
+}
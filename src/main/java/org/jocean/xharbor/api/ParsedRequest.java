@@ -0,0 +1,17 @@
+/**
+ * 
+ */
+package org.jocean.xharbor.api;
+
+/**
+ * request line & peer info parsed once per trade,
+ * getPath() return path without matrix params
+ * @author isdom
+ *
+ */
+public interface ParsedRequest extends RoutingInfo {
+    public String uri();
+    public String path();
+    public String query();
+    public String peerip();
+}
@@ -4,8 +4,8 @@
 package org.jocean.xharbor.api;
 
 import java.util.ArrayList;
+import java.util.List;
 
-import org.jocean.idiom.InterfaceUtils;
 import org.jocean.idiom.stats.BizMemo;
 
 /**
@@ -39,20 +39,61 @@ public interface RelayMemo extends BizMemo<RelayMemo.STEP, RelayMemo.RESULT> {
             return new Builder() {
                 @Override
                 public RelayMemo build(final Target target, final RoutingInfo info) {
-                    return InterfaceUtils.combineImpls(RelayMemo.class, 
-                        new ArrayList<RelayMemo>() {
-                            private static final long serialVersionUID = 1L;
-                        {
-                            for (Builder b : builders) {
-                                if (null != b) {
-                                    final RelayMemo memo = b.build(target, info);
-                                    if (null != memo) {
-                                        this.add(memo);
+                    RelayMemo first = null;
+                    List<RelayMemo> memos = null;
+                    for (final Builder b : builders) {
+                        if (null != b) {
+                            final RelayMemo memo = b.build(target, info);
+                            if (null != memo) {
+                                if (null == first) {
+                                    first = memo;
+                                } else {
+                                    if (null == memos) {
+                                        memos = new ArrayList<>(builders.length);
+                                        memos.add(first);
                                     }
+                                    memos.add(memo);
                                 }
                             }
-                        }}.toArray(new RelayMemo[0]));
+                        }
+                    }
+                    // single memo used directly, no combined memo
+                    if (null != memos) {
+                        return new CompositeMemo(memos.toArray(new RelayMemo[0]));
+                    }
+                    return null != first ? first : CompositeMemo.NOP;
                 }};
         }
     }
+
+    static class CompositeMemo implements RelayMemo {
+        static final RelayMemo NOP = new CompositeMemo(new RelayMemo[0]);
+
+        CompositeMemo(final RelayMemo[] memos) {
+            this._memos = memos;
+        }
+
+        @Override
+        public void beginBizStep(final STEP step) {
+            for (final RelayMemo memo : this._memos) {
+                memo.beginBizStep(step);
+            }
+        }
+
+        @Override
+        public void endBizStep(final STEP step, final long ttl) {
+            for (final RelayMemo memo : this._memos) {
+                memo.endBizStep(step, ttl);
+            }
+        }
+
+        @Override
+        public void incBizResult(final RESULT result, final long ttl) {
+            for (final RelayMemo memo : this._memos) {
+                memo.incBizResult(result, ttl);
+            }
+        }
+
+        private final RelayMemo[] _memos;
+    }
 }
@@ -5,6 +5,8 @@ package org.jocean.xharbor.api;
 
 import java.net.URI;
 
+import rx.functions.Action0;
+
 /**
  * @author isdom
  *
@@ -12,4 +14,12 @@ import java.net.URI;
 public interface ServiceMemo {
     public boolean isServiceDown(final URI uri);
     public void markServiceDownStatus(final URI uri, final boolean isDown);
+
+    /**
+     * mark request to service begin
+     * @return action to mark request end, or null when service is half-open and no probe slot left
+     */
+    public Action0 beginRequest(final URI uri);
+    public void markServiceSuccess(final URI uri);
+    public void markServiceFailure(final URI uri);
 }
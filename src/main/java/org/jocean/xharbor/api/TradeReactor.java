@@ -15,11 +15,14 @@ import rx.Single;
 public interface TradeReactor {
     public interface ReactContext {
         public HttpTrade trade();
+        public ParsedRequest request();
         public StopWatch watch();
         public Tracer tracer();
         public Span span();
         public Scheduler scheduler();
         public int concurrent();
+        // set span's operation name, and bind trade meters of operation to record when trade halt
+        public void bindOperation(final String operation);
     }
 
     public interface InOut {
@@ -0,0 +1,62 @@
+/**
+ *
+ */
+package org.jocean.xharbor.api;
+
+import java.net.URI;
+
+import org.jocean.http.client.HttpClient.HttpInitiator;
+
+import rx.Observable;
+import rx.functions.Func0;
+
+/**
+ * connection pool layer for one upstream target:
+ * limit total in-use initiators (waiting when exceed), retain at most max idle channels for idle timeout,
+ * and record reuse hits/misses.
+ * @author isdom
+ *
+ */
+public interface UpstreamPool {
+    /**
+     * acquire initiator from connector, waiting when target's in-use initiators reach max total,
+     * caller MUST invoke release with acquired initiator when it's done
+     */
+    public Observable<? extends HttpInitiator> acquire(final Func0<Observable<? extends HttpInitiator>> connector);
+
+    /**
+     * retain initiator's channel as idle then close (recycle) initiator, caller MUST NOT close it itself
+     */
+    public void release(final HttpInitiator initiator);
+
+    /**
+     * close initiator with unfinished interaction (failed or canceled) and free it's slot,
+     * it's channel is never retained as idle, caller MUST NOT release it again
+     */
+    public void discard(final HttpInitiator initiator);
+
+    /**
+     * open warm-up count connections once for this pool
+     */
+    public void warmup(final Func0<Observable<? extends HttpInitiator>> connector);
+
+    public interface Registry {
+        /**
+         * get or create pool of uri and increase it's reference count, settings of existed pool will be updated
+         */
+        public UpstreamPool retain(final URI uri, final Settings settings);
+
+        public void release(final URI uri);
+    }
+
+    public interface Settings {
+        // < 0 means unlimited
+        public int maxTotal();
+        // < 0 means unlimited
+        public int maxIdle();
+        // <= 0 means never close idle channel
+        public long idleTimeoutMs();
+        public long maxWaitMs();
+        public int warmupCount();
+    }
+}
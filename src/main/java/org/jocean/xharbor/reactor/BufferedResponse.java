@@ -0,0 +1,267 @@
+package org.jocean.xharbor.reactor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jocean.http.ByteBufSlice;
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.idiom.DisposableWrapper;
+import org.jocean.idiom.DisposableWrapperUtil;
+import org.jocean.idiom.StepableUtil;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+
+import com.google.common.base.Splitter;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AsciiString;
+import rx.Observable;
+import rx.functions.Action1;
+
+/**
+ * response head & body bytes copied from upstream response, could be sent back many times.
+ * used by CacheResponse and ForwardTrade's request collapse.
+ */
+final class BufferedResponse {
+
+    // hop-by-hop headers belong to upstream connection (or one client's, eg: Connection: close), never replayed
+    private static final AsciiString[] HOP_BY_HOP_HEADERS = new AsciiString[]{
+        HttpHeaderNames.CONNECTION,
+        HttpHeaderNames.KEEP_ALIVE,
+        HttpHeaderNames.PROXY_CONNECTION,
+        HttpHeaderNames.TE,
+        HttpHeaderNames.TRAILER,
+        HttpHeaderNames.TRANSFER_ENCODING,
+        HttpHeaderNames.UPGRADE
+    };
+
+    BufferedResponse(final HttpResponse response, final byte[] body) {
+        this._version = response.protocolVersion();
+        this._status = response.status();
+        this._headers = endToEndHeaders(response.headers());
+        if (!this._headers.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+            // eg: chunked response
+            this._headers.set(HttpHeaderNames.CONTENT_LENGTH, body.length);
+        }
+        this._body = body;
+    }
+
+    private static HttpHeaders endToEndHeaders(final HttpHeaders upstream) {
+        final HttpHeaders headers = new DefaultHttpHeaders().add(upstream);
+        for (final String connection : upstream.getAll(HttpHeaderNames.CONNECTION)) {
+            for (final String name : Splitter.on(',').trimResults().omitEmptyStrings().split(connection)) {
+                headers.remove(name);
+            }
+        }
+        for (final AsciiString name : HOP_BY_HOP_HEADERS) {
+            headers.remove(name);
+        }
+        return headers;
+    }
+
+    int bodyLength() {
+        return this._body.length;
+    }
+
+    int weight() {
+        int size = this._body.length;
+        for (final Map.Entry<String, String> header : this._headers) {
+            size += header.getKey().length() + header.getValue().length();
+        }
+        return size;
+    }
+
+    HttpResponseStatus status() {
+        return this._status;
+    }
+
+    /**
+     * @return new response head, caller could modify it's headers
+     */
+    HttpResponse newResponse() {
+        final HttpResponse response = new DefaultHttpResponse(this._version, this._status);
+        response.headers().set(this._headers);
+        return response;
+    }
+
+    FullMessage<HttpResponse> toFullMessage(final HttpResponse response, final boolean withBody) {
+        final boolean hasBody = withBody && this._body.length > 0;
+        return new FullMessage<HttpResponse>() {
+            @Override
+            public HttpResponse message() {
+                return response;
+            }
+            @Override
+            public Observable<? extends MessageBody> body() {
+                return hasBody ? Observable.just(newBody()) : Observable.<MessageBody>empty();
+            }
+            private MessageBody newBody() {
+                return new MessageBody() {
+                    @Override
+                    public HttpHeaders headers() {
+                        return _headers;
+                    }
+                    @Override
+                    public String contentType() {
+                        return _headers.get(HttpHeaderNames.CONTENT_TYPE);
+                    }
+                    @Override
+                    public int contentLength() {
+                        return _body.length;
+                    }
+                    @Override
+                    public Observable<? extends ByteBufSlice> content() {
+                        return Observable.defer(() -> {
+                            final List<DisposableWrapper<ByteBuf>> element = Collections.singletonList(
+                                    DisposableWrapperUtil.wrap(Unpooled.wrappedBuffer(_body), (ByteBuf buf) -> buf.release()));
+                            return Observable.just(new ByteBufSlice() {
+                                @Override
+                                public void step() {
+                                }
+                                @Override
+                                public Iterable<? extends DisposableWrapper<? extends ByteBuf>> element() {
+                                    return element;
+                                }});
+                        });
+                    }};
+            }};
+    }
+
+    /**
+     * outbound for io which not forwarded: send back fullresp after orgio's inbound consumed
+     */
+    static Observable<FullMessage<HttpResponse>> sendAfterInbound(final InOut orgio, final FullMessage<HttpResponse> fullresp) {
+        return Observable.just(fullresp)
+                .delaySubscription(orgio.inbound().flatMap(fullmsg -> fullmsg.body()).flatMap(body -> body.content())
+                        .compose(StepableUtil.autostep2element2()).doOnNext(bbs -> bbs.dispose()).ignoreElements());
+    }
+
+    /**
+     * copy fullresp's head (now, before later reactors modify it) and body (when it's consumed),
+     * onCaptured is invoked once: with copied response after body's content completed
+     * and copied bytes equals Content-Length (if present),
+     * or with null when body exceed maxBodyBytes, truncated or failed.
+     * nothing captured if body's content never consumed to end (eg: trade aborted).
+     */
+    static FullMessage<HttpResponse> capture(
+            final FullMessage<HttpResponse> fullresp,
+            final int maxBodyBytes,
+            final Action1<BufferedResponse> onCaptured) {
+        final HttpResponse response = fullresp.message();
+        final HttpResponse snapshot = new DefaultHttpResponse(response.protocolVersion(), response.status());
+        snapshot.headers().set(response.headers());
+
+        return new FullMessage<HttpResponse>() {
+            @Override
+            public HttpResponse message() {
+                return response;
+            }
+            @Override
+            public Observable<? extends MessageBody> body() {
+                final Capture capture = new Capture(snapshot, maxBodyBytes, onCaptured);
+                return fullresp.body().map(body -> captureBody(body, capture))
+                    // no body at all
+                    .doOnCompleted(() -> {
+                        if (!capture._hasBody) {
+                            capture.complete();
+                        }
+                    })
+                    .doOnError(e -> capture.done(null));
+            }};
+    }
+
+    private static final class Capture {
+        Capture(final HttpResponse snapshot, final int maxBytes, final Action1<BufferedResponse> onCaptured) {
+            this._snapshot = snapshot;
+            this._maxBytes = maxBytes;
+            this._expectedBytes = HttpUtil.getContentLength(snapshot, -1L);
+            this._onCaptured = onCaptured;
+        }
+
+        // content completed
+        void complete() {
+            done(!this._overflow && (this._expectedBytes < 0 || this._out.size() == this._expectedBytes)
+                    ? new BufferedResponse(this._snapshot, this._out.toByteArray())
+                    : null);
+        }
+
+        void done(final BufferedResponse buffered) {
+            if (this._done.compareAndSet(false, true)) {
+                this._onCaptured.call(buffered);
+            }
+        }
+
+        final HttpResponse _snapshot;
+        final int _maxBytes;
+        // -1 means no Content-Length, eg: chunked
+        final long _expectedBytes;
+        final Action1<BufferedResponse> _onCaptured;
+        final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+        final AtomicBoolean _done = new AtomicBoolean(false);
+        boolean _hasBody = false;
+        boolean _overflow = false;
+    }
+
+    private static MessageBody captureBody(final MessageBody body, final Capture capture) {
+        if (capture._hasBody) {
+            // more than one body, not captured
+            capture._overflow = true;
+        }
+        capture._hasBody = true;
+        return new MessageBody() {
+            @Override
+            public HttpHeaders headers() {
+                return body.headers();
+            }
+            @Override
+            public String contentType() {
+                return body.contentType();
+            }
+            @Override
+            public int contentLength() {
+                return body.contentLength();
+            }
+            @Override
+            public Observable<? extends ByteBufSlice> content() {
+                return body.content().doOnNext(slice -> {
+                    if (capture._overflow) {
+                        return;
+                    }
+                    for (final DisposableWrapper<? extends ByteBuf> dwb : slice.element()) {
+                        final ByteBuf buf = dwb.unwrap();
+                        // stop copy when exceed max size
+                        if (capture._out.size() + buf.readableBytes() > capture._maxBytes) {
+                            capture._overflow = true;
+                            return;
+                        }
+                        try {
+                            buf.getBytes(buf.readerIndex(), capture._out, buf.readableBytes());
+                        } catch (final IOException e) {
+                            // never happen for ByteArrayOutputStream
+                            capture._overflow = true;
+                        }
+                    }
+                })
+                .doOnCompleted(capture::complete)
+                .doOnError(e -> capture.done(null));
+            }};
+    }
+
+    private final HttpVersion _version;
+    private final HttpResponseStatus _status;
+    private final HttpHeaders _headers;
+    private final byte[] _body;
+}
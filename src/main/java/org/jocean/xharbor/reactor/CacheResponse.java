@@ -0,0 +1,405 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.jocean.http.FullMessage;
+import org.jocean.idiom.Ordered;
+import org.jocean.xharbor.api.TradeReactor;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import rx.Observable;
+import rx.Single;
+
+/**
+ * cache small upstream response by method + uri + vary headers, honor Cache-Control / Expires,
+ * response with Vary header not in configured vary headers is not cached, evict by total bytes (LRU).
+ * lookup() serve fresh entry before forwards, store() save forwarded response after forwards,
+ * both are added to router with their own priority, see cache.xml
+ */
+public class CacheResponse {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheResponse.class);
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("CacheResponse [name=").append(_name).append(", matcher=").append(_matcher)
+                .append(", vary=").append(_varyHeaders).append(", maxBytes=").append(_maxBytes)
+                .append(", maxEntryBytes=").append(_maxEntryBytes).append(", entries=").append(_cache.size())
+                .append("]");
+        return builder.toString();
+    }
+
+    public TradeReactor lookup() {
+        return new LookupReactor();
+    }
+
+    public TradeReactor store() {
+        return new StoreReactor();
+    }
+
+    private static final class Entry {
+        Entry(final BufferedResponse response, final long expiresAt) {
+            this._response = response;
+            this._storedAt = System.currentTimeMillis();
+            this._expiresAt = expiresAt;
+        }
+
+        boolean isFresh(final long now) {
+            return now < this._expiresAt;
+        }
+
+        int weight(final String key) {
+            return key.length() + this._response.weight();
+        }
+
+        private final BufferedResponse _response;
+        private final long _storedAt;
+        private final long _expiresAt;
+    }
+
+    // marker of io served by cache, so store() skip it
+    private interface CachedInOut extends InOut {
+    }
+
+    private class LookupReactor extends SingleReactor implements Ordered {
+        @Override
+        public String toString() {
+            return "CacheLookup:" + CacheResponse.this.toString();
+        }
+
+        @Override
+        public int ordinal() {
+            return _lookupPriority;
+        }
+
+        @Override
+        public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+            if (null != io.outbound()) {
+                return Single.just(false);
+            }
+            return io.inbound().first().map(fullreq -> null != freshEntryOf(fullreq.message())).toSingle();
+        }
+
+        @Override
+        public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("try {} for trade {}", this, ctx.trade());
+            }
+            if (null != io.outbound()) {
+                return Single.<InOut>just(null);
+            }
+            return io.inbound().first().<InOut>map(fullreq -> {
+                if (!isCacheable(fullreq.message())) {
+                    return null;
+                }
+                final Entry entry = freshEntryOf(fullreq.message());
+                if (null == entry) {
+                    meters()._miss.increment();
+                    return null;
+                }
+                meters()._hit.increment();
+                LOG.debug("CACHE_HIT for {}", fullreq.message().uri());
+                return io4hit(io, fullreq.message(), entry);
+            }).toSingle();
+        }
+    }
+
+    private class StoreReactor extends SingleReactor implements Ordered {
+        @Override
+        public String toString() {
+            return "CacheStore:" + CacheResponse.this.toString();
+        }
+
+        @Override
+        public int ordinal() {
+            return _storePriority;
+        }
+
+        @Override
+        public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+            if (null == io.outbound() || io instanceof CachedInOut) {
+                return Single.just(false);
+            }
+            return io.inbound().first().map(fullreq -> isCacheable(fullreq.message())).toSingle();
+        }
+
+        @Override
+        public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("try {} for trade {}", this, ctx.trade());
+            }
+            if (null == io.outbound() || io instanceof CachedInOut) {
+                return Single.<InOut>just(null);
+            }
+            return io.inbound().first().map(fullreq -> {
+                if (!isCacheable(fullreq.message())) {
+                    return null;
+                }
+                final String key = keyOf(fullreq.message());
+                return new InOut() {
+                    @Override
+                    public Observable<FullMessage<HttpRequest>> inbound() {
+                        return io.inbound();
+                    }
+                    @Override
+                    public Observable<FullMessage<HttpResponse>> outbound() {
+                        return io.outbound().map(fullresp -> captureIfCacheable(key, fullresp));
+                    }};
+            }).toSingle();
+        }
+    }
+
+    private boolean isCacheable(final HttpRequest request) {
+        if (!HttpMethod.GET.equals(request.method()) && !HttpMethod.HEAD.equals(request.method())) {
+            return false;
+        }
+        if (request.headers().contains(HttpHeaderNames.AUTHORIZATION)) {
+            return false;
+        }
+        return this._matcher.match(request);
+    }
+
+    private Entry freshEntryOf(final HttpRequest request) {
+        if (!isCacheable(request)) {
+            return null;
+        }
+        final String cacheControl = request.headers().get(HttpHeaderNames.CACHE_CONTROL);
+        if (null != cacheControl && (cacheControl.contains(HttpHeaderValues.NO_CACHE.toString())
+                || cacheControl.contains(HttpHeaderValues.NO_STORE.toString()))) {
+            return null;
+        }
+        final String key = keyOf(request);
+        final Entry entry = this._cache.getIfPresent(key);
+        if (null != entry && !entry.isFresh(System.currentTimeMillis())) {
+            this._cache.invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private String keyOf(final HttpRequest request) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(request.method().name()).append(' ').append(request.uri());
+        for (final String name : this._varyHeaders) {
+            final String value = request.headers().get(name);
+            sb.append('\n').append(name).append(':').append(null != value ? value : "");
+        }
+        return sb.toString();
+    }
+
+    private InOut io4hit(final InOut orgio, final HttpRequest request, final Entry entry) {
+        return new CachedInOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return orgio.inbound();
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                final HttpResponse response = entry._response.newResponse();
+                response.headers().set(HttpHeaderNames.AGE, (System.currentTimeMillis() - entry._storedAt) / 1000);
+                return BufferedResponse.sendAfterInbound(orgio,
+                        entry._response.toFullMessage(response, !HttpMethod.HEAD.equals(request.method())));
+            }};
+    }
+
+    private FullMessage<HttpResponse> captureIfCacheable(final String key, final FullMessage<HttpResponse> fullresp) {
+        final long ttlMs = ttlOf(fullresp.message());
+        if (ttlMs <= 0 || HttpUtil.getContentLength(fullresp.message(), 0L) > this._maxEntryBytes) {
+            return fullresp;
+        }
+        final long expiresAt = System.currentTimeMillis() + ttlMs;
+        return BufferedResponse.capture(fullresp, this._maxEntryBytes, buffered -> {
+            if (null != buffered) {
+                _cache.put(key, new Entry(buffered, expiresAt));
+                meters()._store.increment();
+                LOG.debug("CACHE_STORE {} with {} bytes, ttl {} ms", key, buffered.bodyLength(), ttlMs);
+            }
+        });
+    }
+
+    /**
+     * @return freshness lifetime in ms of response, <= 0 means not cacheable
+     */
+    long ttlOf(final HttpResponse response) {
+        // response with Set-Cookie is per user
+        if (!HttpResponseStatus.OK.equals(response.status()) || response.headers().contains(HttpHeaderNames.SET_COOKIE)) {
+            return 0;
+        }
+        if (!isVaryInKey(response)) {
+            return 0;
+        }
+        final String cacheControl = response.headers().get(HttpHeaderNames.CACHE_CONTROL);
+        if (null != cacheControl) {
+            long maxAge = -1;
+            for (final String directive : Splitter.on(',').trimResults().omitEmptyStrings().split(cacheControl.toLowerCase())) {
+                if (directive.equals("no-store") || directive.equals("no-cache") || directive.equals("private")) {
+                    return 0;
+                } else if (directive.startsWith("s-maxage=")) {
+                    maxAge = parseSeconds(directive.substring("s-maxage=".length()));
+                } else if (directive.startsWith("max-age=") && maxAge < 0) {
+                    maxAge = parseSeconds(directive.substring("max-age=".length()));
+                }
+            }
+            if (maxAge >= 0) {
+                return TimeUnit.SECONDS.toMillis(maxAge);
+            }
+        }
+        final String expires = response.headers().get(HttpHeaderNames.EXPIRES);
+        if (null != expires) {
+            final Date expiresAt = DateFormatter.parseHttpDate(expires);
+            if (null == expiresAt) {
+                // invalid date, eg: "0", means already expired
+                return 0;
+            }
+            final Date date = DateFormatter.parseHttpDate(response.headers().get(HttpHeaderNames.DATE, ""));
+            return expiresAt.getTime() - (null != date ? date.getTime() : System.currentTimeMillis());
+        }
+        return TimeUnit.SECONDS.toMillis(this._defaultTtlSeconds);
+    }
+
+    // response varied by request header not in cache key (or by '*') could be served to other clients wrongly
+    private boolean isVaryInKey(final HttpResponse response) {
+        for (final String vary : response.headers().getAll(HttpHeaderNames.VARY)) {
+            for (final String name : Splitter.on(',').trimResults().omitEmptyStrings().split(vary)) {
+                if (!containsIgnoreCase(this._varyHeaders, name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean containsIgnoreCase(final List<String> names, final String name) {
+        for (final String candidate : names) {
+            if (candidate.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseSeconds(final String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private Cache<String, Entry> buildCache(final long maxBytes) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .<String, Entry>weigher((key, entry) -> entry.weight(key))
+                .removalListener((final RemovalNotification<String, Entry> notification) -> {
+                    if (notification.wasEvicted()) {
+                        meters().evicted(notification.getCause().name());
+                    }
+                })
+                .build();
+    }
+
+    private class Meters {
+        Meters() {
+            this._hit = counter("jocean.xharbor.cache.requests", "result", "hit");
+            this._miss = counter("jocean.xharbor.cache.requests", "result", "miss");
+            this._store = counter("jocean.xharbor.cache.stores");
+            Gauge.builder("jocean.xharbor.cache.entries", CacheResponse.this, cr -> cr._cache.size())
+                .tag("name", _name)
+                .description("The entries count of jocean xharbor response cache")
+                .register(_meterRegistry);
+        }
+
+        void evicted(final String cause) {
+            counter("jocean.xharbor.cache.evictions", "cause", cause).increment();
+        }
+
+        private Counter counter(final String name, final String... tags) {
+            return Counter.builder(name)
+                    .tags(tags)
+                    .tag("name", _name)
+                    .register(_meterRegistry);
+        }
+
+        private final Counter _hit;
+        private final Counter _miss;
+        private final Counter _store;
+    }
+
+    private Meters meters() {
+        Meters meters = this._meters;
+        if (null == meters) {
+            synchronized (this) {
+                meters = this._meters;
+                if (null == meters) {
+                    meters = this._meters = new Meters();
+                }
+            }
+        }
+        return meters;
+    }
+
+    @Value("${cache.max_bytes}")
+    void setMaxBytes(final long maxBytes) {
+        this._maxBytes = maxBytes;
+        this._cache = buildCache(maxBytes);
+    }
+
+    @Value("${cache.vary}")
+    void setVary(final String vary) {
+        this._varyHeaders = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(vary);
+    }
+
+    @Inject
+    MatchRule _matcher;
+
+    @Inject
+    MeterRegistry _meterRegistry = Metrics.globalRegistry;
+
+    @Value("${cache.name}")
+    String _name = "default";
+
+    @Value("${cache.max_entry_bytes}")
+    int _maxEntryBytes = 64 * 1024;
+
+    // ttl for response without Cache-Control max-age nor Expires, 0 means not cache it
+    @Value("${cache.default_ttl_seconds}")
+    long _defaultTtlSeconds = 0;
+
+    // lookup before forwards, and store after forwards but before rewrite response
+    @Value("${lookup.priority}")
+    int _lookupPriority = 95;
+
+    @Value("${store.priority}")
+    int _storePriority = 60;
+
+    private List<String> _varyHeaders = Collections.emptyList();
+    private long _maxBytes = 64 * 1024 * 1024L;
+    private volatile Cache<String, Entry> _cache = buildCache(this._maxBytes);
+    private volatile Meters _meters = null;
+}
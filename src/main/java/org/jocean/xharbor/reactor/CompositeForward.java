@@ -1,21 +1,27 @@
 package org.jocean.xharbor.reactor;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicStampedReference;
 
 import javax.inject.Inject;
 
-import org.jocean.idiom.BeanFinder;
 import org.jocean.idiom.Ordered;
 import org.jocean.xharbor.api.RelayMemo;
 import org.jocean.xharbor.api.ServiceMemo;
 import org.jocean.xharbor.api.TradeReactor;
+import org.jocean.xharbor.api.UpstreamPool;
 import org.jocean.xharbor.relay.ReactUtil;
+import org.jocean.xharbor.util.AccessLogger;
+import org.jocean.xharbor.util.BeanCache;
+import org.jocean.xharbor.util.ConfigView;
+import org.jocean.xharbor.util.ServiceHealthChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,7 +30,6 @@ import com.google.common.collect.Maps;
 
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Metrics;
-import io.netty.util.Timer;
 import rx.Single;
 import rx.functions.Action0;
 
@@ -47,8 +52,9 @@ public class CompositeForward implements TradeReactor, Ordered {
 
     @Override
     public String[] reactItems() {
-        final TradeReactor[] reactors = _fwdtsRef.getReference();
-        if (null != reactors) {
+        final RouteIndex index = _indexRef.getReference();
+        if (null != index) {
+            final TradeReactor[] reactors = index.forwards();
             final List<String> items = new ArrayList<>();
             for (final TradeReactor reactor : reactors) {
                 items.addAll(Arrays.asList(reactor.reactItems()));
@@ -78,38 +84,64 @@ public class CompositeForward implements TradeReactor, Ordered {
     private void updateStampAndRule() {
         final int newStamp = this._stampProvider.incrementAndGet();
 
-        while (this._fwdtsRef.getStamp() < newStamp) {
-            this._fwdtsRef.attemptStamp(this._fwdtsRef.getReference(), newStamp);
+        while (this._indexRef.getStamp() < newStamp) {
+            this._indexRef.attemptStamp(this._indexRef.getReference(), newStamp);
         }
 
-        if (this._fwdtsRef.getStamp() == newStamp) {
+        if (this._indexRef.getStamp() == newStamp) {
             // now this stamp is the newest
             final ForwardData[] data = this._fwdds.toArray(EMPTY_FWDD);
+            final List<URI> retained = new ArrayList<>();
             final Map<MatchRule, ForwardTrade> matcher2reactor = Maps.newHashMap();
             for (final ForwardData fwdd : data) {
                 ForwardTrade fwdt = matcher2reactor.get(fwdd.matcher());
                 if (null == fwdt) {
-                    fwdt = new ForwardTrade(fwdd.serviceName(),
-                            fwdd.matcher(),
-                            this._finder,
+                    fwdt = new ForwardTrade(fwdd,
+                            this._beanCache,
                             this._memoBuilder,
                             this._serviceMemo,
-                            this._timer,
-                            this._meterRegistry);
+                            this._meterRegistry,
+                            this._accessLogger,
+                            this._configView);
                     matcher2reactor.put(fwdd.matcher(), fwdt);
                 }
-                fwdt.addTarget(fwdd.target());
+                fwdt.addTarget(fwdd.target(), retainUpstream(fwdd, retained));
             }
-            final ForwardTrade[] newReactors = matcher2reactor.values().toArray(EMPTY_FWDT);
-            if (this._fwdtsRef.compareAndSet(this._fwdtsRef.getReference(), newReactors, newStamp, newStamp)) {
+            final RouteIndex newIndex = new RouteIndex(matcher2reactor.values().toArray(EMPTY_FWDT));
+            if (this._indexRef.compareAndSet(this._indexRef.getReference(), newIndex, newStamp, newStamp)) {
                 LOG.info("CompositeForward's rule has update to stamp({}) success.", newStamp);
+                releaseUpstreams(this._retainedUris.getAndSet(retained));
             } else {
                 LOG.info("CompositeForward's rule try update to stamp({}) failed, bcs other newest stamp({}) exist.",
-                        newStamp, this._fwdtsRef.getStamp());
+                        newStamp, this._indexRef.getStamp());
+                releaseUpstreams(retained);
             }
         } else {
             LOG.info("CompositeForward's rule try update to stamp({}) failed, bcs other newest stamp({}) exist.",
-                    newStamp, this._fwdtsRef.getStamp());
+                    newStamp, this._indexRef.getStamp());
+        }
+    }
+
+    // retain upstream pool and health check of forward's uri, return pool
+    private UpstreamPool retainUpstream(final ForwardData fwdd, final List<URI> retained) {
+        final URI uri = fwdd.target().serviceUri();
+        retained.add(uri);
+        if (null != this._healthChecker) {
+            this._healthChecker.watch(fwdd.target());
+        }
+        return null != this._upstreamPools ? this._upstreamPools.retain(uri, fwdd) : null;
+    }
+
+    private void releaseUpstreams(final List<URI> uris) {
+        if (null != uris) {
+            for (final URI uri : uris) {
+                if (null != this._healthChecker) {
+                    this._healthChecker.unwatch(uri);
+                }
+                if (null != this._upstreamPools) {
+                    this._upstreamPools.release(uri);
+                }
+            }
         }
     }
 
@@ -131,11 +163,16 @@ public class CompositeForward implements TradeReactor, Ordered {
         if (LOG.isTraceEnabled()) {
             LOG.trace("try {} for trade {}", this, ctx.trade());
         }
-        final ForwardTrade[] fwdts = this._fwdtsRef.getReference();
-        if (null == fwdts || (null != fwdts && fwdts.length == 0)) {
+        final RouteIndex index = this._indexRef.getReference();
+        if (null == index || index.isEmpty()) {
             return Single.<InOut>just(null);
         } else {
-            return ReactUtil.parallelFirst(fwdts, ctx, io);
+            return io.inbound().first().toSingle().flatMap(fullreq -> {
+                // only evaluate MatchRule on forwards indexed by method & path prefix
+                final ForwardTrade[] candidates = index.candidatesOf(fullreq.message().method().name(),
+                        fullreq.message().uri());
+                return candidates.length == 0 ? Single.<InOut>just(null) : ReactUtil.parallelFirst(candidates, ctx, io);
+            });
         }
     }
 
@@ -143,10 +180,13 @@ public class CompositeForward implements TradeReactor, Ordered {
 
     private final List<ForwardData> _fwdds = new CopyOnWriteArrayList<>();
 
-    private final AtomicStampedReference<ForwardTrade[]> _fwdtsRef = new AtomicStampedReference<>(null, 0);
+    private final AtomicStampedReference<RouteIndex> _indexRef = new AtomicStampedReference<>(null, 0);
+
+    // upstream uris retained (pools & health check) by current index
+    private final AtomicReference<List<URI>> _retainedUris = new AtomicReference<>();
 
     @Inject
-    private BeanFinder _finder;
+    private BeanCache _beanCache;
 
     @Inject
     private RelayMemo.Builder _memoBuilder;
@@ -155,7 +195,16 @@ public class CompositeForward implements TradeReactor, Ordered {
     private ServiceMemo     _serviceMemo;
 
     @Inject
-    private Timer _timer;
+    private UpstreamPool.Registry _upstreamPools;
+
+    @Inject
+    private ServiceHealthChecker _healthChecker;
+
+    @Inject
+    private AccessLogger _accessLogger;
+
+    @Inject
+    private ConfigView _configView;
 
     @Value("${priority}")
     int _ordinal = 0;
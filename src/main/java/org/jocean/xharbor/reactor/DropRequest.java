@@ -4,6 +4,7 @@ import javax.inject.Inject;
 
 import org.jocean.http.CloseException;
 import org.jocean.http.FullMessage;
+import org.jocean.xharbor.util.RequestParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -31,17 +32,17 @@ public class DropRequest extends SingleReactor {
         if (null != io.outbound()) {
             return Single.just(false);
         }
-        return io.inbound().first().map(fullreq -> isMatched(fullreq)).toSingle();
+        return io.inbound().first().map(fullreq -> isMatched(ctx, fullreq)).toSingle();
     }
 
     public static String get1stIp(final String peerips) {
-        return peerips.split(",")[0];
+        return RequestParser.firstIp(peerips);
     }
 
-    private boolean isMatched(final FullMessage<HttpRequest> fullreq) {
+    private boolean isMatched(final ReactContext ctx, final FullMessage<HttpRequest> fullreq) {
         if (null != this._peerip) {
-            final String ips = fullreq.message().headers().get("x-forwarded-for");
-            if (null != ips && get1stIp(ips).equals(this._peerip)) {
+            final String peerip = RequestParser.parsedOf(ctx, fullreq.message()).peerip();
+            if (null != peerip && peerip.equals(this._peerip)) {
                 return true;
             }
         }
@@ -57,7 +58,7 @@ public class DropRequest extends SingleReactor {
             return Single.<InOut>just(null);
         }
         return io.inbound().first().map(fullreq -> {
-            if (isMatched(fullreq)) {
+            if (isMatched(ctx, fullreq)) {
                 return io4drop(ctx, io, fullreq);
             } else {
                 // not handle this trade
@@ -1,6 +1,7 @@
 package org.jocean.xharbor.reactor;
 
 import java.net.URI;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -9,13 +10,18 @@ import org.jocean.http.util.FeaturesBuilder;
 import org.jocean.idiom.BeanHolder;
 import org.jocean.idiom.BeanHolderAware;
 import org.jocean.xharbor.api.Target;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.jocean.xharbor.util.BeanCache;
+import org.jocean.xharbor.util.OutlierDetector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
+import com.google.common.base.Splitter;
+
 import rx.functions.Func0;
 
-public class ForwardData implements BeanHolderAware {
+public class ForwardData implements BeanHolderAware, UpstreamPool.Settings, OutlierDetector.Settings {
 
     private static final Logger LOG = LoggerFactory.getLogger(ForwardData.class);
 
@@ -31,7 +37,7 @@ public class ForwardData implements BeanHolderAware {
             }
             @Override
             public Func0<Feature[]> features() {
-                final FeaturesBuilder builder = _beanHolder.getBean(_featuresName, FeaturesBuilder.class);
+                final FeaturesBuilder builder = _beanCache.getBean(_beanHolder, _featuresName, FeaturesBuilder.class);
                 if (null==builder) {
                     LOG.warn("forward rule {} require FeaturesBuilder named({}) not exist! please check xharbor config!",
                             ForwardData.this, _featuresName);
@@ -53,11 +59,117 @@ public class ForwardData implements BeanHolderAware {
         return this._serviceName;
     }
 
+    String balancePolicy() {
+        return this._balancePolicy;
+    }
+
+    boolean collapse() {
+        return this._collapse;
+    }
+
+    List<String> collapseVary() {
+        return Splitter.on(',').trimResults().omitEmptyStrings().splitToList(this._collapseVary);
+    }
+
+    int collapseMaxBodyBytes() {
+        return this._collapseMaxBodyBytes;
+    }
+
+    int maxRetries() {
+        return this._maxRetries;
+    }
+
+    int retryBudgetPercent() {
+        return this._retryBudgetPercent;
+    }
+
+    int retryMinPerSecond() {
+        return this._retryMinPerSecond;
+    }
+
+    boolean hedge() {
+        return this._hedge;
+    }
+
+    long hedgeDelayMs() {
+        return this._hedgeDelayMs;
+    }
+
+    int hedgePercentile() {
+        return this._hedgePercentile;
+    }
+
+    int hedgeBudgetPercent() {
+        return this._hedgeBudgetPercent;
+    }
+
+    int hedgeMinPerSecond() {
+        return this._hedgeMinPerSecond;
+    }
+
+    @Override
+    public int maxTotal() {
+        return this._poolMaxTotal;
+    }
+
+    @Override
+    public int maxIdle() {
+        return this._poolMaxIdle;
+    }
+
+    @Override
+    public long idleTimeoutMs() {
+        return this._poolIdleTimeoutMs;
+    }
+
+    @Override
+    public long maxWaitMs() {
+        return this._poolMaxWaitMs;
+    }
+
+    @Override
+    public int warmupCount() {
+        return this._poolWarmup;
+    }
+
+    @Override
+    public int consecutiveFailures() {
+        return this._outlierConsecutiveFailures;
+    }
+
+    @Override
+    public int errorPercentage() {
+        return this._outlierErrorPercentage;
+    }
+
+    @Override
+    public int minRequests() {
+        return this._outlierMinRequests;
+    }
+
+    @Override
+    public long baseEjectionMs() {
+        return this._outlierBaseEjectionMs;
+    }
+
+    @Override
+    public long maxEjectionMs() {
+        return this._outlierMaxEjectionMs;
+    }
+
+    @Override
+    public int maxProbes() {
+        return this._outlierMaxProbes;
+    }
+
     @Value("${service}")
     String _serviceName = "(unknown)";
 
     private BeanHolder _beanHolder;
 
+    @Inject
+    private BeanCache _beanCache;
+
     @Inject
     MatchRule _matcher;
 
@@ -70,4 +182,86 @@ public class ForwardData implements BeanHolderAware {
 
     @Value("${features.name}")
     String _featuresName = "default";
+
+    // round_robin, least_outstanding, p2c or peak_ewma, first forward of same MatchRule decide
+    @Value("${balance.policy}")
+    String _balancePolicy = TargetBalancer.ROUND_ROBIN;
+
+    // share one upstream interaction among concurrent identical GET/HEAD, first forward of same MatchRule decide
+    @Value("${collapse.enabled}")
+    boolean _collapse = false;
+
+    // request headers (comma separated) which make identical uri different, eg: accept-encoding
+    @Value("${collapse.vary}")
+    String _collapseVary = "";
+
+    // leader's response body larger than it is not shared, followers forward by themselves
+    @Value("${collapse.max_body_bytes}")
+    int _collapseMaxBodyBytes = 256 * 1024;
+
+    // retry on other target when transport failure or 5XX, first forward of same MatchRule decide
+    @Value("${retry.max}")
+    int _maxRetries = 2;
+
+    // retries within 10 seconds is capped to percent of requests plus min per second
+    @Value("${retry.budget_percent}")
+    int _retryBudgetPercent = 20;
+
+    @Value("${retry.min_per_second}")
+    int _retryMinPerSecond = 3;
+
+    // send hedged GET/HEAD to other target when no response head after delay, first response win
+    @Value("${hedge.enabled}")
+    boolean _hedge = false;
+
+    // < 0 means use percentile of recent response head latencies as delay
+    @Value("${hedge.delay_ms}")
+    long _hedgeDelayMs = -1;
+
+    @Value("${hedge.percentile}")
+    int _hedgePercentile = 95;
+
+    // hedges within 10 seconds is capped to percent of hedgeable requests plus min per second
+    @Value("${hedge.budget_percent}")
+    int _hedgeBudgetPercent = 10;
+
+    @Value("${hedge.min_per_second}")
+    int _hedgeMinPerSecond = 1;
+
+    // upstream pool of forward.to, -1 means unlimited
+    @Value("${pool.max_total}")
+    int _poolMaxTotal = -1;
+
+    @Value("${pool.max_idle}")
+    int _poolMaxIdle = -1;
+
+    @Value("${pool.idle_timeout_ms}")
+    long _poolIdleTimeoutMs = 60 * 1000L;
+
+    @Value("${pool.max_wait_ms}")
+    long _poolMaxWaitMs = 1000L;
+
+    @Value("${pool.warmup}")
+    int _poolWarmup = 0;
+
+    // eject matched APIs of forward.to on 5XX, first forward of same MatchRule decide, <= 0 disable
+    @Value("${outlier.consecutive_failures}")
+    int _outlierConsecutiveFailures = 5;
+
+    // <= 0 disable
+    @Value("${outlier.error_percentage}")
+    int _outlierErrorPercentage = 50;
+
+    @Value("${outlier.min_requests}")
+    int _outlierMinRequests = 20;
+
+    // doubled for each failed probe, until max
+    @Value("${outlier.base_ejection_ms}")
+    long _outlierBaseEjectionMs = 10 * 1000L;
+
+    @Value("${outlier.max_ejection_ms}")
+    long _outlierMaxEjectionMs = 5 * 60 * 1000L;
+
+    @Value("${outlier.max_probes}")
+    int _outlierMaxProbes = 3;
 }
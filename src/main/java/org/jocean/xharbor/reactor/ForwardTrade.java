@@ -3,12 +3,11 @@ package org.jocean.xharbor.reactor;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.URI;
-import java.time.Duration;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,85 +21,117 @@ import org.jocean.http.WriteCtrl;
 import org.jocean.http.client.HttpClient;
 import org.jocean.http.client.HttpClient.HttpInitiator;
 import org.jocean.http.server.HttpServerBuilder.HttpTrade;
-import org.jocean.idiom.BeanFinder;
 import org.jocean.idiom.DisposableWrapper;
 import org.jocean.idiom.DisposableWrapperUtil;
 import org.jocean.idiom.ExceptionUtils;
-import org.jocean.idiom.StopWatch;
 import org.jocean.idiom.rx.RxObservables;
-import org.jocean.svr.StringTags;
 import org.jocean.svr.tracing.TraceUtil;
 import org.jocean.xharbor.api.RelayMemo;
 import org.jocean.xharbor.api.RelayMemo.RESULT;
-import org.jocean.xharbor.api.RoutingInfo;
 import org.jocean.xharbor.api.ServiceMemo;
 import org.jocean.xharbor.api.Target;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.jocean.xharbor.util.AccessLogger;
+import org.jocean.xharbor.util.BeanCache;
+import org.jocean.xharbor.util.ConfigView;
+import org.jocean.xharbor.util.OperationMeters;
+import org.jocean.xharbor.util.OutlierDetector;
+import org.jocean.xharbor.util.RetryBudget;
+import org.jocean.xharbor.util.RequestParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Lists;
 
-import io.jaegertracing.internal.JaegerSpan;
-import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
-import io.micrometer.core.instrument.binder.BaseUnits;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufHolder;
 import io.netty.handler.codec.http.DefaultHttpRequest;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.codec.http.QueryStringDecoder;
 import io.opentracing.Span;
+import io.opentracing.noop.NoopSpan;
 import io.opentracing.propagation.Format;
 import io.opentracing.tag.Tags;
 import rx.Observable;
 import rx.Observable.Transformer;
+import rx.Scheduler;
 import rx.Single;
+import rx.functions.Action0;
 import rx.functions.Action1;
 import rx.functions.Func0;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 public class ForwardTrade extends SingleReactor {
 
     private static final int MAX_RETAINED_SIZE = 8 * 1024;
-    private static final long _period = 20; // 30 seconds
+    // distinct uris with cached operation meters
+    private static final int MAX_CACHED_URIS = 1024;
+    // access log's target of collapsed follower
+    private static final String COLLAPSED_TARGET = "collapsed";
     private static final Logger LOG = LoggerFactory.getLogger(ForwardTrade.class);
 
     public ForwardTrade(
-            final String serviceName,
-            final MatchRule  matcher,
-            final BeanFinder finder,
+            final ForwardData data,
+            final BeanCache beanCache,
             final RelayMemo.Builder memoBuilder,
             final ServiceMemo serviceMemo,
-            final io.netty.util.Timer timer,
-            final MeterRegistry meterRegistry ) {
-        this._serviceName = serviceName;
-        this._matcher = matcher;
-        this._finder = finder;
+            final MeterRegistry meterRegistry,
+            final AccessLogger accessLogger,
+            final ConfigView configView) {
+        this._serviceName = data.serviceName();
+        this._matcher = data.matcher();
+        this._balancer = TargetBalancer.of(data.balancePolicy());
+        this._outlierSettings = data;
+        this._maxRetries = data.maxRetries();
+        this._retryBudget = new RetryBudget(data.retryBudgetPercent(), data.retryMinPerSecond());
+        this._hedgeDelay = data.hedge() ? new HedgeDelay(data.hedgeDelayMs(), data.hedgePercentile()) : null;
+        this._hedgeBudget = new RetryBudget(data.hedgeBudgetPercent(), data.hedgeMinPerSecond());
+        this._collapser = data.collapse() ? new RequestCollapser(data.collapseVary(), data.collapseMaxBodyBytes()) : null;
+        this._beanCache = beanCache;
         this._memoBuilder = memoBuilder;
         this._serviceMemo = serviceMemo;
-        this._timer = timer;
         this._meterRegistry = meterRegistry;
+        this._accessLogger = accessLogger;
+        this._configView = configView;
     }
 
     @Override
     public String toString() {
         final int maxLen = 10;
         final StringBuilder builder = new StringBuilder();
-        builder.append("ForwardTrade [service=").append(_serviceName).append(", matcher=").append(_matcher).append(", targets=")
+        builder.append("ForwardTrade [service=").append(_serviceName).append(", matcher=").append(_matcher)
+                .append(", balancer=").append(_balancer).append(", retryBudget=").append(_retryBudget)
+                .append(", hedgeDelay=").append(_hedgeDelay).append(", hedgeBudget=").append(_hedgeBudget)
+                .append(", collapser=").append(_collapser).append(", targets=")
                 .append(_targets != null ? _targets.subList(0, Math.min(_targets.size(), maxLen)) : null).append("]");
         return builder.toString();
     }
 
+    MatchRule matcher() {
+        return this._matcher;
+    }
+
     public void addTarget(final Target target) {
-        this._targets.add(new MarkableTargetImpl(target));
+        addTarget(target, null);
+    }
+
+    public void addTarget(final Target target, final UpstreamPool pool) {
+        final MarkableTarget markable = new MarkableTarget(target, pool, this._outlierSettings, this::updateBalancer);
+        this._targets.add(markable);
+        updateBalancer();
+        if (null != pool) {
+            pool.warmup(() -> connect(markable));
+        }
     }
 
     @Override
@@ -121,14 +152,13 @@ public class ForwardTrade extends SingleReactor {
         }
         return io.inbound().first().flatMap(fullreq -> {
             if (this._matcher.match(fullreq.message())) {
-                final MarkableTargetImpl target = selectTarget();
-                if (null == target) {
-                    // no target
-                    LOG.warn("NONE_TARGET to forward for trade {}", ctx.trade());
-                    return Observable.just(null);
+                if (null != this._collapser && this._collapser.isCollapsible(fullreq.message())) {
+                    // target is selected only when really forward
+                    return this._collapser.collapse(ctx.trade(), io, fullreq.message(),
+                            () -> forward(ctx, io, fullreq.message()),
+                            status -> ctx.trade().doOnHalt(() -> recordFollowed(ctx, fullreq.message(), status)));
                 } else {
-                    LOG.debug("forward to {} for trade {}", target, ctx.trade());
-                    return io4forward(ctx, io, target, this._matcher.summary(), fullreq.message());
+                    return forward(ctx, io, fullreq.message());
                 }
             } else {
                 // not handle this trade
@@ -137,17 +167,183 @@ public class ForwardTrade extends SingleReactor {
         }).compose(RxObservables.<InOut>ensureSubscribeAtmostOnce()).toSingle();
     }
 
-    private String buildOperationName(final String uri) {
-        final String operationName = this._matcher.matchedPath(uri);
+    private Observable<InOut> forward(
+            final ReactContext ctx,
+            final InOut orgio,
+            final HttpRequest request) {
+        final MarkableTarget target = selectTarget();
+        if (null == target) {
+            // no target
+            LOG.warn("NONE_TARGET to forward for trade {}", ctx.trade());
+            return Observable.just(null);
+        }
+        this._retryBudget.onRequest();
+        final Attempts attempts = new Attempts();
+        // memo & access log are recorded once for trade, by it's final attempt
+        ctx.trade().doOnHalt(() -> recordFinal(ctx, attempts.halt()));
+        // tried maybe updated by hedge
+        return forwardWithRetry(ctx, orgio, request, target, new CopyOnWriteArrayList<>(), attempts);
+    }
+
+    // retry on other target not tried, only when request body still retained, and within retry budget
+    private Observable<InOut> forwardWithRetry(
+            final ReactContext ctx,
+            final InOut orgio,
+            final HttpRequest request,
+            final MarkableTarget target,
+            final List<MarkableTarget> tried,
+            final Attempts attempts) {
+        LOG.debug("forward to {} for trade {}", target, ctx.trade());
+        tried.add(target);
+        return attempt(ctx, orgio, request, target, tried, attempts).onErrorResumeNext(error -> {
+            if (tried.size() <= this._maxRetries && isRetriable(error) && isReplayable(request)) {
+                final MarkableTarget next = this._balancer.select(t -> isTargetActive(t) && !tried.contains(t));
+                if (null != next && this._retryBudget.tryRetry()) {
+                    LOG.info("FORWARD_RETRY to {} for trade {}, bcs of error: {}", next, ctx.trade(),
+                            ExceptionUtils.exception2detail(error));
+                    return forwardWithRetry(ctx, orgio, request, next, tried, attempts);
+                }
+            }
+            LOG.warn("NOT_RETRY for trade {}, bcs of error: {}, retry budget: {}", ctx.trade(),
+                    ExceptionUtils.exception2detail(error), this._retryBudget);
+            return Observable.error(error);
+        });
+    }
+
+    private Observable<InOut> attempt(
+            final ReactContext ctx,
+            final InOut orgio,
+            final HttpRequest request,
+            final MarkableTarget target,
+            final List<MarkableTarget> tried,
+            final Attempts attempts) {
+        final long delayMs = null != this._hedgeDelay && isIdempotent(request) ? this._hedgeDelay.delayMs() : -1;
+        if (delayMs < 0) {
+            return recordLatency(io4forward(ctx, orgio, new Attempt(target), attempts, this._matcher.summary(), request));
+        }
+        this._hedgeBudget.onRequest();
+        // send hedged request to other target if primary has no response head after delay, first response win
+        return hedge(cancelIfLose(ctx, orgio, request, target, attempts, true), delayMs, () -> {
+            final MarkableTarget hedge = this._balancer.select(t -> isTargetActive(t) && !tried.contains(t));
+            if (null == hedge) {
+                return null;
+            }
+            if (!this._hedgeBudget.tryRetry()) {
+                LOG.debug("NOT_HEDGE for trade {}, bcs of hedge budget: {}", ctx.trade(), this._hedgeBudget);
+                return null;
+            }
+            tried.add(hedge);
+            hedgeMeters()._hedges.increment();
+            LOG.debug("HEDGE to {} for trade {} after {} ms", hedge, ctx.trade(), delayMs);
+            return cancelIfLose(ctx, orgio, request, hedge, attempts, false).doOnNext(io -> hedgeMeters()._wins.increment());
+        }, Schedulers.computation());
+    }
+
+    private Observable<InOut> recordLatency(final Observable<InOut> getio) {
+        return null == this._hedgeDelay ? getio : Observable.defer(() -> {
+            final long begin = System.nanoTime();
+            return getio.doOnNext(io -> this._hedgeDelay.record(System.nanoTime() - begin));
+        });
+    }
+
+    // first response head of primary and hedged (subscribed after delay, null means not hedged) win,
+    // the loser is unsubscribed, failed one give way to the other still running, error only when both failed
+    static <T> Observable<T> hedge(
+            final Observable<T> primary,
+            final long delayMs,
+            final Func0<Observable<T>> hedged,
+            final Scheduler scheduler) {
+        return Observable.defer(() -> {
+            final AtomicInteger running = new AtomicInteger(1);
+            final Func1<Throwable, Observable<T>> onError =
+                    error -> running.decrementAndGet() > 0 ? Observable.<T>empty() : Observable.<T>error(error);
+            return Observable.merge(primary.onErrorResumeNext(onError),
+                    Observable.timer(delayMs, TimeUnit.MILLISECONDS, scheduler).flatMap(any -> {
+                        final Observable<T> hedging = hedged.call();
+                        if (null == hedging) {
+                            return Observable.<T>empty();
+                        }
+                        running.incrementAndGet();
+                        return hedging.onErrorResumeNext(onError);
+                    })).first();
+        });
+    }
+
+    // the loser (unsubscribed before response head received) discard it's upstream, see io4forward,
+    // only primary's latency feed hedge delay: hedged one is sent only when primary is slow, its latency is biased,
+    // and primary lose (or trade canceled) is recorded as censored sample: elapsed time, the lower bound of its latency
+    private Observable<InOut> cancelIfLose(
+            final ReactContext ctx,
+            final InOut orgio,
+            final HttpRequest request,
+            final MarkableTarget target,
+            final Attempts attempts,
+            final boolean isPrimary) {
+        final HedgeDelay latencies = isPrimary ? this._hedgeDelay : null;
+        return Observable.defer(() -> {
+            final long begin = System.nanoTime();
+            final AtomicBoolean responded = new AtomicBoolean(false);
+            return io4forward(ctx, orgio, new Attempt(target), attempts, this._matcher.summary(), request)
+                .doOnEach(any -> {
+                    if (responded.compareAndSet(false, true) && any.isOnNext() && null != latencies) {
+                        latencies.record(System.nanoTime() - begin);
+                    }
+                })
+                .doOnUnsubscribe(() -> {
+                    if (responded.compareAndSet(false, true) && null != latencies) {
+                        latencies.record(System.nanoTime() - begin);
+                    }
+                });
+        });
+    }
+
+    private static boolean isIdempotent(final HttpRequest request) {
+        return (HttpMethod.GET.equals(request.method()) || HttpMethod.HEAD.equals(request.method()))
+                && !HttpUtil.isTransferEncodingChunked(request)
+                && HttpUtil.getContentLength(request, 0L) == 0;
+    }
+
+    // sended request body larger than MAX_RETAINED_SIZE (or chunked, size unknown) is disposed, see enableDisposeSended
+    private boolean isReplayable(final HttpRequest request) {
+        return !HttpUtil.isTransferEncodingChunked(request) && HttpUtil.getContentLength(request, 0L) <= MAX_RETAINED_SIZE;
+    }
+
+    private static boolean isRetriable(final Throwable error) {
+        return (error instanceof TransportException)
+            || (error instanceof ConnectException)
+            || (error instanceof ClosedChannelException);
+    }
+
+    // operation name & interact meters cached by path (LRU), skip matchedPath's regex and meters lookup for same path
+    private OperationMeters operationOf(final String path) {
+        OperationMeters.ByPath meters = this._interactMeters;
+        if (null == meters) {
+            synchronized (this) {
+                meters = this._interactMeters;
+                if (null == meters) {
+                    meters = this._interactMeters = new OperationMeters.ByPath(this::buildOperationName,
+                            new OperationMeters.Factory("jocean.xharbor.interact", "interact",
+                                    null, this._meterRegistry, MAX_CACHED_URIS),
+                            MAX_CACHED_URIS);
+                }
+            }
+        }
+        return meters.get(path);
+    }
+
+    private String buildOperationName(final String path) {
+        final String operationName = this._matcher.matchedPath(path);
         return null != operationName ? operationName : "httpin";
     }
 
     private Observable<InOut> io4forward(
             final ReactContext ctx,
             final InOut orgio,
-            final MarkableTargetImpl target,
+            final Attempt attempt,
+            final Attempts attempts,
             final String summary,
             final HttpRequest request) {
+        final MarkableTarget target = attempt.target;
 //        return new HystrixObservableCommand<InOut>(HystrixObservableCommand.Setter
 //                        .withGroupKey(HystrixCommandGroupKey.Factory.asKey("forward"))
 //                        .andCommandKey(HystrixCommandKey.Factory.asKey(summary + "-request"))
@@ -161,15 +357,25 @@ public class ForwardTrade extends SingleReactor {
 //                        ) {
 //                    @Override
 //                    protected Observable<InOut> construct() {
-                        return buildOutbound(ctx, orgio.inbound(), target, request)
-                            .doOnError(onCommunicationError(target)).compose(makeupio(orgio, target, ctx, summary)).first();
+                        return buildOutbound(ctx, orgio.inbound(), attempt, attempts, request)
+                            .doOnError(onCommunicationError(target)).compose(makeupio(orgio, target, ctx, summary)).first()
+                            .compose(feedLatency(target))
+                            // only the first responded attempt (hedge winner) pass
+                            .filter(io -> attempts.onResponded(attempt))
+                            // failed (or unsubscribed before responded) attempt free it's upstream now, not at trade halt
+                            .doOnError(e -> attempt.release(true))
+                            .doOnUnsubscribe(() -> {
+                                if (!attempts.isFinal(attempt)) {
+                                    attempt.release(true);
+                                }
+                            });
 //                    }
 //                }.toObservable();
     }
 
     private Transformer<FullMessage<HttpResponse>, InOut> makeupio(
             final InOut orgio,
-            final MarkableTargetImpl target,
+            final MarkableTarget target,
             final ReactContext ctx,
             final String summary) {
         return getfullresp -> {
@@ -181,6 +387,9 @@ public class ForwardTrade extends SingleReactor {
             return cached.flatMap(fullresp -> {
                 LOG.debug("recv response head part {}.", fullresp.message());
 
+                // service is reachable
+                _serviceMemo.markServiceSuccess(target.serviceUri());
+
                 // 404 Not Found
                 if (fullresp.message().status().equals(HttpResponseStatus.NOT_FOUND)) {
                     // Request-URI not found in target service, so try next
@@ -192,20 +401,14 @@ public class ForwardTrade extends SingleReactor {
 
                 // 5XX Server Internal Error
                 if (fullresp.message().status().code() >= 500) {
-                    // Server Internal Error
-                    target.markAPIDownStatus(true);
-                    LOG.warn("SERVER_ERROR({}), so mark service [{}]'s matched {} APIs down.", fullresp.message().status(),
-                            target.serviceUri(), _matcher);
-                    _timer.newTimeout(timeout -> {
-                        // reset down flag
-                        target.markAPIDownStatus(false);
-                        LOG.info(
-                                "reset service [{}]'s matched {} APIs down to false, after {} second cause by SERVER_ERROR({}).",
-                                target.serviceUri(), _matcher, _period, fullresp.message().status());
-                    }, _period, TimeUnit.SECONDS);
+                    // Server Internal Error, matched APIs maybe ejected by outlier detection
+                    target.outlier().onFailure();
+                    LOG.warn("SERVER_ERROR({}) from service [{}]'s matched {} APIs, outlier status: {}",
+                            fullresp.message().status(), target.serviceUri(), _matcher, target.outlier());
                     return Observable.error(new TransportException("SERVER_ERROR(" + fullresp.message().status() + ")"));
                 }
 
+                target.outlier().onSuccess();
                 return Observable.<InOut>just(new InOut() {
                     @Override
                     public Observable<FullMessage<HttpRequest>> inbound() {
@@ -214,27 +417,20 @@ public class ForwardTrade extends SingleReactor {
 
                     @Override
                     public Observable<FullMessage<HttpResponse>> outbound() {
-                        return cached.doOnCompleted(()-> LOG.info("forward outbound completed"));
+                        return cached.doOnCompleted(()-> LOG.debug("forward outbound completed"));
                     }
                 });
             });
         };
     }
 
-    private Action1<? super Throwable> onCommunicationError(final MarkableTargetImpl target) {
+    private Action1<? super Throwable> onCommunicationError(final MarkableTarget target) {
         return error -> {
-            // remember reset to false after a while
+            // service maybe ejected by outlier detection, and restored after probes succeed
             if (isCommunicationFailure(error)) {
-                markServiceDownStatus(target, true);
-                LOG.warn("COMMUNICATION_FAILURE({}), so mark service [{}] down.",
+                _serviceMemo.markServiceFailure(target.serviceUri());
+                LOG.warn("COMMUNICATION_FAILURE({}) for service [{}].",
                         ExceptionUtils.exception2detail(error), target.serviceUri());
-                _timer.newTimeout(timeout -> {
-                        // reset down flag
-                        markServiceDownStatus(target, false);
-                        LOG.info(
-                                "reset service [{}] down to false, after {} second cause by COMMUNICATION_FAILURE({}).",
-                                target.serviceUri(), _period, ExceptionUtils.exception2detail(error));
-                    }, _period, TimeUnit.SECONDS);
             }
         };
     }
@@ -242,75 +438,219 @@ public class ForwardTrade extends SingleReactor {
     private Observable<FullMessage<HttpResponse>> buildOutbound(
             final ReactContext ctx,
             final Observable<FullMessage<HttpRequest>> inbound,
-            final Target target,
+            final Attempt attempt,
+            final Attempts attempts,
             final HttpRequest request) {
         final HttpTrade trade = ctx.trade();
-        final StopWatch stopWatch = ctx.watch();
+        final MarkableTarget target = attempt.target;
 
-        return forwardTo(target).doOnNext(upstream->trade.doOnHalt(upstream.closer()))
+        return forwardTo(target).doOnNext(upstream -> {
+                    attempt.upstream = upstream;
+                    if (!attempts.onUpstream(attempt)) {
+                        // trade halted before got upstream
+                        attempt.release(true);
+                    }
+                })
                 .flatMap(upstream -> {
                     final AtomicBoolean isKeepAliveFromClient = new AtomicBoolean(true);
-                    final AtomicReference<HttpRequest> refReq = new AtomicReference<>();
-                    final AtomicReference<HttpResponse> refResp = new AtomicReference<>();
-
-                    trade.doOnHalt(() -> {
-                            final long ttl = stopWatch.stopAndRestart();
-                            final RelayMemo memo = _memoBuilder.build(target, buildRoutingInfo(refReq.get()));
-                            memo.incBizResult(RESULT.RELAY_SUCCESS, ttl);
-                            LOG.info("FORWARD_SUCCESS" + "\ncost:[{}]s,forward_to:[{}]"
-                                            + "\nINCOME:channel:{},request:[{}]bytes,response:[{}]bytes"
-                                            + "\nUPSTREAM:channel:{},request:[{}]bytes,response:[{}]bytes"
-                                            + "\nREQ\n[{}]\nsendback\nRESP\n[{}]",
-                                    ttl / (float) 1000.0,
-                                    target.serviceUri(),
-                                    trade.transport(),
-                                    trade.traffic().inboundBytes(),
-                                    trade.traffic().outboundBytes(),
-                                    upstream.transport(),
-                                    upstream.traffic().outboundBytes(),
-                                    upstream.traffic().inboundBytes(),
-                                    refReq.get(),
-                                    refResp.get()
-                                    );
-                        });
 
                     enableDisposeSended(upstream.writeCtrl(), MAX_RETAINED_SIZE);
-                    final Span span = ctx2span(ctx, target, request);
-                    TraceUtil.addTagNotNull(span, "http.host", request.headers().get(HttpHeaderNames.HOST));
-
-                    upstream.writeCtrl().sending().subscribe(obj -> {
-                        if (obj instanceof HttpRequest) {
-                            final HttpRequest req = (HttpRequest)obj;
-                            ctx.tracer().inject(span.context(), Format.Builtin.HTTP_HEADERS, TraceUtil.message2textmap(req));
-                        }
-                    });
+                    final OperationMeters meters = operationOf(RequestParser.parsedOf(ctx, request).path());
+                    final long begin = System.nanoTime();
+                    ctx.bindOperation(meters.operation());
+                    // unsampled trade (noop span): no child span, tags nor inject
+                    final boolean sampled = !(ctx.span() instanceof NoopSpan);
+                    final Span span = sampled ? ctx2span(ctx, target, request, meters.operation()) : ctx.span();
+                    if (sampled) {
+                        TraceUtil.addTagNotNull(span, "http.host", request.headers().get(HttpHeaderNames.HOST));
+
+                        upstream.writeCtrl().sending().subscribe(obj -> {
+                            if (obj instanceof HttpRequest) {
+                                final HttpRequest req = (HttpRequest)obj;
+                                ctx.tracer().inject(span.context(), Format.Builtin.HTTP_HEADERS, TraceUtil.message2textmap(req));
+                            }
+                        });
+                    }
 
-                    return isDBS().doOnNext(configDBS(trade))
-                        .flatMap(any -> upstream.defineInteraction(
-                            inbound.map(addKeepAliveIfNeeded(refReq, isKeepAliveFromClient))
-                            .compose(fullreq2objs())))
+                    configDBS(trade, routeFlags().dbs);
+                    return upstream.defineInteraction(
+                            inbound.map(addKeepAliveIfNeeded(attempt.refReq, isKeepAliveFromClient))
+                            .compose(fullreq2objs()))
 //                        .observeOn(ctx.scheduler())  TODO : disable
-                        .map(removeKeepAliveIfNeeded(refResp, isKeepAliveFromClient))
-                        .doOnNext(TraceUtil.hookhttpresp(span))
+                        .map(removeKeepAliveIfNeeded(attempt.refResp, isKeepAliveFromClient))
+                        .doOnNext(sampled ? TraceUtil.hookhttpresp(span) : resp -> {})
                         .doOnError( e -> {
-                            span.setTag(Tags.ERROR.getKey(), true);
-                            span.log(Collections.singletonMap("error.detail", ExceptionUtils.exception2detail(e)));
+                            if (sampled) {
+                                span.setTag(Tags.ERROR.getKey(), true);
+                                span.log(Collections.singletonMap("error.detail", ExceptionUtils.exception2detail(e)));
+                            }
                         })
                         .doOnTerminate(() -> {
-                            span.finish();
-                            if (span instanceof JaegerSpan) {
-                                final String operation = ((JaegerSpan)span).getOperationName();
-                                getOrCreateInteractTimer("operation", operation).record(((JaegerSpan)span).getDuration(), TimeUnit.MICROSECONDS);
-                                getOrCreateInboundSummary("operation", operation).record(upstream.traffic().inboundBytes());
-                                getOrCreateOutboundSummary("operation", operation).record(upstream.traffic().outboundBytes());
+                            if (sampled) {
+                                span.finish();
                             }
+                            // record metrics no matter sampled or not
+                            meters.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin),
+                                    upstream.traffic().inboundBytes(), upstream.traffic().outboundBytes());
                         });
-                });
+                }).compose(trackRequest(target));
+    }
+
+    private void recordFinal(final ReactContext ctx, final Attempt attempt) {
+        if (null == attempt) {
+            // none attempt got upstream
+            return;
+        }
+        final long ttl = ctx.watch().stopAndRestart();
+        final HttpTrade trade = ctx.trade();
+        final MarkableTarget target = attempt.target;
+        final HttpInitiator upstream = attempt.upstream;
+        final HttpRequest req = attempt.refReq.get();
+        final HttpResponse resp = attempt.refResp.get();
+        try {
+            final RelayMemo memo = _memoBuilder.build(target, RequestParser.parsedOf(ctx, req));
+            memo.incBizResult(RESULT.RELAY_SUCCESS, ttl);
+            if (logAccess(ttl, target, trade, upstream, req, resp)) {
+                return;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("FORWARD_SUCCESS" + "\ncost:[{}]s,forward_to:[{}]"
+                                + "\nINCOME:channel:{},request:[{}]bytes,response:[{}]bytes"
+                                + "\nUPSTREAM:channel:{},request:[{}]bytes,response:[{}]bytes"
+                                + "\nREQ\n[{}]\nsendback\nRESP\n[{}]",
+                        ttl / (float) 1000.0,
+                        target.serviceUri(),
+                        trade.transport(),
+                        trade.traffic().inboundBytes(),
+                        trade.traffic().outboundBytes(),
+                        upstream.transport(),
+                        upstream.traffic().outboundBytes(),
+                        upstream.traffic().inboundBytes(),
+                        req,
+                        resp
+                        );
+            }
+        } finally {
+            // pool mark upstream's channel idle then recycle it
+            attempt.release(false);
+        }
+    }
+
+    // one forward attempt of trade to target
+    static final class Attempt {
+        Attempt(final MarkableTarget target) {
+            this.target = target;
+        }
+
+        // release upstream at most once, discard it when it's interaction is unfinished
+        void release(final boolean discard) {
+            final HttpInitiator upstream = this.upstream;
+            if (null != upstream && this.released.compareAndSet(false, true)) {
+                final UpstreamPool pool = this.target.pool();
+                if (null == pool) {
+                    upstream.close();
+                } else if (discard) {
+                    pool.discard(upstream);
+                } else {
+                    pool.release(upstream);
+                }
+            }
+        }
+
+        final MarkableTarget target;
+        final AtomicReference<HttpRequest> refReq = new AtomicReference<>();
+        final AtomicReference<HttpResponse> refResp = new AtomicReference<>();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+        volatile HttpInitiator upstream;
+    }
+
+    // attempts of one trade, the final one is the first responded attempt, or else the last one got upstream
+    static final class Attempts {
+        /**
+         * @return false if trade has halted
+         */
+        synchronized boolean onUpstream(final Attempt attempt) {
+            if (this._halted) {
+                return false;
+            }
+            this._attempts.add(attempt);
+            if (!this._responded) {
+                this._final = attempt;
+            }
+            return true;
+        }
+
+        /**
+         * @return false if other attempt has responded
+         */
+        synchronized boolean onResponded(final Attempt attempt) {
+            if (this._responded) {
+                return false;
+            }
+            this._responded = true;
+            this._final = attempt;
+            return true;
+        }
+
+        synchronized boolean isFinal(final Attempt attempt) {
+            return this._responded && this._final == attempt;
+        }
+
+        /**
+         * discard upstreams of attempts not final
+         * @return final attempt or null
+         */
+        Attempt halt() {
+            final List<Attempt> attempts;
+            final Attempt last;
+            synchronized (this) {
+                this._halted = true;
+                attempts = this._attempts;
+                last = this._final;
+            }
+            for (final Attempt attempt : attempts) {
+                if (attempt != last) {
+                    attempt.release(true);
+                }
+            }
+            return last;
+        }
+
+        private final List<Attempt> _attempts = new ArrayList<>(1);
+        private Attempt _final = null;
+        private boolean _responded = false;
+        private boolean _halted = false;
     }
 
-    private Span ctx2span(final ReactContext ctx, final Target target, final HttpRequest request) {
-        final String operationName = buildOperationName(request.uri());
-        ctx.span().setOperationName(operationName);
+    // feed balancer's latency only by response head (not 5xx), latency is from connect to response head received,
+    // failure is sampled as penalty, and unsubscribed (hedge loser or canceled) is not sampled
+    private static <T> Transformer<T, T> feedLatency(final MarkableTarget target) {
+        return source -> Observable.defer(() -> {
+            final long begin = System.nanoTime();
+            return source.doOnNext(any -> target.observeLatency(System.nanoTime() - begin))
+                    .doOnError(e -> target.observeFailure());
+        });
+    }
+
+    // feed target's outstanding for balancer, and probes for outlier detection
+    private <T> Transformer<T, T> trackRequest(final MarkableTarget target) {
+        return source -> Observable.defer(() -> {
+            final Action0 endRequest = target.beginRequest();
+            if (null == endRequest) {
+                // lost last probe slot to other request, retry on other target
+                return Observable.error(new TransportException("NO_PROBE_SLOT for API of " + target));
+            }
+            final Action0 endServiceRequest = _serviceMemo.beginRequest(target.serviceUri());
+            if (null == endServiceRequest) {
+                endRequest.call();
+                return Observable.error(new TransportException("NO_PROBE_SLOT for service " + target.serviceUri()));
+            }
+            return source.doOnTerminate(endRequest).doOnUnsubscribe(endRequest)
+                    .doOnTerminate(endServiceRequest).doOnUnsubscribe(endServiceRequest);
+        });
+    }
+
+    private Span ctx2span(final ReactContext ctx, final Target target, final HttpRequest request, final String operationName) {
         return ctx.tracer().buildSpan(operationName)
             .withTag(Tags.COMPONENT.getKey(), "jocean-http")
             .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
@@ -324,48 +664,127 @@ public class ForwardTrade extends SingleReactor {
     }
 
     private Transformer<FullMessage<HttpRequest>, Object> fullreq2objs() {
-        return getfullreq -> getfullreq.flatMap(fullreq -> Observable.<Object>just(fullreq.message()).concatWith(fullreq.body().concatMap(body -> body.content()))
-                .concatWith(Observable.just(LastHttpContent.EMPTY_LAST_CONTENT)));
+        return getfullreq -> getfullreq.flatMap(fullreq -> Observable.concat(
+                Observable.just(fullreq.message()),
+                fullreq.body().concatMap(body -> body.content()),
+                Observable.just(LastHttpContent.EMPTY_LAST_CONTENT)));
     }
 
-    private Action1<? super Boolean> configDBS(final HttpTrade trade) {
-        return dbs-> {
-            LOG.info("forward: pathPattern {}'s dbs {}", _matcher.pathPattern(), dbs);
-            if (dbs) {
-                // 对已经发送成功的 DisposableWrapper<?>，及时 invoke it's dispose() 回收占用的资源 (memory, ...)
-                trade.writeCtrl().sended().subscribe(sended -> DisposableWrapperUtil.dispose(sended));
-            }
-        };
+    private void configDBS(final HttpTrade trade, final boolean dbs) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("forward: pathPattern {}'s dbs {}", _matcher.pathPattern(), dbs);
+        }
+        if (dbs) {
+            // 对已经发送成功的 DisposableWrapper<?>，及时 invoke it's dispose() 回收占用的资源 (memory, ...)
+            trade.writeCtrl().sended().subscribe(sended -> DisposableWrapperUtil.dispose(sended));
+        }
+    }
+
+    private Observable<? extends HttpInitiator> forwardTo(final MarkableTarget target) {
+        return null != target.pool() ? target.pool().acquire(() -> connect(target)) : connect(target);
     }
 
-    private Observable<? extends HttpInitiator> forwardTo(final Target target) {
-        return this._finder.find(HttpClient.class).flatMap(client -> client.initiator()
+    private Observable<? extends HttpInitiator> connect(final Target target) {
+        return this._beanCache.find(HttpClient.class).flatMap(client -> client.initiator()
                 .remoteAddress(buildAddress(target.serviceUri())).feature(target.features().call())
                 .feature(Feature.ENABLE_LOGGING_OVER_SSL)
                 .build());
     }
 
+    // follower of collapsed request has no upstream interaction, record it as relayed by collapsed target
+    private void recordFollowed(final ReactContext ctx, final HttpRequest req, final HttpResponseStatus status) {
+        final long ttl = ctx.watch().stopAndRestart();
+        final HttpTrade trade = ctx.trade();
+        final RelayMemo memo = _memoBuilder.build(null, RequestParser.parsedOf(ctx, req));
+        memo.incBizResult(RESULT.RELAY_SUCCESS, ttl);
+        if (null != this._accessLogger && this._accessLogger.log(
+                System.currentTimeMillis() - ttl,
+                ttl,
+                req.method().name(),
+                req.uri(),
+                status.code(),
+                this._matcher.pathPattern(),
+                COLLAPSED_TARGET,
+                trade.traffic().inboundBytes(),
+                trade.traffic().outboundBytes(),
+                0,
+                0)) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("FORWARD_COLLAPSED" + "\ncost:[{}]s,status:[{}]"
+                            + "\nINCOME:channel:{},request:[{}]bytes,response:[{}]bytes"
+                            + "\nREQ\n[{}]",
+                    ttl / (float) 1000.0,
+                    status,
+                    trade.transport(),
+                    trade.traffic().inboundBytes(),
+                    trade.traffic().outboundBytes(),
+                    req
+                    );
+        }
+    }
+
+    private boolean logAccess(
+            final long ttl,
+            final MarkableTarget target,
+            final HttpTrade trade,
+            final HttpInitiator upstream,
+            final HttpRequest req,
+            final HttpResponse resp) {
+        return null != this._accessLogger && this._accessLogger.log(
+                System.currentTimeMillis() - ttl,
+                ttl,
+                null != req ? req.method().name() : null,
+                null != req ? req.uri() : null,
+                null != resp ? resp.status().code() : 0,
+                this._matcher.pathPattern(),
+                target.serviceUri(),
+                trade.traffic().inboundBytes(),
+                trade.traffic().outboundBytes(),
+                upstream.traffic().outboundBytes(),
+                upstream.traffic().inboundBytes());
+    }
+
     private void enableDisposeSended(final WriteCtrl writeCtrl, final int size) {
         final AtomicInteger sendingSize = new AtomicInteger(0);
 
         writeCtrl.sending().subscribe(sending -> sendingSize.addAndGet(getReadableBytes(sending)));
         writeCtrl.sended().subscribe(sended -> {
             if (sendingSize.get() > size) {
-                LOG.info("sendingSize is {}, try dispose sended {}, which DisposableWrapper({})",
-                        sendingSize.get(), sended, (sended instanceof DisposableWrapper));
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("sendingSize is {}, try dispose sended {}, which DisposableWrapper({})",
+                            sendingSize.get(), sended, (sended instanceof DisposableWrapper));
+                }
                 DisposableWrapperUtil.dispose(sended);
-            } else {
-                LOG.info("sendingSize is {}, SKIP sended {}", sendingSize.get(), sended);
             }
         });
     }
 
-    private Observable<Boolean> isDBS() {
-        return this._finder.find("configs", Map.class).map(conf -> !istrue(conf.get(_matcher.pathPattern() + ":" + "disable_dbs")));
+    // flags of this route precomputed from config view, recomputed only when config view's version changed
+    static final class RouteFlags {
+        RouteFlags(final long version, final ConfigView.Settings settings) {
+            this.version = version;
+            this.dbs = !settings.getBoolean("disable_dbs", false);
+        }
+
+        final long version;
+        final boolean dbs;
     }
 
-    private static boolean istrue(final Object value) {
-        return value == null ? false : value.toString().equals("true");
+    RouteFlags routeFlags() {
+        final RouteFlags flags = this._routeFlags;
+        if (null == this._configView) {
+            return flags;
+        }
+        final long version = this._configView.version();
+        if (flags.version == version) {
+            return flags;
+        }
+        final RouteFlags updated = new RouteFlags(version, this._configView.settingsOf(this._matcher.pathPattern()));
+        LOG.info("forward: pathPattern {}'s dbs {}", _matcher.pathPattern(), updated.dbs);
+        this._routeFlags = updated;
+        return updated;
     }
 
     private int getReadableBytes(final Object sending) {
@@ -376,7 +795,6 @@ public class ForwardTrade extends SingleReactor {
         } else if (unwrap instanceof ByteBufHolder) {
             readableBytes = ((ByteBufHolder) unwrap).content().readableBytes();
         }
-        LOG.info("{}'s getReadableBytes: {} ", unwrap, readableBytes);
         return readableBytes;
     }
 
@@ -446,190 +864,75 @@ public class ForwardTrade extends SingleReactor {
         };
     }
 
-    private MarkableTargetImpl selectTarget() {
-        int total = 0;
-        MarkableTargetImpl best = null;
-        for ( final MarkableTargetImpl peer : this._targets ) {
-            if ( isTargetActive(peer) ) {
-                // nginx C code: peer->current_weight += peer->effective_weight;
-                final int effectiveWeight = peer._effectiveWeight.get();
-                final int currentWeight = peer._currentWeight.addAndGet( effectiveWeight );
-                total += effectiveWeight;
-//  nginx C code:
-//                if (best == NULL || peer->current_weight > best->current_weight) {
-//                    best = peer;
-//                }
-                if ( null == best || best._currentWeight.get() < currentWeight ) {
-                    best = peer;
-                }
-            }
-        }
-
-        if (null == best) {
-            return null;
-        }
-
-// nginx C code: best->current_weight -= total;
-        best._currentWeight.addAndGet(-total);
-
-        return best;
-    }
-
-    private boolean isTargetActive(final MarkableTargetImpl target) {
-        return !(this._serviceMemo.isServiceDown(target.serviceUri()) || target._down.get());
+    MarkableTarget selectTarget() {
+        return this._balancer.select(this::isTargetActive);
     }
 
-    private void markServiceDownStatus(final Target target, final boolean isDown) {
-        this._serviceMemo.markServiceDownStatus(target.serviceUri(), isDown);
+    private synchronized void updateBalancer() {
+        this._balancer.update(this._targets);
     }
 
-    private RoutingInfo buildRoutingInfo(final HttpRequest req) {
-        final String path = pathOf(req);
-        return new RoutingInfo() {
-            @Override
-            public String getMethod() {
-                return req.method().name();
-            }
-
-            @Override
-            public String getPath() {
-                return path;
-            }};
-    }
-
-    private String pathOf(final HttpRequest req) {
-        final QueryStringDecoder decoder = new QueryStringDecoder(req.uri());
-
-        String path = decoder.path();
-        final int p = path.indexOf(";");
-        if (p>-1) {
-            path = path.substring(0, p);
-        }
-        return path;
+    private boolean isTargetActive(final MarkableTarget target) {
+        return !(this._serviceMemo.isServiceDown(target.serviceUri()) || target.isAPIDown());
     }
 
     private boolean isCommunicationFailure(final Throwable error) {
         return error instanceof ConnectException;
     }
 
-    private class MarkableTargetImpl implements Target {
-
-        private static final int MAX_EFFECTIVEWEIGHT = 1000;
-
-        @Override
-        public String toString() {
-            return this._target.toString();
-        }
-
-        MarkableTargetImpl(final Target target) {
-            this._target = target;
-        }
-
-        @Override
-        public URI serviceUri() {
-            return this._target.serviceUri();
-        }
-
-        @Override
-        public Func0<Feature[]> features() {
-            return this._target.features();
-        }
-
-        @SuppressWarnings("unused")
-        public int addWeight(final int deltaWeight) {
-            int weight = this._effectiveWeight.addAndGet(deltaWeight);
-            if ( weight > MAX_EFFECTIVEWEIGHT ) {
-                weight = this._effectiveWeight.addAndGet(-deltaWeight);
-            }
-            return weight;
+    private class HedgeMeters {
+        HedgeMeters() {
+            this._hedges = Counter.builder("jocean.xharbor.forward.hedges")
+                    .tag("service", _serviceName)
+                    .description("The count of hedged requests sent by jocean xharbor forward")
+                    .register(_meterRegistry);
+            this._wins = Counter.builder("jocean.xharbor.forward.hedge.wins")
+                    .tag("service", _serviceName)
+                    .description("The count of hedged requests responded before primary")
+                    .register(_meterRegistry);
         }
 
-        public void markAPIDownStatus(final boolean isDown) {
-            this._down.set(isDown);
-        }
-
-        private final Target _target;
-        private final AtomicInteger _currentWeight = new AtomicInteger(1);
-        private final AtomicInteger _effectiveWeight = new AtomicInteger(1);
-        private final AtomicBoolean _down = new AtomicBoolean(false);
-    }
-
-    private Timer getOrCreateInteractTimer(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        Timer timer = this._interactTimers.get(keyOfTags);
-
-        if (null == timer) {
-            timer = Timer.builder("jocean.xharbor.interact.duration")
-                .tags(tags)
-                .description("The duration of jocean xharbor interact")
-                .publishPercentileHistogram()
-                .maximumExpectedValue(Duration.ofSeconds(30))
-                .register(_meterRegistry);
-
-            final Timer old = this._interactTimers.putIfAbsent(keyOfTags, timer);
-            if (null != old) {
-                timer = old;
-            }
-        }
-        return timer;
-    }
-
-    private DistributionSummary getOrCreateInboundSummary(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        DistributionSummary summary = this._inboundSummarys.get(keyOfTags);
-
-        if (null == summary) {
-            summary = DistributionSummary.builder("jocean.xharbor.interact.inbound")
-                .tags(tags)
-                .description("The inbound size of jocean xharbor interact") // optional
-                .baseUnit(BaseUnits.BYTES)
-                .publishPercentileHistogram()
-                .maximumExpectedValue( 8 * 1024L)
-                .register(_meterRegistry);
-
-            final DistributionSummary old = this._inboundSummarys.putIfAbsent(keyOfTags, summary);
-            if (null != old) {
-                summary = old;
-            }
-        }
-        return summary;
+        private final Counter _hedges;
+        private final Counter _wins;
     }
 
-    private DistributionSummary getOrCreateOutboundSummary(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        DistributionSummary summary = this._outboundSummarys.get(keyOfTags);
-
-        if (null == summary) {
-            summary = DistributionSummary.builder("jocean.xharbor.interact.outbound")
-                .tags(tags)
-                .description("The outbound size of jocean xharbor interact") // optional
-                .baseUnit(BaseUnits.BYTES)
-                .publishPercentileHistogram()
-                .maximumExpectedValue( 8 * 1024L)
-                .register(_meterRegistry);
-
-            final DistributionSummary old = this._outboundSummarys.putIfAbsent(keyOfTags, summary);
-            if (null != old) {
-                summary = old;
+    private HedgeMeters hedgeMeters() {
+        HedgeMeters meters = this._hedgeMeters;
+        if (null == meters) {
+            synchronized (this) {
+                meters = this._hedgeMeters;
+                if (null == meters) {
+                    meters = this._hedgeMeters = new HedgeMeters();
+                }
             }
         }
-        return summary;
+        return meters;
     }
 
     private final MatchRule     _matcher;
-    private final List<MarkableTargetImpl>  _targets = Lists.newCopyOnWriteArrayList();
+    private final List<MarkableTarget>  _targets = Lists.newCopyOnWriteArrayList();
+    private final TargetBalancer _balancer;
+    private final OutlierDetector.Settings _outlierSettings;
+    // max retries on other target for one trade
+    private final int _maxRetries;
+    private final RetryBudget _retryBudget;
+    // null means hedge disabled
+    private final HedgeDelay _hedgeDelay;
+    private final RetryBudget _hedgeBudget;
+    private volatile HedgeMeters _hedgeMeters = null;
+    // null means collapse disabled
+    private final RequestCollapser _collapser;
 
     private final String        _serviceName;
-    private final BeanFinder    _finder;
+    private final BeanCache     _beanCache;
     private final RelayMemo.Builder _memoBuilder;
+    // null or disabled means log access info by LOG.debug
+    private final AccessLogger _accessLogger;
+    // null means all route flags are default
+    private final ConfigView _configView;
+    private volatile RouteFlags _routeFlags = new RouteFlags(-1, ConfigView.Settings.EMPTY);
     private final ServiceMemo   _serviceMemo;
-    private final io.netty.util.Timer _timer;
     private final MeterRegistry _meterRegistry;
 
-    private final ConcurrentMap<StringTags, Timer> _interactTimers = new ConcurrentHashMap<>();
-    private final ConcurrentMap<StringTags, DistributionSummary> _inboundSummarys = new ConcurrentHashMap<>();
-    private final ConcurrentMap<StringTags, DistributionSummary> _outboundSummarys = new ConcurrentHashMap<>();
+    private volatile OperationMeters.ByPath _interactMeters = null;
 }
@@ -0,0 +1,76 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * delay before ForwardTrade send hedged request: fixed, or percentile of recent response head latencies.
+ */
+class HedgeDelay {
+
+    // latencies of recent samples used by dynamic delay
+    private static final int SAMPLES = 1024;
+    // dynamic delay need at least MIN_SAMPLES samples
+    private static final int MIN_SAMPLES = 100;
+    private static final long RECOMPUTE_INTERVAL_MS = 1000L;
+
+    /**
+     * @param fixedMs >= 0: fixed delay, < 0: dynamic delay
+     * @param percentile percentile of recent latencies used as dynamic delay
+     */
+    HedgeDelay(final long fixedMs, final int percentile) {
+        this._fixedMs = fixedMs;
+        this._percentile = Math.max(1, Math.min(100, percentile));
+    }
+
+    @Override
+    public String toString() {
+        return this._fixedMs >= 0 ? this._fixedMs + "ms" : "p" + this._percentile + "(" + this._dynamicMs + "ms)";
+    }
+
+    /**
+     * @return delay in ms, < 0 means not hedge (not enough samples)
+     */
+    long delayMs() {
+        if (this._fixedMs >= 0) {
+            return this._fixedMs;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - this._computedAt >= RECOMPUTE_INTERVAL_MS) {
+            this._computedAt = now;
+            this._dynamicMs = computePercentile();
+        }
+        return this._dynamicMs;
+    }
+
+    void record(final long latencyNanos) {
+        if (this._fixedMs < 0) {
+            final int idx = this._count.getAndIncrement();
+            this._samples.set(idx & (SAMPLES - 1), TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        }
+    }
+
+    private long computePercentile() {
+        final int recorded = this._count.get();
+        // recorded < 0 when overflow
+        final int count = recorded < 0 ? SAMPLES : Math.min(recorded, SAMPLES);
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        final long[] latencies = new long[count];
+        for (int idx = 0; idx < count; idx++) {
+            latencies[idx] = this._samples.get(idx);
+        }
+        Arrays.sort(latencies);
+        return latencies[Math.min(count - 1, count * this._percentile / 100)];
+    }
+
+    private final long _fixedMs;
+    private final int _percentile;
+    private final AtomicLongArray _samples = new AtomicLongArray(SAMPLES);
+    private final AtomicInteger _count = new AtomicInteger(0);
+    private volatile long _computedAt = 0;
+    private volatile long _dynamicMs = -1;
+}
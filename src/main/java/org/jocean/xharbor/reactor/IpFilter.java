@@ -0,0 +1,188 @@
+package org.jocean.xharbor.reactor;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.idiom.ExceptionUtils;
+import org.jocean.xharbor.util.CidrSet;
+import org.jocean.xharbor.util.RequestParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import rx.Observable;
+import rx.Single;
+
+/**
+ * filter matched requests by first client ip (x-forwarded-for) with IPv4/IPv6 CIDR list loaded from local file
+ * (one cidr per line, '#' for comment), file is reloaded when modified.
+ * deny mode: reject ip within list; allow mode: reject ip not within list (and request without client ip).
+ */
+public class IpFilter extends SingleReactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IpFilter.class);
+
+    static final String MODE_DENY = "deny";
+    static final String MODE_ALLOW = "allow";
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("IpFilter [matcher=").append(_matcher)
+            .append(", mode=").append(_mode)
+            .append(", file=").append(_file)
+            .append(", cidrs=").append(_cidrs)
+            .append("]");
+        return builder.toString();
+    }
+
+    public void start() {
+        reload();
+        if (this._reloadIntervalMs > 0 && null != this._timer) {
+            this._reloadTimeout = this._timer.newTimeout(this::checkReload, this._reloadIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void stop() {
+        this._stopped = true;
+        final Timeout timeout = this._reloadTimeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
+    }
+
+    @Override
+    public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+        if (null != io.outbound()) {
+            return Single.just(false);
+        }
+        return io.inbound().first().map(fullreq -> isRejected(ctx, fullreq.message())).toSingle();
+    }
+
+    @Override
+    public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("try {} for trade {}", this, ctx.trade());
+        }
+        if (null != io.outbound()) {
+            return Single.<InOut>just(null);
+        }
+        return io.inbound().first().map(fullreq -> {
+            if (isRejected(ctx, fullreq.message())) {
+                if (_log) {
+                    LOG.info("IP_FILTERED: {} request {} from {}", _mode, fullreq.message().uri(),
+                            RequestParser.parsedOf(ctx, fullreq.message()).peerip());
+                }
+                return io4reject(io, fullreq.message());
+            } else {
+                // not handle this trade
+                return null;
+            }
+        }).toSingle();
+    }
+
+    boolean isRejected(final ReactContext ctx, final HttpRequest request) {
+        if (!this._matcher.match(request)) {
+            return false;
+        }
+        final boolean listed = this._cidrs.contains(RequestParser.parsedOf(ctx, request).peerip());
+        return MODE_ALLOW.equals(this._mode) ? !listed : listed;
+    }
+
+    private InOut io4reject(final InOut orgio, final HttpRequest request) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return orgio.inbound();
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                final HttpResponse response = new DefaultHttpResponse(request.protocolVersion(),
+                        HttpResponseStatus.valueOf(_responseStatus));
+                response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+                return BufferedResponse.sendAfterInbound(orgio, new FullMessage<HttpResponse>() {
+                    @Override
+                    public HttpResponse message() {
+                        return response;
+                    }
+                    @Override
+                    public Observable<? extends MessageBody> body() {
+                        return Observable.empty();
+                    }});
+            }};
+    }
+
+    private void checkReload(final Timeout timeout) {
+        if (this._stopped) {
+            return;
+        }
+        try {
+            if (new File(this._file).lastModified() != this._lastModified) {
+                reload();
+            }
+        } finally {
+            this._reloadTimeout = this._timer.newTimeout(this::checkReload, this._reloadIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void reload() {
+        if (null == this._file) {
+            return;
+        }
+        final File file = new File(this._file);
+        final long lastModified = file.lastModified();
+        try {
+            final CidrSet cidrs = new CidrSet.Builder()
+                    .addLines(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+                    .build();
+            this._cidrs = cidrs;
+            this._lastModified = lastModified;
+            LOG.info("IpFilter load {} cidrs from {}", cidrs.size(), this._file);
+        } catch (final Exception e) {
+            // keep last loaded cidrs
+            this._lastModified = lastModified;
+            LOG.warn("exception when load cidrs from {}, detail: {}", this._file, ExceptionUtils.exception2detail(e));
+        }
+    }
+
+    @Inject
+    MatchRule _matcher;
+
+    @Inject
+    Timer _timer;
+
+    // deny / allow
+    @Value("${filter.mode}")
+    String _mode = MODE_DENY;
+
+    @Value("${filter.file}")
+    String _file = null;
+
+    // <= 0 means not reload
+    @Value("${filter.reload_interval_ms}")
+    long _reloadIntervalMs = 10 * 1000L;
+
+    @Value("${response.status}")
+    int _responseStatus = 403;
+
+    @Value("${log}")
+    boolean _log = false;
+
+    private volatile CidrSet _cidrs = CidrSet.EMPTY;
+    private volatile long _lastModified = 0;
+    private volatile Timeout _reloadTimeout = null;
+    private volatile boolean _stopped = false;
+}
@@ -1,31 +1,52 @@
 package org.jocean.xharbor.reactor;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.inject.Inject;
 
 import org.jocean.http.util.RxNettys;
 import org.jocean.idiom.BeanHolder;
 import org.jocean.idiom.BeanHolderAware;
 import org.jocean.idiom.DisposableWrapper;
 import org.jocean.idiom.DisposableWrapperUtil;
+import org.jocean.idiom.ExceptionUtils;
 import org.jocean.idiom.Ordered;
 import org.jocean.idiom.Pair;
 import org.jocean.redis.RedisClient;
 import org.jocean.redis.RedisUtil;
+import org.jocean.xharbor.util.BoundedQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 
 import com.alibaba.fastjson.JSON;
 import com.google.common.collect.Maps;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.redis.ArrayRedisMessage;
+import io.netty.handler.codec.redis.FullBulkStringRedisMessage;
 import io.netty.handler.codec.redis.RedisMessage;
+import io.netty.util.Timeout;
 import rx.Observable;
 import rx.Single;
 
 /**
+ * log access info (keyed by remoteip) to redis: records are pushed into bounded queue (dropped when full),
+ * and flushed by timer as one MSET per batch, at most one batch in flight.
  * @author isdom
  *
  */
@@ -39,60 +60,230 @@ public class LogAccessInfo2Redis extends SingleReactor implements Ordered, BeanH
     }
 
     @Override
-    public Single<Boolean> match(final ReactContext ctx, final InOut io) {
-        return Single.just(true);
+    public String toString() {
+        return "LogAccessInfo2Redis [queue=" + this._queue + ", batchSize=" + this._batchSize
+                + ", flushIntervalMs=" + this._flushIntervalMs + "]";
     }
 
-    @Override
-    public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
-        if ( null != this._beanHolder) {
-            final RedisClient redisclient =
-                    _beanHolder.getBean(RedisClient.class);
-            if (null != redisclient) {
-                return tryLogtoRedis(ctx, io, redisclient);
-            }
+    public void start() {
+        this._queue = new BoundedQueue<>(this._queueSize);
+        schedule();
+    }
+
+    public void stop() {
+        this._stopped = true;
+        final Timeout timeout = this._flushTimeout;
+        if (null != timeout) {
+            timeout.cancel();
         }
-        return Single.<InOut>just(null);
+    }
 
+    @Override
+    public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+        return Single.just(true);
     }
 
-    private Single<? extends InOut> tryLogtoRedis(final ReactContext ctx, final InOut io,
-            final RedisClient redisclient) {
+    @Override
+    public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
         if (null != io.inbound() && null != io.outbound()) {
             Observable.zip(
                     io.inbound().map(fullreq -> fullreq.message()),
                     io.outbound().filter(obj -> obj instanceof DisposableWrapper)
                         .map(obj -> (DisposableWrapper<HttpObject>)obj)
                         .map(DisposableWrapperUtil.unwrap()).compose(RxNettys.asHttpResponse()),
-                    (req, resp) -> Pair.of(req, resp)).<RedisMessage>flatMap(reqAndResp -> {
-                        final HttpRequest req = reqAndResp.first;
-                        final HttpResponse resp = reqAndResp.second;
-                        final String remoteip = reqAndResp.first.headers().get("remoteip");
-                        final Map<String, Object> data = Maps.newHashMap();
-                        data.put("method", req.method().name());
-                        data.put("uri", req.uri());
-                        data.put("reqContentType", req.headers().get(HttpHeaderNames.CONTENT_TYPE));
-                        data.put("reqContentLength", req.headers().get(HttpHeaderNames.CONTENT_LENGTH));
-                        data.put("status", resp.status().code());
-                        data.put("respContentType", resp.headers().get(HttpHeaderNames.CONTENT_TYPE));
-                        data.put("respContentLength", resp.headers().get(HttpHeaderNames.CONTENT_LENGTH));
-
-                        if (null != remoteip) {
-                            return redisclient.getConnection().compose(RedisUtil.interacts(
-                                    RedisUtil.cmdSet(remoteip, JSON.toJSONString(data)).build()));
-                        } else {
-                            return Observable.<RedisMessage>empty();
-                        }
-                    }).subscribe(redismsg -> LOG.info("trade log to redis with {}",
-                            RedisUtil.dumpAggregatedRedisMessage(redismsg)));
+                    (req, resp) -> Pair.of(req, resp))
+                .subscribe(reqAndResp -> enqueue(reqAndResp.first, reqAndResp.second),
+                        e -> LOG.debug("exception when log access info, detail: {}", ExceptionUtils.exception2detail(e)));
         }
         return Single.<InOut>just(null);
     }
 
+    void enqueue(final HttpRequest req, final HttpResponse resp) {
+        final String remoteip = req.headers().get("remoteip");
+        if (null == remoteip) {
+            return;
+        }
+        final BoundedQueue<Record> queue = this._queue;
+        if (null == queue || !queue.offer(new Record(remoteip, req, resp))) {
+            meters()._dropped.increment();
+        }
+    }
+
+    private static final class Record {
+        Record(final String key, final HttpRequest req, final HttpResponse resp) {
+            this._key = key;
+            this._method = req.method().name();
+            this._uri = req.uri();
+            this._reqContentType = req.headers().get(HttpHeaderNames.CONTENT_TYPE);
+            this._reqContentLength = req.headers().get(HttpHeaderNames.CONTENT_LENGTH);
+            this._status = resp.status().code();
+            this._respContentType = resp.headers().get(HttpHeaderNames.CONTENT_TYPE);
+            this._respContentLength = resp.headers().get(HttpHeaderNames.CONTENT_LENGTH);
+        }
+
+        String toJSON() {
+            final Map<String, Object> data = Maps.newHashMap();
+            data.put("method", this._method);
+            data.put("uri", this._uri);
+            data.put("reqContentType", this._reqContentType);
+            data.put("reqContentLength", this._reqContentLength);
+            data.put("status", this._status);
+            data.put("respContentType", this._respContentType);
+            data.put("respContentLength", this._respContentLength);
+            return JSON.toJSONString(data);
+        }
+
+        private final String _key;
+        private final String _method;
+        private final String _uri;
+        private final String _reqContentType;
+        private final String _reqContentLength;
+        private final int _status;
+        private final String _respContentType;
+        private final String _respContentLength;
+    }
+
+    private void schedule() {
+        if (!this._stopped) {
+            this._flushTimeout = this._timer.newTimeout(timeout -> {
+                    flush();
+                    schedule();
+                }, this._flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void flush() {
+        if (this._queue.size() == 0 || !this._flushing.compareAndSet(false, true)) {
+            return;
+        }
+        final RedisClient redisclient = null != this._beanHolder ? this._beanHolder.getBean(RedisClient.class) : null;
+        final List<Record> batch = new ArrayList<>(Math.min(this._queue.size(), this._batchSize));
+        if (0 == this._queue.drainTo(batch, this._batchSize)) {
+            this._flushing.set(false);
+            return;
+        }
+        if (null == redisclient) {
+            meters()._dropped.increment(batch.size());
+            this._flushing.set(false);
+            return;
+        }
+        final long begin = System.nanoTime();
+        interact(redisclient, msetOf(batch))
+            .timeout(this._flushTimeoutMs, TimeUnit.MILLISECONDS)
+            .subscribe(redismsg -> {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("{} access info log to redis with {}", batch.size(),
+                                RedisUtil.dumpAggregatedRedisMessage(redismsg));
+                    }
+                },
+                e -> {
+                    LOG.warn("exception when log {} access info to redis, detail: {}", batch.size(),
+                            ExceptionUtils.exception2detail(e));
+                    meters()._failed.increment(batch.size());
+                    onFlushed(begin);
+                },
+                () -> {
+                    meters()._written.increment(batch.size());
+                    onFlushed(begin);
+                });
+    }
+
+    // send command with one connection of redisclient
+    Observable<? extends RedisMessage> interact(final RedisClient redisclient, final RedisMessage cmd) {
+        return redisclient.getConnection().compose(RedisUtil.interacts(cmd));
+    }
+
+    private void onFlushed(final long begin) {
+        meters()._flush.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        this._flushing.set(false);
+        // flush again when backlog is large, else wait for next tick
+        if (!this._stopped && this._queue.size() >= this._batchSize) {
+            flush();
+        }
+    }
+
+    // MSET with all records of batch: one command (and one round trip) per batch, last record win for same key
+    private static RedisMessage msetOf(final List<Record> batch) {
+        final List<RedisMessage> children = new ArrayList<>(batch.size() * 2 + 1);
+        children.add(bulkOf("MSET"));
+        for (final Record record : batch) {
+            children.add(bulkOf(record._key));
+            children.add(bulkOf(record.toJSON()));
+        }
+        return new ArrayRedisMessage(children);
+    }
+
+    private static RedisMessage bulkOf(final String content) {
+        return new FullBulkStringRedisMessage(Unpooled.wrappedBuffer(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private class Meters {
+        Meters() {
+            this._dropped = counter("jocean.xharbor.accesslog.records", "result", "dropped");
+            this._failed = counter("jocean.xharbor.accesslog.records", "result", "failed");
+            this._written = counter("jocean.xharbor.accesslog.records", "result", "written");
+            this._flush = Timer.builder("jocean.xharbor.accesslog.flush")
+                    .description("The flush latency of access log batch to redis")
+                    .register(_meterRegistry);
+            Gauge.builder("jocean.xharbor.accesslog.queued", LogAccessInfo2Redis.this,
+                    log -> null != log._queue ? log._queue.size() : 0)
+                .description("The queued access log records wait for flush")
+                .register(_meterRegistry);
+        }
+
+        private Counter counter(final String name, final String... tags) {
+            return Counter.builder(name)
+                    .tags(tags)
+                    .register(_meterRegistry);
+        }
+
+        private final Counter _dropped;
+        private final Counter _failed;
+        private final Counter _written;
+        private final Timer _flush;
+    }
+
+    private Meters meters() {
+        Meters meters = this._meters;
+        if (null == meters) {
+            synchronized (this) {
+                meters = this._meters;
+                if (null == meters) {
+                    meters = this._meters = new Meters();
+                }
+            }
+        }
+        return meters;
+    }
+
     @Override
     public int ordinal() {
         return 0;
     }
 
     private BeanHolder _beanHolder;
+
+    @Inject
+    io.netty.util.Timer _timer;
+
+    @Inject
+    MeterRegistry _meterRegistry = Metrics.globalRegistry;
+
+    @Value("${queue.size}")
+    int _queueSize = 10000;
+
+    @Value("${batch.size}")
+    int _batchSize = 200;
+
+    @Value("${flush.interval_ms}")
+    long _flushIntervalMs = 100;
+
+    @Value("${flush.timeout_ms}")
+    long _flushTimeoutMs = 5000;
+
+    private volatile BoundedQueue<Record> _queue = null;
+    private final AtomicBoolean _flushing = new AtomicBoolean(false);
+    private volatile Timeout _flushTimeout = null;
+    private volatile boolean _stopped = false;
+    private volatile Meters _meters = null;
 }
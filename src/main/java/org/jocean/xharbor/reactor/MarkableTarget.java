@@ -0,0 +1,167 @@
+package org.jocean.xharbor.reactor;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jocean.http.Feature;
+import org.jocean.xharbor.api.Target;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.jocean.xharbor.util.OutlierDetector;
+
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * Target with runtime state used by ForwardTrade's balancer:
+ * effective weight, API outlier detection, outstanding requests and peak EWMA of latency.
+ */
+class MarkableTarget implements Target {
+
+    private static final int MAX_EFFECTIVEWEIGHT = 1000;
+
+    // latency sample's effect decay to 1/e after 10 seconds
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // latency sample of failed request: twice of current average, at least 1 second and at most 1 minute
+    private static final long MIN_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_PENALTY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Override
+    public String toString() {
+        return this._target.toString();
+    }
+
+    MarkableTarget(final Target target, final UpstreamPool pool, final OutlierDetector.Settings outlierSettings,
+            final Action0 onWeightChanged) {
+        this._target = target;
+        this._pool = pool;
+        this._outlier = new OutlierDetector("API of " + target, outlierSettings);
+        this._onWeightChanged = onWeightChanged;
+    }
+
+    /**
+     * @return upstream pool of this target, null means connect directly
+     */
+    UpstreamPool pool() {
+        return this._pool;
+    }
+
+    @Override
+    public URI serviceUri() {
+        return this._target.serviceUri();
+    }
+
+    @Override
+    public Func0<Feature[]> features() {
+        return this._target.features();
+    }
+
+    public int addWeight(final int deltaWeight) {
+        int weight = this._effectiveWeight.addAndGet(deltaWeight);
+        if ( weight > MAX_EFFECTIVEWEIGHT ) {
+            weight = this._effectiveWeight.addAndGet(-deltaWeight);
+        } else if (null != this._onWeightChanged) {
+            this._onWeightChanged.call();
+        }
+        return weight;
+    }
+
+    int weight() {
+        return this._effectiveWeight.get();
+    }
+
+    public void markAPIDownStatus(final boolean isDown) {
+        if (isDown) {
+            this._outlier.eject();
+        } else {
+            this._outlier.restore();
+        }
+    }
+
+    boolean isAPIDown() {
+        return !this._outlier.isAvailable();
+    }
+
+    OutlierDetector outlier() {
+        return this._outlier;
+    }
+
+    int outstanding() {
+        return this._outstanding.get();
+    }
+
+    /**
+     * mark one request begin to this target, latency is fed by caller: see observeLatency and observeFailure
+     * @return action to mark request end, safe to call more than once,
+     *          or null when API is half-open and no probe slot left
+     */
+    Action0 beginRequest() {
+        final Action0 endOutlier = this._outlier.beginRequest();
+        if (null == endOutlier) {
+            return null;
+        }
+        this._outstanding.incrementAndGet();
+        final AtomicBoolean ended = new AtomicBoolean(false);
+        return () -> {
+            if (ended.compareAndSet(false, true)) {
+                this._outstanding.decrementAndGet();
+                endOutlier.call();
+            }
+        };
+    }
+
+    /**
+     * failed request (connection refused, 5xx ...) is sampled as penalty latency,
+     * so target failing fast never seems faster than the healthy ones
+     */
+    void observeFailure() {
+        observeLatency(Math.min(MAX_PENALTY_NANOS, Math.max(MIN_PENALTY_NANOS, (long)(ewmaNanos() * 2))));
+    }
+
+    // immutable EWMA state, updated by CAS
+    private static final class Ewma {
+        Ewma(final double nanos, final long observedAt) {
+            this.nanos = nanos;
+            this.observedAt = observedAt;
+        }
+
+        final double nanos;
+        final long observedAt;
+    }
+
+    /**
+     * peak EWMA: sample above average replace it immediately,
+     * sample below average is merged with weight decay by elapsed time since last sample.
+     */
+    void observeLatency(final long latencyNanos) {
+        final long now = System.nanoTime();
+        for (;;) {
+            final Ewma current = this._ewma.get();
+            final double nanos;
+            if (latencyNanos > current.nanos) {
+                nanos = latencyNanos;
+            } else {
+                final double w = Math.exp(-(now - current.observedAt) / DECAY_NANOS);
+                nanos = current.nanos * w + latencyNanos * (1.0 - w);
+            }
+            if (this._ewma.compareAndSet(current, new Ewma(nanos, now))) {
+                return;
+            }
+        }
+    }
+
+    double ewmaNanos() {
+        return this._ewma.get().nanos;
+    }
+
+    private final Target _target;
+    private final UpstreamPool _pool;
+    private final Action0 _onWeightChanged;
+    private final AtomicInteger _effectiveWeight = new AtomicInteger(1);
+    private final OutlierDetector _outlier;
+    private final AtomicInteger _outstanding = new AtomicInteger(0);
+    private final AtomicReference<Ewma> _ewma = new AtomicReference<>(new Ewma(0.0, System.nanoTime()));
+}
@@ -21,6 +21,18 @@ public class MatchRule implements Comparable<MatchRule> {
         return this._pathPatternAsString;
     }
 
+    /**
+     * literal prefix which every matched request uri MUST start with,
+     * empty string means no such prefix can be extracted from path pattern.
+     */
+    String pathPrefix() {
+        return this._pathPrefix;
+    }
+
+    boolean matchMethod(final String method) {
+        return Regexs.isMatched(this._methodPattern, method);
+    }
+
     private Func1<String, Boolean> buildPredicate(final String expression) {
         if ("==null".equals(expression)) {
             return value -> null == value;
@@ -168,6 +180,74 @@ public class MatchRule implements Comparable<MatchRule> {
     void setPath(final String path) {
         this._pathPatternAsString   = path;
         this._pathPattern = Regexs.safeCompilePattern(this._pathPatternAsString);
+        this._pathPrefix = literalPrefixOf(this._pathPatternAsString);
+    }
+
+    static String literalPrefixOf(final String regex) {
+        // only pattern anchored with '^' and without top level alternation
+        // requires uri start with it's leading literal chars
+        if (null == regex || !regex.startsWith("^") || hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (int idx = 1; idx < regex.length(); idx++) {
+            final char c = regex.charAt(idx);
+            if (c == '\\') {
+                if (idx + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(idx + 1))) {
+                    // escaped meta char, eg: \. or \/
+                    sb.append(regex.charAt(++idx));
+                    continue;
+                }
+                break;
+            }
+            if (c == '?' || c == '*' || c == '{') {
+                // last literal char is optional
+                if (sb.length() > 0) {
+                    sb.setLength(sb.length() - 1);
+                }
+                break;
+            }
+            if (c == '+' || ".[]()^$|".indexOf(c) >= 0) {
+                break;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(final String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int idx = 0; idx < regex.length(); idx++) {
+            final char c = regex.charAt(idx);
+            if (c == '\\') {
+                if (idx + 1 < regex.length() && regex.charAt(idx + 1) == 'Q') {
+                    // quoted section, treat as unknown
+                    return true;
+                }
+                idx++;
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+                // ']' right after '[' or '[^' is literal
+                if (idx + 1 < regex.length() && regex.charAt(idx + 1) == '^') {
+                    idx++;
+                }
+                if (idx + 1 < regex.length() && regex.charAt(idx + 1) == ']') {
+                    idx++;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth <= 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Value("${request.headers}")
@@ -191,6 +271,7 @@ public class MatchRule implements Comparable<MatchRule> {
     String _methodPatternAsString = "";
     String _pathPatternAsString = "";
     String _headersPatternAsString = "";
+    String _pathPrefix = "";
 
     Pattern _methodPattern = null;
     Pattern _pathPattern = null;
@@ -0,0 +1,204 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.xharbor.util.RequestParser;
+import org.jocean.xharbor.util.TokenBuckets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import rx.Observable;
+import rx.Single;
+
+/**
+ * token bucket rate limit for matched requests, keyed by first client ip (x-forwarded-for), header value or path,
+ * respond 429 with Retry-After when key's bucket is empty, else pass trade to other reactors.
+ * request without key (eg: no x-forwarded-for or api key header) is not limited.
+ * match() take the token, and return true only when request would be rejected (so other reactors are tried
+ * when under limit), the rejection is remembered per trade for react(), so one request take at most one token.
+ */
+public class RateLimit extends SingleReactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimit.class);
+
+    static final String KEY_IP = "ip";
+    static final String KEY_HEADER = "header";
+    static final String KEY_PATH = "path";
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("RateLimit [name=").append(_name).append(", matcher=").append(_matcher)
+            .append(", key=").append(_keyType).append(KEY_HEADER.equals(_keyType) ? ":" + _keyHeader : "")
+            .append(", buckets=").append(buckets())
+            .append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+        if (null != io.outbound()) {
+            return Single.just(false);
+        }
+        return io.inbound().first().map(fullreq -> {
+            final String key = limitedKeyOf(ctx, fullreq.message());
+            if (null == key) {
+                return false;
+            }
+            // remember for react()
+            this._rejects.put(io, key);
+            if (null != ctx.trade()) {
+                ctx.trade().doOnHalt(() -> this._rejects.remove(io));
+            }
+            return true;
+        }).toSingle();
+    }
+
+    @Override
+    public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("try {} for trade {}", this, ctx.trade());
+        }
+        if (null != io.outbound()) {
+            return Single.<InOut>just(null);
+        }
+        return io.inbound().first().map(fullreq -> {
+            // rejected by match() already, or react() called without match()
+            final String rejectedKey = this._rejects.remove(io);
+            final String key = null != rejectedKey ? rejectedKey : limitedKeyOf(ctx, fullreq.message());
+            if (null == key) {
+                // under limit, not handle this trade
+                return null;
+            }
+            rejected().increment();
+            if (_log) {
+                LOG.info("RATE_LIMITED: {} for key {}, request: {}", _name, key, fullreq.message().uri());
+            }
+            return io4reject(io, fullreq.message());
+        }).toSingle();
+    }
+
+    /**
+     * take one token from request's bucket
+     * @return key of request when bucket is empty (should be rejected), else null
+     */
+    private String limitedKeyOf(final ReactContext ctx, final HttpRequest request) {
+        if (!this._matcher.match(request)) {
+            return null;
+        }
+        final String key = keyOf(ctx, request);
+        return null == key || buckets().tryAcquire(key) ? null : key;
+    }
+
+    String keyOf(final ReactContext ctx, final HttpRequest request) {
+        if (KEY_HEADER.equals(this._keyType)) {
+            return request.headers().get(this._keyHeader);
+        } else if (KEY_PATH.equals(this._keyType)) {
+            return RequestParser.parsedOf(ctx, request).path();
+        } else {
+            return RequestParser.parsedOf(ctx, request).peerip();
+        }
+    }
+
+    private InOut io4reject(final InOut orgio, final HttpRequest request) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return orgio.inbound();
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                final HttpResponse response = new DefaultHttpResponse(request.protocolVersion(),
+                        HttpResponseStatus.TOO_MANY_REQUESTS);
+                response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+                response.headers().set(HttpHeaderNames.RETRY_AFTER, buckets().retryAfterSeconds());
+                return BufferedResponse.sendAfterInbound(orgio, new FullMessage<HttpResponse>() {
+                    @Override
+                    public HttpResponse message() {
+                        return response;
+                    }
+                    @Override
+                    public Observable<? extends MessageBody> body() {
+                        return Observable.empty();
+                    }});
+            }};
+    }
+
+    private TokenBuckets buckets() {
+        TokenBuckets buckets = this._buckets;
+        if (null == buckets) {
+            synchronized (this) {
+                buckets = this._buckets;
+                if (null == buckets) {
+                    buckets = this._buckets = new TokenBuckets(this._ratePerSecond, this._burst, this._maxKeys);
+                }
+            }
+        }
+        return buckets;
+    }
+
+    private Counter rejected() {
+        Counter rejected = this._rejected;
+        if (null == rejected) {
+            synchronized (this) {
+                rejected = this._rejected;
+                if (null == rejected) {
+                    rejected = this._rejected = Counter.builder("jocean.xharbor.ratelimit.rejected")
+                            .tag("name", _name)
+                            .tag("key", _keyType)
+                            .description("The count of requests rejected by jocean xharbor rate limit")
+                            .register(_meterRegistry);
+                }
+            }
+        }
+        return rejected;
+    }
+
+    @Inject
+    MatchRule _matcher;
+
+    @Inject
+    MeterRegistry _meterRegistry = Metrics.globalRegistry;
+
+    @Value("${limit.name}")
+    String _name = "default";
+
+    // ip / header / path
+    @Value("${limit.key}")
+    String _keyType = KEY_IP;
+
+    @Value("${limit.key.header}")
+    String _keyHeader = "x-api-key";
+
+    @Value("${limit.rate_per_second}")
+    double _ratePerSecond = 100;
+
+    @Value("${limit.burst}")
+    int _burst = 200;
+
+    // max keys tracked, least recently used keys are evicted beyond it
+    @Value("${limit.max_keys}")
+    int _maxKeys = 1024 * 1024;
+
+    @Value("${log}")
+    boolean _log = false;
+
+    private volatile TokenBuckets _buckets = null;
+    // io rejected by match() to its key
+    private final ConcurrentMap<InOut, String> _rejects = new ConcurrentHashMap<>();
+    private volatile Counter _rejected = null;
+}
@@ -0,0 +1,166 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.server.HttpServerBuilder.HttpTrade;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import rx.Observable;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.subjects.AsyncSubject;
+
+/**
+ * single-flight for ForwardTrade: concurrent identical GET/HEAD (same method, uri and vary headers)
+ * share the first one's (leader) upstream interaction, leader's response is buffered and sent back to all followers.
+ * only leader's 2xx response without Set-Cookie is shared, request with Authorization or Cookie is never collapsed.
+ * when leader not got buffered response (error, non-2xx, body too large ...), followers forward by themselves.
+ */
+class RequestCollapser {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestCollapser.class);
+
+    RequestCollapser(final List<String> varyHeaders, final int maxBodyBytes) {
+        this._varyHeaders = varyHeaders;
+        this._maxBodyBytes = maxBodyBytes;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("[vary=").append(_varyHeaders).append(",maxBodyBytes=").append(_maxBodyBytes)
+                .append(",inflight=").append(_flights.size()).append(",leaders=").append(_leaders.get())
+                .append(",collapsed=").append(_collapsed.get()).append("]");
+        return builder.toString();
+    }
+
+    boolean isCollapsible(final HttpRequest request) {
+        return (HttpMethod.GET.equals(request.method()) || HttpMethod.HEAD.equals(request.method()))
+                && !HttpUtil.isTransferEncodingChunked(request)
+                && HttpUtil.getContentLength(request, 0L) == 0
+                && !request.headers().contains(HttpHeaderNames.AUTHORIZATION)
+                && !request.headers().contains(HttpHeaderNames.COOKIE);
+    }
+
+    /**
+     * @param forward forward request to upstream by itself
+     * @param onFollowed called with sendback status when request is served by leader's buffered response
+     */
+    Observable<InOut> collapse(
+            final HttpTrade trade,
+            final InOut orgio,
+            final HttpRequest request,
+            final Func0<Observable<InOut>> forward,
+            final Action1<HttpResponseStatus> onFollowed) {
+        final String key = keyOf(request);
+        final Flight flight = new Flight();
+        final Flight inflight = this._flights.putIfAbsent(key, flight);
+        if (null == inflight) {
+            this._leaders.incrementAndGet();
+            // followers must not wait forever, eg: leader's trade closed before response body completed
+            trade.doOnHalt(() -> done(key, flight, null));
+            return forward.call()
+                    .doOnError(e -> done(key, flight, null))
+                    .map(io -> {
+                        if (null == io) {
+                            done(key, flight, null);
+                            return null;
+                        }
+                        return leaderio(key, flight, io);
+                    });
+        } else {
+            this._collapsed.incrementAndGet();
+            LOG.debug("collapse request {} to inflight one", key);
+            return inflight._result.flatMap(buffered -> {
+                if (null != buffered) {
+                    onFollowed.call(buffered.status());
+                    return Observable.<InOut>just(followerio(orgio, request, buffered));
+                } else {
+                    return forward.call();
+                }
+            });
+        }
+    }
+
+    private InOut leaderio(final String key, final Flight flight, final InOut io) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return io.inbound();
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return io.outbound().map(fullresp -> {
+                    if (!isSharable(fullresp.message())) {
+                        done(key, flight, null);
+                        return fullresp;
+                    }
+                    return BufferedResponse.capture(fullresp, _maxBodyBytes, buffered -> done(key, flight, buffered));
+                })
+                .doOnError(e -> done(key, flight, null));
+            }};
+    }
+
+    private static boolean isSharable(final HttpResponse response) {
+        return HttpStatusClass.SUCCESS.equals(response.status().codeClass())
+                && !response.headers().contains(HttpHeaderNames.SET_COOKIE);
+    }
+
+    private static InOut followerio(final InOut orgio, final HttpRequest request, final BufferedResponse buffered) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return orgio.inbound();
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return BufferedResponse.sendAfterInbound(orgio,
+                        buffered.toFullMessage(buffered.newResponse(), !HttpMethod.HEAD.equals(request.method())));
+            }};
+    }
+
+    private void done(final String key, final Flight flight, final BufferedResponse buffered) {
+        if (flight._done.compareAndSet(false, true)) {
+            // new identical request after this will start new flight
+            this._flights.remove(key, flight);
+            flight._result.onNext(buffered);
+            flight._result.onCompleted();
+        }
+    }
+
+    private String keyOf(final HttpRequest request) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(request.method().name()).append(' ').append(request.uri());
+        for (final String name : this._varyHeaders) {
+            final String value = request.headers().get(name);
+            sb.append('\n').append(name).append(':').append(null != value ? value : "");
+        }
+        return sb.toString();
+    }
+
+    private static final class Flight {
+        final AtomicBoolean _done = new AtomicBoolean(false);
+        // null means leader not got buffered response
+        final AsyncSubject<BufferedResponse> _result = AsyncSubject.create();
+    }
+
+    private final List<String> _varyHeaders;
+    private final int _maxBodyBytes;
+    private final ConcurrentMap<String, Flight> _flights = new ConcurrentHashMap<>();
+    private final AtomicLong _leaders = new AtomicLong(0);
+    private final AtomicLong _collapsed = new AtomicLong(0);
+}
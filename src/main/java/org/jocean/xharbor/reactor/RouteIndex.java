@@ -0,0 +1,136 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * index ForwardTrade by HTTP method and by literal path prefix of it's MatchRule,
+ * candidates keep the same order as forwards array, so first-match result is identical
+ * to linear scan over all forwards.
+ */
+final class RouteIndex {
+
+    private static final ForwardTrade[] EMPTY_FWDT = new ForwardTrade[0];
+    private static final int[] EMPTY_ROUTES = new int[0];
+    private static final String[] METHODS = new String[]{
+            "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "TRACE", "CONNECT"};
+
+    RouteIndex(final ForwardTrade[] forwards) {
+        this._forwards = forwards;
+        this._roots = new Node[METHODS.length];
+        for (int m = 0; m < METHODS.length; m++) {
+            this._roots[m] = buildTrie(forwards, METHODS[m]);
+        }
+        // for non-standard method
+        this._anyRoot = buildTrie(forwards, null);
+    }
+
+    ForwardTrade[] forwards() {
+        return this._forwards;
+    }
+
+    boolean isEmpty() {
+        return this._forwards.length == 0;
+    }
+
+    ForwardTrade[] candidatesOf(final String method, final String uri) {
+        Node node = rootOf(method);
+        int count = node._routes.length;
+        final List<int[]> matched = new ArrayList<>();
+        matched.add(node._routes);
+        for (int idx = 0; idx < uri.length(); idx++) {
+            node = node.child(uri.charAt(idx));
+            if (null == node) {
+                break;
+            }
+            if (node._routes.length > 0) {
+                matched.add(node._routes);
+                count += node._routes.length;
+            }
+        }
+
+        if (count == this._forwards.length) {
+            return this._forwards;
+        } else if (0 == count) {
+            return EMPTY_FWDT;
+        }
+
+        final int[] routes = new int[count];
+        int pos = 0;
+        for (final int[] r : matched) {
+            System.arraycopy(r, 0, routes, pos, r.length);
+            pos += r.length;
+        }
+        Arrays.sort(routes);
+
+        final ForwardTrade[] candidates = new ForwardTrade[count];
+        for (int idx = 0; idx < count; idx++) {
+            candidates[idx] = this._forwards[routes[idx]];
+        }
+        return candidates;
+    }
+
+    private Node rootOf(final String method) {
+        for (int m = 0; m < METHODS.length; m++) {
+            if (METHODS[m].equals(method)) {
+                return this._roots[m];
+            }
+        }
+        return this._anyRoot;
+    }
+
+    private static Node buildTrie(final ForwardTrade[] forwards, final String method) {
+        final Node root = new Node();
+        for (int idx = 0; idx < forwards.length; idx++) {
+            final MatchRule matcher = forwards[idx].matcher();
+            if (null == method || matcher.matchMethod(method)) {
+                final String prefix = matcher.pathPrefix();
+                Node node = root;
+                for (int pos = 0; pos < prefix.length(); pos++) {
+                    node = node.getOrAddChild(prefix.charAt(pos));
+                }
+                node.addRoute(idx);
+            }
+        }
+        return root;
+    }
+
+    private static final class Node {
+        Node child(final char c) {
+            final int pos = Arrays.binarySearch(this._chars, c);
+            return pos >= 0 ? this._children[pos] : null;
+        }
+
+        Node getOrAddChild(final char c) {
+            int pos = Arrays.binarySearch(this._chars, c);
+            if (pos < 0) {
+                pos = -pos - 1;
+                final char[] chars = new char[this._chars.length + 1];
+                final Node[] children = new Node[this._children.length + 1];
+                System.arraycopy(this._chars, 0, chars, 0, pos);
+                System.arraycopy(this._children, 0, children, 0, pos);
+                chars[pos] = c;
+                children[pos] = new Node();
+                System.arraycopy(this._chars, pos, chars, pos + 1, this._chars.length - pos);
+                System.arraycopy(this._children, pos, children, pos + 1, this._children.length - pos);
+                this._chars = chars;
+                this._children = children;
+            }
+            return this._children[pos];
+        }
+
+        void addRoute(final int route) {
+            this._routes = Arrays.copyOf(this._routes, this._routes.length + 1);
+            this._routes[this._routes.length - 1] = route;
+        }
+
+        private char[] _chars = new char[0];
+        private Node[] _children = new Node[0];
+        private int[] _routes = EMPTY_ROUTES;
+    }
+
+    private final ForwardTrade[] _forwards;
+    private final Node[] _roots;
+    private final Node _anyRoot;
+}
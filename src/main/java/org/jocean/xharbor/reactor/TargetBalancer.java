@@ -0,0 +1,173 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.functions.Func1;
+
+/**
+ * balance policy of ForwardTrade's targets, configured by forward rule's ${balance.policy}:
+ * round_robin (default), least_outstanding, p2c, peak_ewma
+ */
+abstract class TargetBalancer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TargetBalancer.class);
+
+    static final String ROUND_ROBIN = "round_robin";
+    static final String LEAST_OUTSTANDING = "least_outstanding";
+    static final String P2C = "p2c";
+    static final String PEAK_EWMA = "peak_ewma";
+
+    // cost of target without any latency sample but with outstanding request: 1 second
+    private static final double PENALTY_NANOS = 1000.0 * 1000.0 * 1000.0;
+
+    static TargetBalancer of(final String policy) {
+        if (null == policy || policy.isEmpty() || ROUND_ROBIN.equals(policy)) {
+            return new RoundRobin();
+        } else if (LEAST_OUTSTANDING.equals(policy)) {
+            return new LeastOutstanding();
+        } else if (P2C.equals(policy)) {
+            return new PowerOfTwoChoices(P2C, target -> (double)target.outstanding());
+        } else if (PEAK_EWMA.equals(policy)) {
+            return new PowerOfTwoChoices(PEAK_EWMA, TargetBalancer::peakEwmaCost);
+        } else {
+            LOG.warn("unknown balance policy {}, use {} instead.", policy, ROUND_ROBIN);
+            return new RoundRobin();
+        }
+    }
+
+    /**
+     * called when targets added or target's weight changed
+     */
+    abstract void update(final List<MarkableTarget> targets);
+
+    /**
+     * @return selected active target, or null when none of targets is active
+     */
+    abstract MarkableTarget select(final Func1<MarkableTarget, Boolean> isActive);
+
+    private static double peakEwmaCost(final MarkableTarget target) {
+        final double ewma = target.ewmaNanos();
+        final int outstanding = target.outstanding();
+        if (0.0 == ewma && outstanding > 0) {
+            return PENALTY_NANOS * outstanding;
+        }
+        return ewma * (outstanding + 1);
+    }
+
+    private static class RoundRobin extends TargetBalancer {
+        @Override
+        void update(final List<MarkableTarget> targets) {
+            this._schedule = WeightedSchedule.build(targets, MarkableTarget::weight);
+        }
+
+        @Override
+        MarkableTarget select(final Func1<MarkableTarget, Boolean> isActive) {
+            return this._schedule.next(isActive);
+        }
+
+        @Override
+        public String toString() {
+            return ROUND_ROBIN;
+        }
+
+        private volatile WeightedSchedule<MarkableTarget> _schedule = WeightedSchedule.empty();
+    }
+
+    private static abstract class Snapshot extends TargetBalancer {
+        @Override
+        void update(final List<MarkableTarget> targets) {
+            this._targets = targets.toArray(new MarkableTarget[0]);
+        }
+
+        protected volatile MarkableTarget[] _targets = new MarkableTarget[0];
+    }
+
+    private static class LeastOutstanding extends Snapshot {
+        @Override
+        MarkableTarget select(final Func1<MarkableTarget, Boolean> isActive) {
+            final MarkableTarget[] targets = this._targets;
+            final int length = targets.length;
+            if (0 == length) {
+                return null;
+            }
+            // start from rotated position, so ties are spread over targets
+            final int start = (this._cursor.getAndIncrement() & Integer.MAX_VALUE) % length;
+            MarkableTarget best = null;
+            long bestScore = Long.MAX_VALUE;
+            for (int step = 0; step < length; step++) {
+                final MarkableTarget target = targets[(start + step) % length];
+                if (isActive.call(target)) {
+                    // outstanding per weight, scaled to keep precision
+                    final long score = (long)target.outstanding() * SCALE / Math.max(1, target.weight());
+                    if (null == best || score < bestScore) {
+                        best = target;
+                        bestScore = score;
+                    }
+                }
+            }
+            return best;
+        }
+
+        @Override
+        public String toString() {
+            return LEAST_OUTSTANDING;
+        }
+
+        private static final long SCALE = 1000L * 1000L;
+        private final AtomicInteger _cursor = new AtomicInteger(0);
+    }
+
+    private static class PowerOfTwoChoices extends Snapshot {
+        PowerOfTwoChoices(final String name, final Func1<MarkableTarget, Double> costOf) {
+            this._name = name;
+            this._costOf = costOf;
+        }
+
+        @Override
+        MarkableTarget select(final Func1<MarkableTarget, Boolean> isActive) {
+            final MarkableTarget[] targets = this._targets;
+            final int length = targets.length;
+            if (0 == length) {
+                return null;
+            } else if (1 == length) {
+                return isActive.call(targets[0]) ? targets[0] : null;
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final int first = random.nextInt(length);
+            final int second = (first + 1 + random.nextInt(length - 1)) % length;
+            final MarkableTarget a = targets[first];
+            final MarkableTarget b = targets[second];
+            final boolean activeA = isActive.call(a);
+            final boolean activeB = isActive.call(b);
+            if (activeA && activeB) {
+                return this._costOf.call(a) <= this._costOf.call(b) ? a : b;
+            } else if (activeA) {
+                return a;
+            } else if (activeB) {
+                return b;
+            } else {
+                // both choices inactive, fallback to scan
+                for (int step = 1; step < length; step++) {
+                    final MarkableTarget target = targets[(second + step) % length];
+                    if (isActive.call(target)) {
+                        return target;
+                    }
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this._name;
+        }
+
+        private final String _name;
+        private final Func1<MarkableTarget, Double> _costOf;
+    }
+}
@@ -0,0 +1,96 @@
+package org.jocean.xharbor.reactor;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.functions.Func1;
+
+/**
+ * immutable smooth weighted round robin sequence (same order as nginx's SWRR produced),
+ * precomputed when peers or weights changed, and walked by a single atomic cursor,
+ * so concurrent callers never race on per-peer weight state.
+ */
+final class WeightedSchedule<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final WeightedSchedule EMPTY = new WeightedSchedule<>(new Object[0]);
+
+    @SuppressWarnings("unchecked")
+    static <T> WeightedSchedule<T> empty() {
+        return EMPTY;
+    }
+
+    static <T> WeightedSchedule<T> build(final List<T> peers, final Func1<T, Integer> weightOf) {
+        final int size = peers.size();
+        if (0 == size) {
+            return empty();
+        }
+        final int[] weights = new int[size];
+        int gcd = 0;
+        for (int idx = 0; idx < size; idx++) {
+            weights[idx] = Math.max(1, weightOf.call(peers.get(idx)));
+            gcd = gcdOf(gcd, weights[idx]);
+        }
+        int total = 0;
+        for (int idx = 0; idx < size; idx++) {
+            weights[idx] /= gcd;
+            total += weights[idx];
+        }
+
+        // nginx C code: ngx_http_upstream_get_peer, run total rounds and record picked peer
+        final Object[] sequence = new Object[total];
+        final int[] currentWeights = new int[size];
+        for (int round = 0; round < total; round++) {
+            int best = -1;
+            for (int idx = 0; idx < size; idx++) {
+                currentWeights[idx] += weights[idx];
+                if (-1 == best || currentWeights[idx] > currentWeights[best]) {
+                    best = idx;
+                }
+            }
+            currentWeights[best] -= total;
+            sequence[round] = peers.get(best);
+        }
+        return new WeightedSchedule<>(sequence);
+    }
+
+    private static int gcdOf(final int a, final int b) {
+        return 0 == b ? a : gcdOf(b, a % b);
+    }
+
+    private WeightedSchedule(final Object[] sequence) {
+        this._sequence = sequence;
+    }
+
+    int size() {
+        return this._sequence.length;
+    }
+
+    /**
+     * @return next peer for which isActive return true, or null if none of peers is active
+     */
+    @SuppressWarnings("unchecked")
+    T next(final Func1<T, Boolean> isActive) {
+        final int length = this._sequence.length;
+        if (0 == length) {
+            return null;
+        }
+        final int start = (this._cursor.getAndIncrement() & Integer.MAX_VALUE) % length;
+        for (int step = 0; step < length; step++) {
+            final T peer = (T)this._sequence[(start + step) % length];
+            if (isActive.call(peer)) {
+                return peer;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedSchedule [sequence=" + Arrays.toString(this._sequence) + "]";
+    }
+
+    private final Object[] _sequence;
+    private final AtomicInteger _cursor = new AtomicInteger(0);
+}
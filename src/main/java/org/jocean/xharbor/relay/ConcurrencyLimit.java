@@ -0,0 +1,147 @@
+package org.jocean.xharbor.relay;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * concurrency limit of RequestIsolation, fixed or adapted by observed trade latency.
+ */
+abstract class ConcurrencyLimit {
+
+    static final String FIXED = "fixed";
+    static final String AIMD = "aimd";
+    static final String GRADIENT = "gradient";
+
+    static ConcurrencyLimit of(final String mode, final int initial, final int min, final int max, final long latencyMs) {
+        if (AIMD.equals(mode)) {
+            return new Aimd(initial, min, max, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+        } else if (GRADIENT.equals(mode)) {
+            return new Gradient(initial, min, max);
+        } else {
+            return new Fixed(initial);
+        }
+    }
+
+    abstract int limit();
+
+    /**
+     * @param rttNanos latency of one admitted trade
+     * @param inflight inflight count when sample
+     * @param dropped trade failed or timeout
+     */
+    abstract void onSample(final long rttNanos, final int inflight, final boolean dropped);
+
+    private static final class Fixed extends ConcurrencyLimit {
+        Fixed(final int limit) {
+            this._limit = limit;
+        }
+
+        @Override
+        int limit() {
+            return this._limit;
+        }
+
+        @Override
+        void onSample(final long rttNanos, final int inflight, final boolean dropped) {
+        }
+
+        @Override
+        public String toString() {
+            return FIXED;
+        }
+
+        private final int _limit;
+    }
+
+    private abstract static class Adaptive extends ConcurrencyLimit {
+        Adaptive(final int initial, final int min, final int max) {
+            this._min = Math.max(1, min);
+            this._max = Math.max(this._min, max);
+            this._limit = clamp(initial);
+        }
+
+        @Override
+        int limit() {
+            return (int)this._limit;
+        }
+
+        @Override
+        synchronized void onSample(final long rttNanos, final int inflight, final boolean dropped) {
+            this._limit = clamp(update(this._limit, rttNanos, inflight, dropped));
+        }
+
+        abstract double update(final double limit, final long rttNanos, final int inflight, final boolean dropped);
+
+        double clamp(final double limit) {
+            return Math.min(this._max, Math.max(this._min, limit));
+        }
+
+        final int _min;
+        final int _max;
+        volatile double _limit;
+    }
+
+    /**
+     * additive increase when latency below threshold and limit is used, multiplicative decrease when latency exceed or dropped
+     */
+    private static final class Aimd extends Adaptive {
+        private static final double BACKOFF = 0.9;
+
+        Aimd(final int initial, final int min, final int max, final long latencyNanos) {
+            super(initial, min, max);
+            this._latencyNanos = latencyNanos;
+        }
+
+        @Override
+        double update(final double limit, final long rttNanos, final int inflight, final boolean dropped) {
+            if (dropped || rttNanos > this._latencyNanos) {
+                return limit * BACKOFF;
+            }
+            // grow only when more than half of limit is used, else limit is not the bottleneck
+            return inflight * 2 >= limit ? limit + 1 : limit;
+        }
+
+        @Override
+        public String toString() {
+            return AIMD + "(latency=" + TimeUnit.NANOSECONDS.toMillis(this._latencyNanos) + "ms)";
+        }
+
+        private final long _latencyNanos;
+    }
+
+    /**
+     * gradient of long-term latency (no load) vs current latency:
+     * new limit = limit * gradient + sqrt(limit) as queue, smoothed
+     */
+    private static final class Gradient extends Adaptive {
+        private static final double SMOOTHING = 0.2;
+        // long-term latency is EWMA over about 600 samples
+        private static final double LONG_WINDOW = 600;
+
+        Gradient(final int initial, final int min, final int max) {
+            super(initial, min, max);
+        }
+
+        @Override
+        double update(final double limit, final long rttNanos, final int inflight, final boolean dropped) {
+            if (this._longRtt <= 0) {
+                this._longRtt = rttNanos;
+            } else {
+                this._longRtt += (rttNanos - this._longRtt) / LONG_WINDOW;
+            }
+            // not bottleneck, don't grow limit
+            if (!dropped && inflight * 2 < limit) {
+                return limit;
+            }
+            final double gradient = Math.max(0.5, Math.min(1.0, this._longRtt / Math.max(1, rttNanos)));
+            final double newLimit = limit * gradient + Math.sqrt(limit);
+            return limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        }
+
+        @Override
+        public String toString() {
+            return GRADIENT + "(longRtt=" + TimeUnit.NANOSECONDS.toMillis((long)this._longRtt) + "ms)";
+        }
+
+        private double _longRtt = 0;
+    }
+}
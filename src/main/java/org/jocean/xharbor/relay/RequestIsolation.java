@@ -1,9 +1,39 @@
 package org.jocean.xharbor.relay;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jocean.xharbor.util.RollingWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+
+/**
+ * isolation for request of path: limit concurrent execution by semaphore, execution timeout,
+ * and circuit breaker over rolling error window, fallback when rejected, short-circuited, failed or timeout.
+ * created once per path and reused by all request of the path.
+ */
 public class RequestIsolation {
 
+    private static final Logger LOG = LoggerFactory.getLogger(RequestIsolation.class);
+
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+    private static final int TIMEOUT = 2;
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
     @Value("${path}")
     String _path;
 
@@ -16,13 +46,203 @@ public class RequestIsolation {
     @Value("${timeoutInMs}")
     int _timeoutInMs = 0;
 
+    // circuit open when requests within rolling window reach volume and error percentage reach threshold
+    @Value("${circuit.request_volume}")
+    int _circuitRequestVolume = 20;
+
+    @Value("${circuit.error_percentage}")
+    int _circuitErrorPercentage = 50;
+
+    // after it, one trial request is allowed when circuit open
+    @Value("${circuit.sleep_window_ms}")
+    long _circuitSleepWindowMs = 5000L;
+
+    // fixed: use max.concurrent as limit; aimd or gradient: adapt limit by trade latency, start from max.concurrent
+    @Value("${limit.mode}")
+    String _limitMode = ConcurrencyLimit.FIXED;
+
+    @Value("${limit.min}")
+    int _limitMin = 1;
+
+    @Value("${limit.max}")
+    int _limitMax = 1000;
+
+    // aimd: trade latency exceed it decrease limit
+    @Value("${limit.latency_ms}")
+    long _limitLatencyMs = 1000L;
+
     @Override
     public String toString() {
         return new StringBuilder().append("RequestIsolation [path=").append(_path)
                 .append(", maxConcurrent=").append(_maxConcurrent)
+                .append(", limit=").append(limit().limit()).append("(").append(limit()).append(")")
                 .append(", timeoutInMs=").append(_timeoutInMs)
                 .append(", location=").append(_location)
+                .append(", circuit=").append(stateName(_state.get()))
+                .append(", inflight=").append(_inflight.get())
+                .append(", window(success/failure/timeout)=").append(_window.sum(SUCCESS))
+                .append("/").append(_window.sum(FAILURE)).append("/").append(_window.sum(TIMEOUT))
+                .append(", rejected=").append(_rejected.sum())
+                .append(", shortCircuited=").append(_shortCircuited.sum())
+                .append(", fallbacks=").append(_fallbacks.sum())
                 .append("]").toString();
     }
 
+    /**
+     * run normal within isolation, or getfallback's when it can't run or it failed
+     */
+    public <T> Observable<T> execute(final Observable<? extends T> normal, final Func0<Observable<T>> getfallback) {
+        return execute(normal, getfallback, null);
+    }
+
+    /**
+     * run normal within isolation, or getfallback's when it can't run or it failed,
+     * admitted execution is sampled once for adaptive limit by action registered with onDone
+     * (eg: HttpTrade.doOnHalt), failed or timeout execution is sampled as dropped
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> execute(final Observable<? extends T> normal, final Func0<Observable<T>> getfallback,
+            final Action1<Action0> onDone) {
+        return Observable.defer(() -> {
+            if (!allowRequest()) {
+                this._shortCircuited.increment();
+                return fallback(getfallback);
+            }
+            if (!tryAcquire()) {
+                this._rejected.increment();
+                return fallback(getfallback);
+            }
+            final Action0 release = releaseOnce();
+            final AtomicBoolean dropped = new AtomicBoolean(false);
+            if (null != onDone) {
+                onDone.call(sampleOnce(dropped));
+            }
+            final Observable<T> execution = this._timeoutInMs > 0
+                    ? ((Observable<T>)normal).timeout(this._timeoutInMs, TimeUnit.MILLISECONDS)
+                    : (Observable<T>)normal;
+            return execution
+                    .doOnCompleted(this::onSuccess)
+                    .doOnError(e -> {
+                        dropped.set(true);
+                        onFailure(e instanceof TimeoutException);
+                    })
+                    .doOnTerminate(release)
+                    .doOnUnsubscribe(release)
+                    .onErrorResumeNext(e -> {
+                        LOG.warn("request isolation {} execution failed, fallback, detail: {}", this._path, e.toString());
+                        return fallback(getfallback);
+                    });
+        });
+    }
+
+    // latency sample for adaptive limit, from admitted to trade done
+    private Action0 sampleOnce(final AtomicBoolean dropped) {
+        final long begin = System.nanoTime();
+        final AtomicBoolean ended = new AtomicBoolean(false);
+        return () -> {
+            if (ended.compareAndSet(false, true)) {
+                limit().onSample(System.nanoTime() - begin, this._inflight.get(), dropped.get());
+            }
+        };
+    }
+
+    ConcurrencyLimit limit() {
+        ConcurrencyLimit limit = this._limit;
+        if (null == limit) {
+            synchronized (this) {
+                limit = this._limit;
+                if (null == limit) {
+                    limit = this._limit = ConcurrencyLimit.of(this._limitMode, this._maxConcurrent,
+                            this._limitMin, this._limitMax, this._limitLatencyMs);
+                }
+            }
+        }
+        return limit;
+    }
+
+    private <T> Observable<T> fallback(final Func0<Observable<T>> getfallback) {
+        this._fallbacks.increment();
+        return getfallback.call();
+    }
+
+    private boolean tryAcquire() {
+        for (;;) {
+            final int inflight = this._inflight.get();
+            if (inflight >= limit().limit()) {
+                return false;
+            }
+            if (this._inflight.compareAndSet(inflight, inflight + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private Action0 releaseOnce() {
+        final AtomicBoolean released = new AtomicBoolean(false);
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                this._inflight.decrementAndGet();
+            }
+        };
+    }
+
+    private boolean allowRequest() {
+        if (CLOSED == this._state.get()) {
+            return true;
+        }
+        // one trial per sleep window, trial maybe canceled without result, so allow next trial after another window
+        final long openedAt = this._openedAt.get();
+        final long now = System.currentTimeMillis();
+        if (now - openedAt >= this._circuitSleepWindowMs && this._openedAt.compareAndSet(openedAt, now)) {
+            this._state.set(HALF_OPEN);
+            return true;
+        }
+        return false;
+    }
+
+    private void onSuccess() {
+        this._window.increment(SUCCESS);
+        if (this._state.compareAndSet(HALF_OPEN, CLOSED)) {
+            this._window.reset();
+            LOG.info("request isolation {}'s circuit closed after trial success", this._path);
+        }
+    }
+
+    private void onFailure(final boolean isTimeout) {
+        this._window.increment(isTimeout ? TIMEOUT : FAILURE);
+        if (this._state.compareAndSet(HALF_OPEN, OPEN)) {
+            this._openedAt.set(System.currentTimeMillis());
+            LOG.warn("request isolation {}'s circuit re-open after trial failed", this._path);
+            return;
+        }
+        final long errors = this._window.sum(FAILURE) + this._window.sum(TIMEOUT);
+        final long total = errors + this._window.sum(SUCCESS);
+        if (total >= this._circuitRequestVolume && errors * 100 >= total * this._circuitErrorPercentage) {
+            if (this._state.compareAndSet(CLOSED, OPEN)) {
+                this._openedAt.set(System.currentTimeMillis());
+                LOG.warn("request isolation {}'s circuit open, errors {} of total {} within window", this._path, errors, total);
+            }
+        }
+    }
+
+    private static String stateName(final int state) {
+        switch (state) {
+        case OPEN:
+            return "OPEN";
+        case HALF_OPEN:
+            return "HALF_OPEN";
+        default:
+            return "CLOSED";
+        }
+    }
+
+    // 10 seconds with 10 buckets, same as hystrix's default metrics window
+    private final RollingWindow _window = new RollingWindow(10 * 1000L, 10, 3);
+    private volatile ConcurrencyLimit _limit = null;
+    private final AtomicInteger _inflight = new AtomicInteger(0);
+    private final AtomicInteger _state = new AtomicInteger(CLOSED);
+    private final AtomicLong _openedAt = new AtomicLong(0);
+    private final LongAdder _rejected = new LongAdder();
+    private final LongAdder _shortCircuited = new LongAdder();
+    private final LongAdder _fallbacks = new LongAdder();
 }
@@ -0,0 +1,96 @@
+package org.jocean.xharbor.relay;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * per-route trace sampling decided once at trade start: probabilistic (rate) then rate-limited (max per second).
+ * route is path prefix on '/' boundary, longest route win, DEFAULT_ROUTE for path without route.
+ */
+class TraceSampling {
+
+    static final String DEFAULT_ROUTE = "*";
+
+    static final class Sampler {
+        Sampler(final double rate, final int maxPerSecond) {
+            this._rate = rate;
+            this._maxPerSecond = maxPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "rate=" + this._rate + ",maxPerSecond=" + (this._maxPerSecond > 0 ? this._maxPerSecond : "unlimited");
+        }
+
+        boolean sample() {
+            if (this._rate <= 0 || (this._rate < 1 && ThreadLocalRandom.current().nextDouble() >= this._rate)) {
+                return false;
+            }
+            if (this._maxPerSecond <= 0) {
+                return true;
+            }
+            final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            if (second != this._second) {
+                // not exact when second changed concurrently, ok for sampling
+                this._second = second;
+                this._sampled.set(0);
+            }
+            return this._sampled.incrementAndGet() <= this._maxPerSecond;
+        }
+
+        private final double _rate;
+        // <= 0 means unlimited
+        private final int _maxPerSecond;
+        private volatile long _second = -1;
+        private final AtomicInteger _sampled = new AtomicInteger(0);
+    }
+
+    boolean sample(final String path) {
+        return samplerOf(path).sample();
+    }
+
+    Sampler samplerOf(final String path) {
+        if (!this._routes.isEmpty() && null != path) {
+            String route = path;
+            while (!route.isEmpty()) {
+                final Sampler sampler = this._routes.get(route);
+                if (null != sampler) {
+                    return sampler;
+                }
+                final int idx = route.lastIndexOf('/');
+                route = idx > 0 ? route.substring(0, idx) : "";
+            }
+        }
+        return this._default;
+    }
+
+    void set(final String route, final double rate, final int maxPerSecond) {
+        final Sampler sampler = new Sampler(rate, maxPerSecond);
+        if (DEFAULT_ROUTE.equals(route)) {
+            this._default = sampler;
+        } else {
+            this._routes.put(route, sampler);
+        }
+    }
+
+    void remove(final String route) {
+        this._routes.remove(route);
+    }
+
+    Map<String, String> routes() {
+        final Map<String, String> routes = new HashMap<>();
+        routes.put(DEFAULT_ROUTE, this._default.toString());
+        for (final Map.Entry<String, Sampler> entry : this._routes.entrySet()) {
+            routes.put(entry.getKey(), entry.getValue().toString());
+        }
+        return routes;
+    }
+
+    private volatile Sampler _default = new Sampler(1.0, 0);
+    private final ConcurrentMap<String, Sampler> _routes = new ConcurrentHashMap<>();
+}
@@ -3,14 +3,10 @@
  */
 package org.jocean.xharbor.relay;
 
-import java.net.ConnectException;
-import java.nio.channels.ClosedChannelException;
 import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -19,7 +15,6 @@ import javax.inject.Named;
 
 import org.jocean.http.FullMessage;
 import org.jocean.http.MessageBody;
-import org.jocean.http.TransportException;
 import org.jocean.http.server.HttpServerBuilder.HttpTrade;
 import org.jocean.idiom.BeanFinder;
 import org.jocean.idiom.ExceptionUtils;
@@ -27,31 +22,22 @@ import org.jocean.idiom.StepableUtil;
 import org.jocean.idiom.StopWatch;
 import org.jocean.idiom.jmx.MBeanRegister;
 import org.jocean.idiom.jmx.MBeanRegisterAware;
-import org.jocean.idiom.rx.RxObservables;
-import org.jocean.idiom.rx.RxObservables.RetryPolicy;
-import org.jocean.svr.StringTags;
 import org.jocean.svr.TradeScheduler;
 import org.jocean.svr.tracing.TraceUtil;
+import org.jocean.xharbor.api.ParsedRequest;
 import org.jocean.xharbor.api.TradeReactor;
 import org.jocean.xharbor.api.TradeReactor.InOut;
 import org.jocean.xharbor.api.TradeReactor.ReactContext;
 import org.jocean.xharbor.reactor.NullReactor;
+import org.jocean.xharbor.util.BeanCache;
+import org.jocean.xharbor.util.OperationMeters;
+import org.jocean.xharbor.util.RequestParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
-import com.netflix.hystrix.HystrixCommandGroupKey;
-import com.netflix.hystrix.HystrixCommandKey;
-import com.netflix.hystrix.HystrixCommandProperties;
-import com.netflix.hystrix.HystrixCommandProperties.ExecutionIsolationStrategy;
-import com.netflix.hystrix.HystrixObservableCommand;
-
-import io.jaegertracing.internal.JaegerSpan;
-import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Metrics;
-import io.micrometer.core.instrument.Timer;
-import io.micrometer.core.instrument.binder.BaseUnits;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpRequest;
@@ -59,8 +45,6 @@ import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.handler.codec.http.QueryStringDecoder;
-import io.netty.util.CharsetUtil;
 import io.opentracing.Span;
 import io.opentracing.Tracer;
 import io.opentracing.noop.NoopTracerFactory;
@@ -69,8 +53,9 @@ import rx.Observable;
 import rx.Observable.Transformer;
 import rx.Scheduler;
 import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
 import rx.functions.Func0;
-import rx.functions.Func1;
 
 /**
  * @author isdom
@@ -80,6 +65,9 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 
     private static final Logger LOG = LoggerFactory.getLogger(TradeRelay.class);
 
+    // distinct operations with cached trade meters
+    private static final int MAX_CACHED_OPERATIONS = 1024;
+
     @Override
     public void setMBeanRegister(final MBeanRegister register) {
         register.registerMBean("name=relay", this);
@@ -113,6 +101,22 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
         _tracingEnabled = enabled;
     }
 
+    @Override
+    public Map<String, String> getTraceSamplings() {
+        return this._sampling.routes();
+    }
+
+    @Override
+    public void setTraceSampling(final String route, final double rate, final int maxPerSecond) {
+        this._sampling.set(route, rate, maxPerSecond);
+        LOG.info("set trace sampling for route {}: rate {}, max per second {}", route, rate, maxPerSecond);
+    }
+
+    @Override
+    public void removeTraceSampling(final String route) {
+        this._sampling.remove(route);
+    }
+
     @Override
     public String[] getReactors() {
         final TradeReactor reactor = this._reactorRef.get();
@@ -130,7 +134,7 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
     }
 
     public static String get1stIp(final String peerips) {
-        return peerips.split(",")[0];
+        return RequestParser.firstIp(peerips);
     }
 
     @Override
@@ -139,8 +143,8 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 
         final AtomicReference<ReactContext> ctxRef = new AtomicReference<>();
 
-        trade2io(trade, ctxRef).retryWhen(retryPolicy(trade))
-        .subscribe(io -> {
+        // retry on other target is done by ForwardTrade, so not re-run whole reactors here
+        trade2io(trade, ctxRef).subscribe(io -> {
             if (null == io || null == io.outbound()) {
                 LOG.warn("NO_INOUT for trade({}), react io detail: {}.", trade, io);
                 ctxRef.get().span().setTag(Tags.ERROR.getKey(), true);
@@ -171,18 +175,21 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 
     private Observable<InOut> trade2io(final HttpTrade trade, final AtomicReference<ReactContext> ctxRef) {
         return trade.inbound().first().map(fullreq -> fullreq.message()).flatMap(request -> {
-                    final String path = extractPath(request);
+                    final ParsedRequest parsed = RequestParser.parse(request);
+                    final String path = parsed.path();
                     LOG.info("trade2io: {} extract path {}", trade, path);
                     return path2scheduler(path).doOnNext(ts -> LOG.info("path {} <--> scheduler {}", path, ts))
-                            .flatMap(ts -> makectx(request, trade, ts.scheduler(), ts.workerCount())
+                            .flatMap(ts -> makectx(request, parsed, trade, ts.scheduler(), ts.workerCount())
                             .doOnNext(ctx -> LOG.info("trade2io: {} handle with ctx {}", trade, ctx))
                             .doOnNext(ctx -> ctxRef.set(ctx))
                             .flatMap(ctx -> {
                                 final Observable<? extends InOut> reaction = getReactor().flatMap(reactor -> reactor.react(ctx, initial_io(trade, null)).toObservable());
                                 final RequestIsolation req_isolation = path2isolation(path);
                                 if (null != req_isolation) {
+                                    // sample latency of admitted trade for adaptive limit when trade halted
                                     return enableIsolation(req_isolation, reaction,
-                                            () -> fallbackOutbound(ctx.span(), req_isolation, request.protocolVersion(), trade));
+                                            () -> fallbackOutbound(ctx, req_isolation, request.protocolVersion(), trade),
+                                            trade::doOnHalt);
                                 } else {
                                     return reaction;
                                 }
@@ -195,14 +202,14 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
         return null != reactor ? Observable.just(reactor) : findAndSetRouter();
     }
 
-    private Observable<InOut> fallbackOutbound(final Span span, final RequestIsolation req_isolation, final HttpVersion protocolVersion,
+    private Observable<InOut> fallbackOutbound(final ReactContext ctx, final RequestIsolation req_isolation, final HttpVersion protocolVersion,
             final HttpTrade trade) {
         final HttpResponse response = new DefaultHttpResponse(protocolVersion, HttpResponseStatus.FOUND);
         response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
         response.headers().set(HttpHeaderNames.LOCATION, req_isolation._location);
 
-        span.setOperationName(req_isolation._path);
-        span.setTag("fallback", true);
+        ctx.bindOperation(req_isolation._path);
+        ctx.span().setTag("fallback", true);
 
         return Observable.just(initial_io(trade, responseWithoutBody(response)));
     }
@@ -210,40 +217,15 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
     private Observable<? extends InOut> enableIsolation(
             final RequestIsolation req_isolation,
             final Observable<? extends InOut> normal,
-            final Func0<Observable<InOut>> getfallback) {
-        return new HystrixObservableCommand<InOut>(HystrixObservableCommand.Setter
-                .withGroupKey(HystrixCommandGroupKey.Factory.asKey("req_isolations"))
-                .andCommandKey(HystrixCommandKey.Factory.asKey(req_isolation._path))
-                .andCommandPropertiesDefaults(HystrixCommandProperties.Setter()
-                        .withExecutionTimeoutEnabled(req_isolation._timeoutInMs > 0)
-                        .withExecutionTimeoutInMilliseconds(req_isolation._timeoutInMs > 0 ? req_isolation._timeoutInMs : 0)
-                        .withExecutionIsolationStrategy(ExecutionIsolationStrategy.SEMAPHORE)
-                        .withExecutionIsolationSemaphoreMaxConcurrentRequests(req_isolation._maxConcurrent)
-                        .withFallbackIsolationSemaphoreMaxConcurrentRequests(100)
-                        )
-                ) {
-            @Override
-            protected Observable<InOut> construct() {
-                return (Observable<InOut>) normal;
-            }
-
-            @Override
-            protected Observable<InOut> resumeWithFallback() {
-                return getfallback.call();
-            }
-        }.toObservable();
+            final Func0<Observable<InOut>> getfallback,
+            final Action1<Action0> onDone) {
+        return req_isolation.execute(normal, getfallback, onDone);
     }
 
     private RequestIsolation path2isolation(final String path) {
         return this._requestIsolations.get(path);
     }
 
-    private static String extractPath(final HttpRequest request) {
-        final QueryStringDecoder decoder = new QueryStringDecoder(request.uri(), CharsetUtil.UTF_8);
-        final String path = decoder.path();
-        return path;
-    }
-
     private static Observable<FullMessage<HttpResponse>> responseWithoutBody(final HttpResponse response) {
         return Observable.just(new FullMessage<HttpResponse>() {
             @Override
@@ -258,45 +240,53 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 
     private Observable<ReactContext> makectx(
             final HttpRequest request,
+            final ParsedRequest parsed,
             final HttpTrade trade,
             final Scheduler scheduler,
             final int concurrent) {
-        return getTracer(request).map(tracer -> {
-            final Span span = tracer.buildSpan("httpin")
-            .withTag(Tags.COMPONENT.getKey(), "jocean-http")
-            .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_SERVER)
-            .withTag(Tags.HTTP_URL.getKey(), request.uri())
-            .withTag(Tags.HTTP_METHOD.getKey(), request.method().name())
-            .withTag(Tags.PEER_HOST_IPV4.getKey(), get1stIp(request.headers().get("x-forwarded-for", "none")))
-            .start();
+        return getTracer(request, parsed).map(tracer -> {
+            final long begin = System.nanoTime();
+            // unsampled trade use noop span: no tags, logs nor hooks
+            final Span span = tracer != noopTracer ? buildSpan(tracer, request, parsed, trade) : noopTracer.buildSpan("httpin").start();
+            final AtomicReference<OperationMeters> boundMeters = new AtomicReference<>(null);
             trade.doOnHalt(() -> {
                 span.finish();
-                if (span instanceof JaegerSpan) {
-                    final String operation = ((JaegerSpan)span).getOperationName();
-                    getOrCreateTradeTimer("operation", operation).record(((JaegerSpan)span).getDuration(), TimeUnit.MICROSECONDS);
-                    getOrCreateInboundSummary("operation", operation).record(trade.traffic().inboundBytes());
-                    getOrCreateOutboundSummary("operation", operation).record(trade.traffic().outboundBytes());
-                }
+                // record metrics no matter sampled or not
+                final OperationMeters meters = boundMeters.get();
+                (null != meters ? meters : tradeMeters().get("httpin"))
+                    .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin),
+                            trade.traffic().inboundBytes(), trade.traffic().outboundBytes());
             });
 
-            // try to add host
-            TraceUtil.addTagNotNull(span, "http.host", request.headers().get(HttpHeaderNames.HOST));
+            return buildReactCtx(trade, parsed, span, tracer, scheduler, concurrent, boundMeters);
+        }).observeOn(scheduler, this._maxPending);
+    }
+
+    private Span buildSpan(final Tracer tracer, final HttpRequest request, final ParsedRequest parsed, final HttpTrade trade) {
+        final Span span = tracer.buildSpan("httpin")
+        .withTag(Tags.COMPONENT.getKey(), "jocean-http")
+        .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_SERVER)
+        .withTag(Tags.HTTP_URL.getKey(), request.uri())
+        .withTag(Tags.HTTP_METHOD.getKey(), request.method().name())
+        .withTag(Tags.PEER_HOST_IPV4.getKey(), null != parsed.peerip() ? parsed.peerip() : "none")
+        .start();
+
+        // try to add host
+        TraceUtil.addTagNotNull(span, "http.host", request.headers().get(HttpHeaderNames.HOST));
 //                  SLB-ID头字段获取SLB实例ID。
 //                  通过SLB-IP头字段获取SLB实例公网IP地址。
 //                  通过X-Forwarded-Proto头字段获取SLB的监听协议
 
-            TraceUtil.addTagNotNull(span, "slb.id", request.headers().get("slb-id"));
-            TraceUtil.addTagNotNull(span, "slb.ip", request.headers().get("slb-ip"));
-            TraceUtil.addTagNotNull(span, "slb.proto", request.headers().get("x-forwarded-proto"));
-            TraceUtil.hook4serversend(trade.writeCtrl(), span);
-
-            return buildReactCtx(trade, span, tracer, scheduler, concurrent);
-        }).observeOn(scheduler, this._maxPending);
+        TraceUtil.addTagNotNull(span, "slb.id", request.headers().get("slb-id"));
+        TraceUtil.addTagNotNull(span, "slb.ip", request.headers().get("slb-ip"));
+        TraceUtil.addTagNotNull(span, "slb.proto", request.headers().get("x-forwarded-proto"));
+        TraceUtil.hook4serversend(trade.writeCtrl(), span);
+        return span;
     }
 
     private Observable<TradeScheduler> path2scheduler(final String path) {
         final TradeScheduler ts = _requestSchedulers.get(path);
-        return (null != ts ? Observable.just(ts) : _finder.find(this._schedulerName, TradeScheduler.class));
+        return (null != ts ? Observable.just(ts) : _beanCache.find(this._schedulerName, TradeScheduler.class));
     }
 
 //    private <T> Transformer<T, T> runWithin(final AtomicReference<Scheduler> schedulerRef, final AtomicInteger concurrent) {
@@ -308,9 +298,10 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 //                .flatMap(scheduler ->  ts.observeOn(scheduler.scheduler(), this._maxPending));
 //    }
 
-    private Observable<Tracer> getTracer(final HttpRequest request) {
-        return this._tracingEnabled && isRequestForwardBySLB(request)
-                ? this._finder.find(Tracer.class).onErrorReturn(e -> noopTracer)
+    // sampling decided once here, by route of request's path
+    private Observable<Tracer> getTracer(final HttpRequest request, final ParsedRequest parsed) {
+        return this._tracingEnabled && isRequestForwardBySLB(request) && this._sampling.sample(parsed.path())
+                ? this._beanCache.find(Tracer.class).onErrorReturn(e -> noopTracer)
                 : Observable.just(noopTracer);
     }
 
@@ -318,7 +309,8 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
         return request.headers().contains("x-forwarded-for");
     }
 
-    private ReactContext buildReactCtx(final HttpTrade trade, final Span span, final Tracer tracer, final Scheduler scheduler, final int concurrent) {
+    private ReactContext buildReactCtx(final HttpTrade trade, final ParsedRequest parsed, final Span span, final Tracer tracer,
+            final Scheduler scheduler, final int concurrent, final AtomicReference<OperationMeters> boundMeters) {
         final StopWatch watch4Result = new StopWatch();
         return new ReactContext() {
             @Override
@@ -326,6 +318,11 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
                 return trade;
             }
 
+            @Override
+            public ParsedRequest request() {
+                return parsed;
+            }
+
             @Override
             public StopWatch watch() {
                 return watch4Result;
@@ -349,13 +346,20 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
             @Override
             public int concurrent() {
                 return concurrent;
+            }
+
+            @Override
+            public void bindOperation(final String operation) {
+                span.setOperationName(operation);
+                boundMeters.set(tradeMeters().get(operation));
             }};
     }
 
     private Transformer<FullMessage<HttpResponse>, Object> fullresp2objs() {
-        return getfullresp -> getfullresp.flatMap(fullresp ->
-            Observable.<Object>just(fullresp.message()).concatWith(fullresp.body().concatMap(body -> body.content()))
-                .concatWith(Observable.just(LastHttpContent.EMPTY_LAST_CONTENT)));
+        return getfullresp -> getfullresp.flatMap(fullresp -> Observable.concat(
+                Observable.just(fullresp.message()),
+                fullresp.body().concatMap(body -> body.content()),
+                Observable.just(LastHttpContent.EMPTY_LAST_CONTENT)));
     }
 
     private Observable<FullMessage<HttpResponse>> buildResponse(final HttpTrade trade, final InOut io) {
@@ -380,50 +384,6 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
                 .compose(StepableUtil.autostep2element2()).doOnNext(bbs -> bbs.dispose()).ignoreElements());
     }
 
-    @SuppressWarnings("unchecked")
-    private Func1<Observable<? extends Throwable>, ? extends Observable<?>> retryPolicy(final HttpTrade trade) {
-        final RetryPolicy<Integer> policy = new RetryPolicy<Integer>() {
-            @Override
-            public Observable<Integer> call(final Observable<Throwable> errors) {
-                return (Observable<Integer>) errors.compose(RxObservables.retryIfMatch(ifMatch(trade), 100))
-                        .compose(RxObservables.retryMaxTimes(_maxRetryTimes))
-                        .compose(RxObservables.retryDelayTo(_retryIntervalBase))
-                        .doOnNext( retryCount ->
-                            LOG.info("FORWARD_RETRY with retry-count {} for trade {}", retryCount, trade))
-                        ;
-            }};
-        return errors -> policy.call((Observable<Throwable>)errors);
-    }
-
-    private static Func1<Throwable, Boolean> ifMatch(final HttpTrade trade) {
-        return new Func1<Throwable, Boolean>() {
-            @Override
-            public Boolean call(final Throwable e) {
-                //  TODO, check obsrequest has been disposed ?
-//                if (trade.inboundHolder().isFragmented()) {
-//                    LOG.warn("NOT_RETRY for trade({}), bcs of trade's inbound has fragmented.",
-//                            trade);
-//                    return false;
-//                }
-                final boolean matched = (e instanceof TransportException)
-                    || (e instanceof ConnectException)
-                    || (e instanceof ClosedChannelException);
-                if (matched) {
-                    LOG.info("RETRY for trade({}), bcs of error: {}",
-                            trade, ExceptionUtils.exception2detail(e));
-                } else {
-                    LOG.warn("NOT_RETRY for trade({}), bcs of error: {}",
-                            trade, ExceptionUtils.exception2detail(e));
-                }
-                return matched;
-            }
-            @Override
-            public String toString() {
-                return "TransportException or ConnectException or ClosedChannelException";
-            }
-        };
-    }
-
     private Observable<TradeReactor> findAndSetRouter() {
         return this._finder.find(this._routerName, TradeReactor.class).map(reactor -> {
             if (this._reactorRef.compareAndSet(null, reactor)) {
@@ -438,75 +398,18 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
         .onErrorReturn(e -> NullReactor.INSTANCE);
     }
 
-    private Timer getOrCreateTradeTimer(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        Timer timer = this._tradeTimers.get(keyOfTags);
-
-        if (null == timer) {
-            timer = Timer.builder("jocean.xharbor.trade.duration")
-                .tags(tags)
-                .description("The duration of jocean xharbor trade")
-                .publishPercentileHistogram()
-                .minimumExpectedValue(Duration.ofMillis(1))
-                .maximumExpectedValue(Duration.ofSeconds(30))
-                // sla - 用您的SLA定义的桶发布累积直方图。与publishPercentileHistogram支持可聚合百分位数的监视系统一起使用时，此设置会在发布的直方图中添加更多的存储桶。
-                // 1ms -- 10ms -- 20ms -- 50ms -- 100ms -- 200ms -- 500ms -- 1s -- 5s -- 10s -- 30s
-//                .sla(Duration.ofMillis(1), Duration.ofMillis(10), Duration.ofMillis(20), Duration.ofMillis(50),
-//                        Duration.ofMillis(100), Duration.ofMillis(200), Duration.ofMillis(500), Duration.ofSeconds(1),
-//                        Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30))
-                .register(_meterRegistry);
-
-            final Timer old = this._tradeTimers.putIfAbsent(keyOfTags, timer);
-            if (null != old) {
-                timer = old;
-            }
-        }
-        return timer;
-    }
-
-    private DistributionSummary getOrCreateInboundSummary(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        DistributionSummary summary = this._inboundSummarys.get(keyOfTags);
-
-        if (null == summary) {
-            summary = DistributionSummary.builder("jocean.xharbor.trade.inbound")
-                .tags(tags)
-                .description("The inbound size of jocean xharbor trade") // optional
-                .baseUnit(BaseUnits.BYTES)
-                .publishPercentileHistogram()
-                .maximumExpectedValue( 8 * 1024L)
-                .register(_meterRegistry);
-
-            final DistributionSummary old = this._inboundSummarys.putIfAbsent(keyOfTags, summary);
-            if (null != old) {
-                summary = old;
-            }
-        }
-        return summary;
-    }
-
-    private DistributionSummary getOrCreateOutboundSummary(final String... tags) {
-        final StringTags keyOfTags = new StringTags(tags);
-
-        DistributionSummary summary = this._outboundSummarys.get(keyOfTags);
-
-        if (null == summary) {
-            summary = DistributionSummary.builder("jocean.xharbor.trade.outbound")
-                .tags(tags)
-                .description("The outbound size of jocean xharbor trade") // optional
-                .baseUnit(BaseUnits.BYTES)
-                .publishPercentileHistogram()
-                .maximumExpectedValue( 8 * 1024L)
-                .register(_meterRegistry);
-
-            final DistributionSummary old = this._outboundSummarys.putIfAbsent(keyOfTags, summary);
-            if (null != old) {
-                summary = old;
+    private OperationMeters.Factory tradeMeters() {
+        OperationMeters.Factory factory = this._tradeMeters;
+        if (null == factory) {
+            synchronized (this) {
+                factory = this._tradeMeters;
+                if (null == factory) {
+                    factory = this._tradeMeters = new OperationMeters.Factory("jocean.xharbor.trade", "trade",
+                            Duration.ofMillis(1), this._meterRegistry, MAX_CACHED_OPERATIONS);
+                }
             }
         }
-        return summary;
+        return factory;
     }
 
     private static volatile Tracer noopTracer = NoopTracerFactory.create();
@@ -514,6 +417,9 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
     @Inject
     BeanFinder _finder;
 
+    @Inject
+    BeanCache _beanCache;
+
     @Value("${scheduler.name}")
     String _schedulerName = "scheduler_default";
 
@@ -523,6 +429,24 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
     @Value("${tracing.enabled}")
     boolean _tracingEnabled = true;
 
+    // default sampling for route without own sampling, adjustable by TradeRelayMXBean
+    @Value("${tracing.sample_rate}")
+    void setSampleRate(final double rate) {
+        this._sampleRate = rate;
+        this._sampling.set(TraceSampling.DEFAULT_ROUTE, this._sampleRate, this._maxTracesPerSecond);
+    }
+
+    // <= 0 means unlimited
+    @Value("${tracing.max_per_second}")
+    void setMaxTracesPerSecond(final int maxPerSecond) {
+        this._maxTracesPerSecond = maxPerSecond;
+        this._sampling.set(TraceSampling.DEFAULT_ROUTE, this._sampleRate, this._maxTracesPerSecond);
+    }
+
+    private double _sampleRate = 1.0;
+    private int _maxTracesPerSecond = 0;
+    private final TraceSampling _sampling = new TraceSampling();
+
     @Value("${http.address}")
     String _httpAddress = "localhost";
 
@@ -542,12 +466,7 @@ public class TradeRelay extends Subscriber<HttpTrade> implements TradeRelayMXBea
 
     final private AtomicReference<TradeReactor> _reactorRef = new AtomicReference<>(null);;
 
-    private final int _maxRetryTimes = 3;
-    private final int _retryIntervalBase = 2;
-
-    private final ConcurrentMap<StringTags, Timer> _tradeTimers = new ConcurrentHashMap<>();
-    private final ConcurrentMap<StringTags, DistributionSummary> _inboundSummarys = new ConcurrentHashMap<>();
-    private final ConcurrentMap<StringTags, DistributionSummary> _outboundSummarys = new ConcurrentHashMap<>();
+    private volatile OperationMeters.Factory _tradeMeters = null;
 
     @Inject
     MeterRegistry _meterRegistry = Metrics.globalRegistry;
@@ -10,5 +10,12 @@ public interface TradeRelayMXBean {
 
     public void setTracingEnabled(boolean enabled);
 
+    // route -> sampling, route "*" is default
+    public Map<String, String> getTraceSamplings();
+
+    public void setTraceSampling(String route, double rate, int maxPerSecond);
+
+    public void removeTraceSampling(String route);
+
     public String[] getReactors();
 }
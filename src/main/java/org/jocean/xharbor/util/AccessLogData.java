@@ -0,0 +1,48 @@
+package org.jocean.xharbor.util;
+
+import org.springframework.beans.factory.annotation.Value;
+
+public class AccessLogData implements AccessLogger.Settings {
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("AccessLogData [file=").append(_file).append(", ringSize=").append(_ringSize)
+                .append(", maxFileBytes=").append(_maxFileBytes).append(", maxFiles=").append(_maxFiles).append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public String file() {
+        return this._file;
+    }
+
+    @Override
+    public int ringSize() {
+        return this._ringSize;
+    }
+
+    @Override
+    public long maxFileBytes() {
+        return this._maxFileBytes;
+    }
+
+    @Override
+    public int maxFiles() {
+        return this._maxFiles;
+    }
+
+    @Value("${log.file}")
+    String _file = "logs/access.log";
+
+    // records wait for writer, dropped beyond it
+    @Value("${log.ring_size}")
+    int _ringSize = 64 * 1024;
+
+    @Value("${log.max_file_bytes}")
+    long _maxFileBytes = 256 * 1024 * 1024L;
+
+    // current file and rolled files
+    @Value("${log.max_files}")
+    int _maxFiles = 10;
+}
@@ -0,0 +1,411 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.inject.Inject;
+
+import org.jocean.idiom.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+/**
+ * access log with fixed schema (one tab separated line per trade) written to rolling local file:
+ * log() fill preallocated slot of ring buffer (dropped when ring is full, never block trade),
+ * single writer thread encode slots into reusable byte buffer and write to file.
+ * when write failed, writer reopen file and retry, and give up after MAX_FAILURES consecutive failures,
+ * then log() return false (caller fallback to its own log) until enable() again.
+ * disabled (log() return false) until enable() with settings, see accesslog.xml
+ * @author isdom
+ *
+ */
+public class AccessLogger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogger.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int FLUSH_BYTES = 64 * 1024;
+    private static final int MAX_FAILURES = 3;
+    private static final long REOPEN_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STOP_TIMEOUT_MS = 1000L;
+
+    public interface Settings {
+        public String file();
+        // ring size, round up to power of 2
+        public int ringSize();
+        public long maxFileBytes();
+        public int maxFiles();
+    }
+
+    @Override
+    public String toString() {
+        return "AccessLogger [writer=" + this._writer + ", dropped=" + this._dropped.get() + "]";
+    }
+
+    /**
+     * @return action to disable access log, return after pending records written
+     */
+    public Action0 enable(final Settings settings) {
+        final Writer writer = new Writer(settings, this::onFailed);
+        final Writer prev = this._writer;
+        this._writer = writer;
+        if (null != prev) {
+            prev.stop();
+        }
+        if (null == this._droppedCounter) {
+            this._droppedCounter = FunctionCounter.builder("jocean.xharbor.accessfile.dropped", this._dropped, AtomicLong::get)
+                    .description("The access log records dropped when ring buffer is full")
+                    .register(this._meterRegistry);
+        }
+        writer.start();
+        LOG.info("enable access log to {}", settings.file());
+        return () -> {
+            if (this._writer == writer) {
+                this._writer = null;
+            }
+            writer.stop();
+            LOG.info("disable access log to {}", settings.file());
+        };
+    }
+
+    private void onFailed(final Writer writer) {
+        if (this._writer == writer) {
+            this._writer = null;
+            LOG.warn("disable access log to {} bcs of {} consecutive write failures", writer._settings.file(), MAX_FAILURES);
+        }
+    }
+
+    /**
+     * @return false if disabled (or write failed) or record dropped
+     */
+    public boolean log(
+            final long startAt,
+            final long costMs,
+            final String method,
+            final String uri,
+            final int status,
+            final String route,
+            final Object target,
+            final long inboundBytes,
+            final long outboundBytes,
+            final long upstreamOutboundBytes,
+            final long upstreamInboundBytes) {
+        final Writer writer = this._writer;
+        if (null == writer) {
+            return false;
+        }
+        final long seq = writer.claim();
+        if (seq < 0) {
+            this._dropped.incrementAndGet();
+            return false;
+        }
+        final Slot slot = writer.slotOf(seq);
+        slot._startAt = startAt;
+        slot._costMs = costMs;
+        slot._method = method;
+        slot._uri = uri;
+        slot._status = status;
+        slot._route = route;
+        slot._target = target;
+        slot._inboundBytes = inboundBytes;
+        slot._outboundBytes = outboundBytes;
+        slot._upstreamOutboundBytes = upstreamOutboundBytes;
+        slot._upstreamInboundBytes = upstreamInboundBytes;
+        // publish
+        slot._seq = seq;
+        return true;
+    }
+
+    private static final class Slot {
+        // seq of published record, volatile write publish other fields to writer thread
+        volatile long _seq = -1;
+        long _startAt;
+        long _costMs;
+        String _method;
+        String _uri;
+        int _status;
+        String _route;
+        Object _target;
+        long _inboundBytes;
+        long _outboundBytes;
+        long _upstreamOutboundBytes;
+        long _upstreamInboundBytes;
+
+        void clear() {
+            this._method = null;
+            this._uri = null;
+            this._route = null;
+            this._target = null;
+        }
+    }
+
+    private static final class Writer implements Runnable {
+        Writer(final Settings settings, final Action1<Writer> onFailed) {
+            this._settings = settings;
+            this._onFailed = onFailed;
+            final int size = Integer.highestOneBit(Math.max(2, settings.ringSize()) - 1) << 1;
+            this._slots = new Slot[size];
+            for (int idx = 0; idx < size; idx++) {
+                this._slots[idx] = new Slot();
+            }
+            this._mask = size - 1;
+        }
+
+        @Override
+        public String toString() {
+            return "[file=" + this._settings.file() + ",ring=" + this._slots.length
+                    + ",pending=" + (this._claimed.get() - this._consumed) + "]";
+        }
+
+        /**
+         * @return seq of claimed slot, or -1 when ring is full
+         */
+        long claim() {
+            long seq;
+            do {
+                seq = this._claimed.get();
+                if (seq - this._consumed >= this._slots.length) {
+                    return -1;
+                }
+            } while (!this._claimed.compareAndSet(seq, seq + 1));
+            return seq;
+        }
+
+        Slot slotOf(final long seq) {
+            return this._slots[(int)(seq & this._mask)];
+        }
+
+        void start() {
+            this._thread = new Thread(this, "xharbor-accesslog");
+            this._thread.setDaemon(true);
+            this._thread.start();
+        }
+
+        // wait for writer thread write pending records and exit, at most STOP_TIMEOUT_MS
+        void stop() {
+            this._running = false;
+            LockSupport.unpark(this._thread);
+            if (Thread.currentThread() != this._thread) {
+                try {
+                    this._thread.join(STOP_TIMEOUT_MS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int failures = 0;
+            try {
+                while (this._running) {
+                    try {
+                        if (null == this._out) {
+                            open();
+                        }
+                        if (!drain()) {
+                            flush();
+                            LockSupport.parkNanos(IDLE_PARK_NANOS);
+                        }
+                        failures = 0;
+                    } catch (final IOException e) {
+                        LOG.warn("exception when write access log to {}, failures: {}, detail: {}", this._settings.file(),
+                                failures + 1, ExceptionUtils.exception2detail(e));
+                        close();
+                        if (++failures >= MAX_FAILURES) {
+                            this._running = false;
+                            this._onFailed.call(this);
+                            return;
+                        }
+                        // reopen after delay, records claimed meanwhile wait in ring
+                        LockSupport.parkNanos(REOPEN_DELAY_NANOS);
+                    }
+                }
+                if (null == this._out) {
+                    open();
+                }
+                drain();
+                flush();
+            } catch (final Exception e) {
+                LOG.warn("exception when write access log to {}, detail: {}", this._settings.file(),
+                        ExceptionUtils.exception2detail(e));
+            } finally {
+                close();
+            }
+        }
+
+        // return true if any record written
+        private boolean drain() throws IOException {
+            boolean written = false;
+            for (;;) {
+                final long seq = this._consumed;
+                final Slot slot = slotOf(seq);
+                if (slot._seq != seq) {
+                    // not claimed or claimed but not published yet
+                    return written;
+                }
+                encode(slot);
+                slot.clear();
+                this._consumed = seq + 1;
+                written = true;
+                if (this._length >= FLUSH_BYTES) {
+                    flush();
+                }
+            }
+        }
+
+        private void encode(final Slot slot) {
+            appendLong(slot._startAt).appendTab()
+                .appendLong(slot._costMs).appendTab()
+                .appendString(slot._method).appendTab()
+                .appendString(slot._uri).appendTab()
+                .appendLong(slot._status).appendTab()
+                .appendString(slot._route).appendTab()
+                .appendString(null != slot._target ? slot._target.toString() : null).appendTab()
+                .appendLong(slot._inboundBytes).appendTab()
+                .appendLong(slot._outboundBytes).appendTab()
+                .appendLong(slot._upstreamOutboundBytes).appendTab()
+                .appendLong(slot._upstreamInboundBytes)
+                .appendByte('\n');
+        }
+
+        private Writer appendTab() {
+            return appendByte('\t');
+        }
+
+        private Writer appendByte(final int b) {
+            if (this._length == this._buf.length) {
+                this._buf = Arrays.copyOf(this._buf, this._buf.length * 2);
+            }
+            this._buf[this._length++] = (byte)b;
+            return this;
+        }
+
+        private Writer appendLong(final long value) {
+            if (value < 0) {
+                appendByte('-');
+                if (value == Long.MIN_VALUE) {
+                    return appendString("9223372036854775808");
+                }
+                return appendLong(-value);
+            }
+            if (value >= 10) {
+                appendLong(value / 10);
+            }
+            return appendByte('0' + (int)(value % 10));
+        }
+
+        // UTF-8, tab & line break are replaced by space to keep one record per line
+        private Writer appendString(final String value) {
+            if (null == value) {
+                return appendByte('-');
+            }
+            for (int idx = 0; idx < value.length(); idx++) {
+                final char c = value.charAt(idx);
+                if (c == '\t' || c == '\n' || c == '\r') {
+                    appendByte(' ');
+                } else if (c < 0x80) {
+                    appendByte(c);
+                } else if (c < 0x800) {
+                    appendByte(0xc0 | (c >> 6)).appendByte(0x80 | (c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && idx + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(idx + 1))) {
+                    final int cp = Character.toCodePoint(c, value.charAt(++idx));
+                    appendByte(0xf0 | (cp >> 18)).appendByte(0x80 | ((cp >> 12) & 0x3f))
+                        .appendByte(0x80 | ((cp >> 6) & 0x3f)).appendByte(0x80 | (cp & 0x3f));
+                } else {
+                    appendByte(0xe0 | (c >> 12)).appendByte(0x80 | ((c >> 6) & 0x3f)).appendByte(0x80 | (c & 0x3f));
+                }
+            }
+            return this;
+        }
+
+        private void flush() throws IOException {
+            if (this._length > 0) {
+                this._out.write(this._buf, 0, this._length);
+                this._fileBytes += this._length;
+                this._length = 0;
+                if (this._fileBytes >= this._settings.maxFileBytes()) {
+                    roll();
+                }
+            }
+        }
+
+        private void open() throws IOException {
+            final File file = new File(this._settings.file());
+            if (null != file.getParentFile()) {
+                file.getParentFile().mkdirs();
+            }
+            this._fileBytes = file.length();
+            this._out = new FileOutputStream(file, true);
+        }
+
+        // file -> file.1 -> ... -> file.(maxFiles-1), oldest is deleted
+        private void roll() throws IOException {
+            close();
+            final String name = this._settings.file();
+            final int maxFiles = Math.max(1, this._settings.maxFiles());
+            for (int idx = maxFiles - 1; idx >= 1; idx--) {
+                final File src = new File(idx == 1 ? name : name + "." + (idx - 1));
+                if (src.exists()) {
+                    Files.move(src.toPath(), new File(name + "." + idx).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (1 == maxFiles) {
+                Files.deleteIfExists(new File(name).toPath());
+            }
+            open();
+        }
+
+        private void close() {
+            final OutputStream out = this._out;
+            this._out = null;
+            if (null != out) {
+                try {
+                    out.close();
+                } catch (final IOException e) {
+                    LOG.warn("exception when close access log {}, detail: {}", this._settings.file(),
+                            ExceptionUtils.exception2detail(e));
+                }
+            }
+        }
+
+        private final Settings _settings;
+        private final Action1<Writer> _onFailed;
+        private final Slot[] _slots;
+        private final int _mask;
+        private final AtomicLong _claimed = new AtomicLong(0);
+        // only updated by writer thread
+        private volatile long _consumed = 0;
+        private volatile boolean _running = true;
+        private Thread _thread;
+        private OutputStream _out;
+        private long _fileBytes;
+        private byte[] _buf = new byte[FLUSH_BYTES * 2];
+        private int _length = 0;
+    }
+
+    @Inject
+    MeterRegistry _meterRegistry = Metrics.globalRegistry;
+
+    private volatile Writer _writer = null;
+    private final AtomicLong _dropped = new AtomicLong(0);
+    private volatile FunctionCounter _droppedCounter = null;
+}
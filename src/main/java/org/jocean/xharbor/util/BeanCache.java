@@ -0,0 +1,91 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+
+import org.jocean.idiom.BeanFinder;
+import org.jocean.idiom.BeanHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import rx.Observable;
+
+/**
+ * cache of resolved beans for per-request lookups, so steady-state request path never touch bean registry.
+ * all cached beans are invalidated when any unit (spring context) is refreshed or closed,
+ * events of child unit are published to this bean within parent context too, see xharbor.xml
+ * @author isdom
+ *
+ */
+public class BeanCache implements ApplicationListener<ApplicationContextEvent> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BeanCache.class);
+
+    // name of bean found by type only
+    private static final String BY_TYPE = "";
+
+    @Override
+    public String toString() {
+        return "BeanCache [types=" + this._beans.size() + "]";
+    }
+
+    @Override
+    public void onApplicationEvent(final ApplicationContextEvent event) {
+        if ((event instanceof ContextRefreshedEvent || event instanceof ContextClosedEvent) && !this._beans.isEmpty()) {
+            LOG.info("invalidate cached beans bcs of {} for {}", event.getClass().getSimpleName(),
+                    event.getApplicationContext().getDisplayName());
+            this._beans.clear();
+        }
+    }
+
+    public <T> Observable<T> find(final Class<T> type) {
+        return find(BY_TYPE, type);
+    }
+
+    public <T> Observable<T> find(final String name, final Class<T> type) {
+        final T bean = cached(name, type);
+        if (null != bean) {
+            return Observable.just(bean);
+        }
+        return (BY_TYPE.equals(name) ? this._finder.find(type) : this._finder.find(name, type))
+                .doOnNext(found -> cache(name, type, found));
+    }
+
+    /**
+     * @return bean from cache, or from holder (and cache it), null if not found
+     */
+    public <T> T getBean(final BeanHolder holder, final String name, final Class<T> type) {
+        T bean = cached(name, type);
+        if (null == bean && null != holder) {
+            bean = holder.getBean(name, type);
+            if (null != bean) {
+                cache(name, type, bean);
+            }
+        }
+        return bean;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(final String name, final Class<T> type) {
+        final ConcurrentMap<String, Object> named = this._beans.get(type);
+        return null != named ? (T)named.get(name) : null;
+    }
+
+    private void cache(final String name, final Class<?> type, final Object bean) {
+        this._beans.computeIfAbsent(type, any -> new ConcurrentHashMap<>()).put(name, bean);
+    }
+
+    @Inject
+    BeanFinder _finder;
+
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Object>> _beans = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * lock-free multi-producer queue with capacity: offer() return false (caller drop element) when full,
+ * consumer drain elements in batch.
+ * @author isdom
+ *
+ */
+public class BoundedQueue<T> {
+
+    public BoundedQueue(final int capacity) {
+        this._capacity = capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "[size=" + this._size.get() + ",capacity=" + this._capacity + "]";
+    }
+
+    /**
+     * @return false if queue is full
+     */
+    public boolean offer(final T element) {
+        if (this._size.incrementAndGet() > this._capacity) {
+            this._size.decrementAndGet();
+            return false;
+        }
+        this._queue.offer(element);
+        return true;
+    }
+
+    /**
+     * @return count of elements moved to to
+     */
+    public int drainTo(final Collection<? super T> to, final int max) {
+        int count = 0;
+        while (count < max) {
+            final T element = this._queue.poll();
+            if (null == element) {
+                break;
+            }
+            this._size.decrementAndGet();
+            to.add(element);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        return this._size.get();
+    }
+
+    public int capacity() {
+        return this._capacity;
+    }
+
+    private final int _capacity;
+    private final Queue<T> _queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _size = new AtomicInteger(0);
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * immutable set of IPv4 / IPv6 CIDR blocks, stored as binary prefix trie in int arrays (one trie per address family),
+ * contains() walk at most prefix length nodes, no matter how many blocks added.
+ * @author isdom
+ *
+ */
+public class CidrSet {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CidrSet.class);
+
+    public static final CidrSet EMPTY = new Builder().build();
+
+    public static class Builder {
+        /**
+         * @param cidr eg: 10.0.0.0/8, 2001:db8::/32, or single ip
+         * @return false if cidr is invalid
+         */
+        public boolean add(final String cidr) {
+            final int slash = cidr.indexOf('/');
+            final String ip = (slash >= 0 ? cidr.substring(0, slash) : cidr).trim();
+            if (!InetAddresses.isInetAddress(ip)) {
+                return false;
+            }
+            final byte[] addr = InetAddresses.forString(ip).getAddress();
+            final int maxBits = addr.length * 8;
+            final int prefix;
+            try {
+                prefix = slash >= 0 ? Integer.parseInt(cidr.substring(slash + 1).trim()) : maxBits;
+            } catch (final NumberFormatException e) {
+                return false;
+            }
+            if (prefix < 0 || prefix > maxBits) {
+                return false;
+            }
+            (addr.length == 4 ? this._v4 : this._v6).insert(addr, prefix);
+            this._count++;
+            return true;
+        }
+
+        /**
+         * add lines of cidr, skip blank line & line start with '#'
+         */
+        public Builder addLines(final Iterable<String> lines) {
+            for (final String line : lines) {
+                final String cidr = line.trim();
+                if (!cidr.isEmpty() && !cidr.startsWith("#") && !add(cidr)) {
+                    LOG.warn("invalid cidr {}, ignore", cidr);
+                }
+            }
+            return this;
+        }
+
+        public CidrSet build() {
+            return new CidrSet(this._v4.compact(), this._v6.compact(), this._count);
+        }
+
+        private final Trie _v4 = new Trie();
+        private final Trie _v6 = new Trie();
+        private int _count = 0;
+    }
+
+    private CidrSet(final Trie v4, final Trie v6, final int count) {
+        this._v4 = v4;
+        this._v6 = v6;
+        this._count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "[cidrs=" + this._count + ",nodes(v4/v6)=" + this._v4._size + "/" + this._v6._size + "]";
+    }
+
+    public int size() {
+        return this._count;
+    }
+
+    /**
+     * @return true if ip is within any cidr block, false if not or ip is invalid
+     */
+    public boolean contains(final String ip) {
+        if (null == ip || !InetAddresses.isInetAddress(ip)) {
+            return false;
+        }
+        return contains(InetAddresses.forString(ip));
+    }
+
+    public boolean contains(final InetAddress address) {
+        final byte[] addr = address.getAddress();
+        return (addr.length == 4 ? this._v4 : this._v6).match(addr);
+    }
+
+    private static int bitOf(final byte[] addr, final int idx) {
+        return (addr[idx >>> 3] >>> (7 - (idx & 7))) & 1;
+    }
+
+    private static final class Trie {
+        // node 0 is root, child index 0 means no child
+        Trie() {
+            this._size = 1;
+        }
+
+        void insert(final byte[] addr, final int prefix) {
+            int node = 0;
+            for (int idx = 0; idx < prefix; idx++) {
+                if (this._terminals.get(node)) {
+                    // covered by shorter prefix already
+                    return;
+                }
+                final int slot = node * 2 + bitOf(addr, idx);
+                if (0 == this._children[slot]) {
+                    // newNode() maybe re-allocate _children
+                    final int child = newNode();
+                    this._children[slot] = child;
+                }
+                node = this._children[slot];
+            }
+            this._terminals.set(node);
+            // sub nodes are covered by this prefix now
+            this._children[node * 2] = 0;
+            this._children[node * 2 + 1] = 0;
+        }
+
+        boolean match(final byte[] addr) {
+            final int maxBits = addr.length * 8;
+            int node = 0;
+            for (int idx = 0; ; idx++) {
+                if (this._terminals.get(node)) {
+                    return true;
+                }
+                if (idx >= maxBits) {
+                    return false;
+                }
+                node = this._children[node * 2 + bitOf(addr, idx)];
+                if (0 == node) {
+                    return false;
+                }
+            }
+        }
+
+        Trie compact() {
+            this._children = Arrays.copyOf(this._children, this._size * 2);
+            return this;
+        }
+
+        private int newNode() {
+            if (this._size * 2 >= this._children.length) {
+                this._children = Arrays.copyOf(this._children, this._children.length * 2);
+            }
+            return this._size++;
+        }
+
+        private int[] _children = new int[64];
+        private final BitSet _terminals = new BitSet();
+        private int _size;
+    }
+
+    private final Trie _v4;
+    private final Trie _v6;
+    private final int _count;
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.functions.Action0;
+import rx.functions.Action1;
+
+/**
+ * typed view of per-route (path pattern) configs published by conf_setting units:
+ * consumer precompute its flags when version() changed or when watched route changed,
+ * so request path read plain field instead of string-keyed map lookup.
+ * @author isdom
+ *
+ */
+public class ConfigView {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigView.class);
+
+    /**
+     * immutable settings of one route
+     */
+    public static class Settings {
+        public static final Settings EMPTY = new Settings(Collections.<String, String>emptyMap());
+
+        Settings(final Map<String, String> values) {
+            this._values = values;
+        }
+
+        @Override
+        public String toString() {
+            return this._values.toString();
+        }
+
+        public String getString(final String key, final String defaultValue) {
+            final String value = this._values.get(key);
+            return null != value ? value : defaultValue;
+        }
+
+        public boolean getBoolean(final String key, final boolean defaultValue) {
+            final String value = this._values.get(key);
+            return null != value ? "true".equals(value) : defaultValue;
+        }
+
+        public int getInt(final String key, final int defaultValue) {
+            final String value = this._values.get(key);
+            try {
+                return null != value ? Integer.parseInt(value.trim()) : defaultValue;
+            } catch (final NumberFormatException e) {
+                LOG.warn("invalid int config {}={}, use default {}", key, value, defaultValue);
+                return defaultValue;
+            }
+        }
+
+        public long getLong(final String key, final long defaultValue) {
+            final String value = this._values.get(key);
+            try {
+                return null != value ? Long.parseLong(value.trim()) : defaultValue;
+            } catch (final NumberFormatException e) {
+                LOG.warn("invalid long config {}={}, use default {}", key, value, defaultValue);
+                return defaultValue;
+            }
+        }
+
+        private final Map<String, String> _values;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigView [version=" + this._version + ", routes=" + this._routes + "]";
+    }
+
+    /**
+     * @return version changed when any route's settings changed
+     */
+    public long version() {
+        return this._version;
+    }
+
+    public Settings settingsOf(final String route) {
+        final Settings settings = this._routes.get(route);
+        return null != settings ? settings : Settings.EMPTY;
+    }
+
+    /**
+     * publish route's config, see conf_setting.xml
+     * @return action to remove this config
+     */
+    public Action0 put(final String route, final String key, final String value) {
+        update(route, key, value);
+        return () -> {
+            // remove only when not overridden
+            if (value.equals(settingsOf(route)._values.get(key))) {
+                update(route, key, null);
+            }
+        };
+    }
+
+    /**
+     * onChanged is invoked with current settings at once, and with new settings when route's settings changed
+     * @return action to unwatch
+     */
+    public Action0 watch(final String route, final Action1<Settings> onChanged) {
+        final Watcher watcher = new Watcher(route, onChanged);
+        this._watchers.add(watcher);
+        onChanged.call(settingsOf(route));
+        return () -> this._watchers.remove(watcher);
+    }
+
+    private void update(final String route, final String key, final String value) {
+        final Settings settings;
+        synchronized (this) {
+            final Map<String, String> values = new HashMap<>(settingsOf(route)._values);
+            if (null != value) {
+                values.put(key, value);
+            } else {
+                values.remove(key);
+            }
+            settings = values.isEmpty() ? Settings.EMPTY : new Settings(Collections.unmodifiableMap(values));
+            if (values.isEmpty()) {
+                this._routes.remove(route);
+            } else {
+                this._routes.put(route, settings);
+            }
+            this._version++;
+        }
+        LOG.info("route {}'s config {} changed to {}", route, key, value);
+        for (final Watcher watcher : this._watchers) {
+            if (watcher._route.equals(route)) {
+                watcher._onChanged.call(settings);
+            }
+        }
+    }
+
+    private static final class Watcher {
+        Watcher(final String route, final Action1<Settings> onChanged) {
+            this._route = route;
+            this._onChanged = onChanged;
+        }
+
+        private final String _route;
+        private final Action1<Settings> _onChanged;
+    }
+
+    private final ConcurrentMap<String, Settings> _routes = new ConcurrentHashMap<>();
+    private final List<Watcher> _watchers = new CopyOnWriteArrayList<>();
+    private volatile long _version = 0;
+}
@@ -0,0 +1,57 @@
+package org.jocean.xharbor.util;
+
+import org.springframework.beans.factory.annotation.Value;
+
+public class HealthCheckData implements ServiceHealthChecker.Settings {
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("HealthCheckData [path=").append(_path).append(", intervalMs=").append(_intervalMs)
+                .append(", timeoutMs=").append(_timeoutMs).append(", healthyThreshold=").append(_healthyThreshold)
+                .append(", unhealthyThreshold=").append(_unhealthyThreshold).append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public String path() {
+        return this._path;
+    }
+
+    @Override
+    public long intervalMs() {
+        return this._intervalMs;
+    }
+
+    @Override
+    public long timeoutMs() {
+        return this._timeoutMs;
+    }
+
+    @Override
+    public int healthyThreshold() {
+        return this._healthyThreshold;
+    }
+
+    @Override
+    public int unhealthyThreshold() {
+        return this._unhealthyThreshold;
+    }
+
+    @Value("${check.path}")
+    String _path = "/";
+
+    @Value("${check.interval_ms}")
+    long _intervalMs = 5000L;
+
+    @Value("${check.timeout_ms}")
+    long _timeoutMs = 1000L;
+
+    // consecutive succeed probes to mark service up
+    @Value("${check.healthy_threshold}")
+    int _healthyThreshold = 2;
+
+    // consecutive failed probes to mark service down
+    @Value("${check.unhealthy_threshold}")
+    int _unhealthyThreshold = 3;
+}
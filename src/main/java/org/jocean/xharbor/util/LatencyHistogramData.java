@@ -0,0 +1,56 @@
+package org.jocean.xharbor.util;
+
+import org.springframework.beans.factory.annotation.Value;
+
+public class LatencyHistogramData implements RelayMemoBuilderForHistogram.Settings {
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("LatencyHistogramData [lowestMs=").append(_lowestMs).append(", highestMs=").append(_highestMs)
+                .append(", significantDigits=").append(_significantDigits).append(", intervalSeconds=")
+                .append(_intervalSeconds).append(", maxRoutes=").append(_maxRoutes).append("]");
+        return builder.toString();
+    }
+
+    @Override
+    public long lowestMs() {
+        return this._lowestMs;
+    }
+
+    @Override
+    public long highestMs() {
+        return this._highestMs;
+    }
+
+    @Override
+    public int significantDigits() {
+        return this._significantDigits;
+    }
+
+    @Override
+    public int intervalSeconds() {
+        return this._intervalSeconds;
+    }
+
+    @Override
+    public int maxRoutes() {
+        return this._maxRoutes;
+    }
+
+    @Value("${histogram.lowest_ms}")
+    long _lowestMs = 1;
+
+    @Value("${histogram.highest_ms}")
+    long _highestMs = 60 * 60 * 1000L;
+
+    // 0 ~ 5
+    @Value("${histogram.significant_digits}")
+    int _significantDigits = 2;
+
+    @Value("${histogram.interval_seconds}")
+    int _intervalSeconds = 60;
+
+    @Value("${histogram.max_routes}")
+    int _maxRoutes = 1024;
+}
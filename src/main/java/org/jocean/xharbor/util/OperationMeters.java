@@ -0,0 +1,136 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import rx.functions.Func1;
+
+/**
+ * pre-bound duration timer & inbound/outbound size summaries of one operation (eg: matched path),
+ * resolved once by Factory then recorded by direct calls.
+ * @author isdom
+ *
+ */
+public class OperationMeters {
+
+    /**
+     * create & cache meters of operation named ${prefix}.duration / ${prefix}.inbound / ${prefix}.outbound,
+     * at most maxCached operations are cached, others are resolved by meter registry each time.
+     */
+    public static class Factory {
+        public Factory(final String prefix, final String noun, final Duration minExpected,
+                final MeterRegistry meterRegistry, final int maxCached) {
+            this._prefix = prefix;
+            this._noun = noun;
+            this._minExpected = minExpected;
+            this._meterRegistry = meterRegistry;
+            this._maxCached = maxCached;
+        }
+
+        public OperationMeters get(final String operation) {
+            final OperationMeters meters = this._cached.get(operation);
+            if (null != meters) {
+                return meters;
+            }
+            if (this._cached.size() >= this._maxCached) {
+                return build(operation);
+            }
+            return this._cached.computeIfAbsent(operation, this::build);
+        }
+
+        private OperationMeters build(final String operation) {
+            final Timer.Builder timer = Timer.builder(this._prefix + ".duration")
+                .tags("operation", operation)
+                .description("The duration of jocean xharbor " + this._noun)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(Duration.ofSeconds(30));
+            if (null != this._minExpected) {
+                timer.minimumExpectedValue(this._minExpected);
+            }
+            return new OperationMeters(operation,
+                    timer.register(this._meterRegistry),
+                    summary(operation, ".inbound", "The inbound size of jocean xharbor " + this._noun),
+                    summary(operation, ".outbound", "The outbound size of jocean xharbor " + this._noun));
+        }
+
+        private DistributionSummary summary(final String operation, final String suffix, final String description) {
+            return DistributionSummary.builder(this._prefix + suffix)
+                .tags("operation", operation)
+                .description(description)
+                .baseUnit(BaseUnits.BYTES)
+                .publishPercentileHistogram()
+                .maximumExpectedValue( 8 * 1024L)
+                .register(this._meterRegistry);
+        }
+
+        private final String _prefix;
+        private final String _noun;
+        private final Duration _minExpected;
+        private final MeterRegistry _meterRegistry;
+        private final int _maxCached;
+        private final ConcurrentMap<String, OperationMeters> _cached = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * meters of request path (query string excluded), path's operation is resolved by operationOf (eg: matched path of rule),
+     * recent maxCached paths are cached (LRU), skip resolving operation & meters lookup for same path.
+     */
+    public static class ByPath {
+        public ByPath(final Func1<String, String> operationOf, final Factory factory, final int maxCached) {
+            this._path2meters = CacheBuilder.newBuilder()
+                    .maximumSize(maxCached)
+                    .build(CacheLoader.from(path -> factory.get(operationOf.call(path))));
+        }
+
+        public OperationMeters get(final String path) {
+            return this._path2meters.getUnchecked(path);
+        }
+
+        long size() {
+            return this._path2meters.size();
+        }
+
+        private final LoadingCache<String, OperationMeters> _path2meters;
+    }
+
+    OperationMeters(final String operation, final Timer duration,
+            final DistributionSummary inbound, final DistributionSummary outbound) {
+        this._operation = operation;
+        this._duration = duration;
+        this._inbound = inbound;
+        this._outbound = outbound;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationMeters [operation=" + this._operation + "]";
+    }
+
+    public String operation() {
+        return this._operation;
+    }
+
+    public void record(final long durationMicros, final long inboundBytes, final long outboundBytes) {
+        this._duration.record(durationMicros, TimeUnit.MICROSECONDS);
+        this._inbound.record(inboundBytes);
+        this._outbound.record(outboundBytes);
+    }
+
+    private final String _operation;
+    private final Timer _duration;
+    private final DistributionSummary _inbound;
+    private final DistributionSummary _outbound;
+}
@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.functions.Action0;
+
+/**
+ * outlier detection for one upstream (service or API of service):
+ * eject when consecutive failures or error rate within rolling window reach threshold,
+ * ejection time is doubled for each failed re-try (exponential backoff), and after ejection time
+ * at most max probes requests are let through (half-open), upstream restored when max probes requests succeed.
+ * probe slots are reserved by beginRequest with CAS, so concurrent probes never exceed max probes.
+ * @author isdom
+ *
+ */
+public class OutlierDetector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+
+    private static final Action0 NOP = () -> {};
+
+    public interface Settings {
+        // <= 0 means disable
+        public int consecutiveFailures();
+        // <= 0 means disable
+        public int errorPercentage();
+        // min requests within window to check error percentage
+        public int minRequests();
+        public long baseEjectionMs();
+        public long maxEjectionMs();
+        // concurrent probe requests when half-open, and successes required to restore
+        public int maxProbes();
+    }
+
+    public OutlierDetector(final String name, final Settings settings) {
+        this._name = name;
+        this._settings = settings;
+    }
+
+    @Override
+    public String toString() {
+        final long ejectedUntil = this._ejectedUntil;
+        final StringBuilder sb = new StringBuilder();
+        if (0 == ejectedUntil) {
+            sb.append("HEALTHY");
+        } else if (System.currentTimeMillis() < ejectedUntil) {
+            sb.append("EJECTED(").append(ejectedUntil - System.currentTimeMillis()).append("ms left)");
+        } else {
+            sb.append("PROBING(").append(this._probeSuccesses).append(" succeed)");
+        }
+        sb.append(",ejections=").append(this._ejections)
+            .append(",window(success/failure)=").append(this._window.sum(SUCCESS)).append("/").append(this._window.sum(FAILURE));
+        return sb.toString();
+    }
+
+    /**
+     * @return true if healthy, or half-open with probe slot left (not reserved, see beginRequest)
+     */
+    public boolean isAvailable() {
+        final long ejectedUntil = this._ejectedUntil;
+        if (0 == ejectedUntil) {
+            return true;
+        }
+        return System.currentTimeMillis() >= ejectedUntil && this._probes.get() < this._settings.maxProbes();
+    }
+
+    /**
+     * mark one request begin, reserve one probe slot when half-open
+     * @return action to mark request end (release reserved probe slot), safe to call more than once,
+     *          or null when half-open and all probe slots reserved by other requests
+     */
+    public Action0 beginRequest() {
+        if (!isProbing()) {
+            return NOP;
+        }
+        for (;;) {
+            final int probes = this._probes.get();
+            if (probes >= this._settings.maxProbes()) {
+                return null;
+            }
+            if (this._probes.compareAndSet(probes, probes + 1)) {
+                break;
+            }
+        }
+        final AtomicBoolean ended = new AtomicBoolean(false);
+        return () -> {
+            if (ended.compareAndSet(false, true)) {
+                this._probes.decrementAndGet();
+            }
+        };
+    }
+
+    public void onSuccess() {
+        this._window.increment(SUCCESS);
+        this._consecutiveFailures.set(0);
+        if (0 != this._ejectedUntil) {
+            synchronized (this) {
+                if (isProbing() && ++this._probeSuccesses >= this._settings.maxProbes()) {
+                    restore();
+                }
+            }
+        }
+    }
+
+    public void onFailure() {
+        this._window.increment(FAILURE);
+        final int consecutive = this._consecutiveFailures.incrementAndGet();
+        synchronized (this) {
+            if (0 != this._ejectedUntil) {
+                if (isProbing()) {
+                    // probe failed, eject again with longer time
+                    eject();
+                }
+                // else failure of request begin before ejected, ignore
+                return;
+            }
+            if (reachConsecutiveFailures(consecutive) || reachErrorPercentage()) {
+                eject();
+            }
+        }
+    }
+
+    /**
+     * eject now, no matter failures
+     */
+    public synchronized void eject() {
+        this._ejections++;
+        final long ejectionMs = ejectionMs(this._ejections);
+        this._ejectedUntil = System.currentTimeMillis() + ejectionMs;
+        this._probeSuccesses = 0;
+        this._consecutiveFailures.set(0);
+        this._window.reset();
+        LOG.warn("OUTLIER_EJECTED: {} ejected for {} ms, ejections: {}", this._name, ejectionMs, this._ejections);
+    }
+
+    public synchronized void restore() {
+        if (0 != this._ejectedUntil) {
+            this._ejectedUntil = 0;
+            this._ejections = 0;
+            this._probeSuccesses = 0;
+            this._window.reset();
+            LOG.info("OUTLIER_RESTORED: {} restored", this._name);
+        }
+    }
+
+    private boolean isProbing() {
+        return 0 != this._ejectedUntil && System.currentTimeMillis() >= this._ejectedUntil;
+    }
+
+    private boolean reachConsecutiveFailures(final int consecutive) {
+        return this._settings.consecutiveFailures() > 0 && consecutive >= this._settings.consecutiveFailures();
+    }
+
+    private boolean reachErrorPercentage() {
+        if (this._settings.errorPercentage() <= 0) {
+            return false;
+        }
+        final long failures = this._window.sum(FAILURE);
+        final long total = failures + this._window.sum(SUCCESS);
+        return total >= this._settings.minRequests() && failures * 100 >= total * this._settings.errorPercentage();
+    }
+
+    private long ejectionMs(final int ejections) {
+        // base * 2^(ejections-1), capped by max
+        final long max = this._settings.maxEjectionMs();
+        long ejectionMs = this._settings.baseEjectionMs();
+        for (int idx = 1; idx < ejections && ejectionMs < max; idx++) {
+            ejectionMs <<= 1;
+        }
+        return Math.min(ejectionMs, max);
+    }
+
+    private final String _name;
+    private final Settings _settings;
+    // 10 seconds with 10 buckets
+    private final RollingWindow _window = new RollingWindow(10 * 1000L, 10, 2);
+    private final AtomicInteger _consecutiveFailures = new AtomicInteger(0);
+    // reserved probe slots, released by probe request's end, not reset when ejected or restored
+    private final AtomicInteger _probes = new AtomicInteger(0);
+    // 0 means healthy
+    private volatile long _ejectedUntil = 0;
+    private int _ejections = 0;
+    private int _probeSuccesses = 0;
+}
@@ -0,0 +1,294 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.inject.Inject;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.jocean.xharbor.api.RelayMemo;
+import org.jocean.xharbor.api.RelayMemo.RESULT;
+import org.jocean.xharbor.api.RelayMemo.STEP;
+import org.jocean.xharbor.api.RoutingInfo;
+import org.jocean.xharbor.api.Target;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import rx.functions.Action0;
+import rx.functions.Action2;
+import rx.functions.Func0;
+
+/**
+ * record step & result ttl (ms) of each path by lock-free HdrHistogram interval recorders,
+ * p50/p90/p99/p999/max of last interval are exposed to register (StatsImpl) and meter registry.
+ * disabled (build() return null) until enable() with settings, see latency.xml
+ * @author isdom
+ *
+ */
+public class RelayMemoBuilderForHistogram implements RelayMemo.Builder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RelayMemoBuilderForHistogram.class);
+
+    private static final String ALL = "all";
+    private static final int STEPS = STEP.values().length;
+    private static final int SLOTS = STEPS + RESULT.values().length;
+
+    private static final String[] STATS = new String[]{"count", "p50", "p90", "p99", "p999", "max"};
+    private static final double[] PERCENTILES = new double[]{50.0, 90.0, 99.0, 99.9};
+
+    public interface Settings {
+        public long lowestMs();
+        // ttl above it is recorded as highestMs
+        public long highestMs();
+        public int significantDigits();
+        public int intervalSeconds();
+        // paths beyond it are recorded only into "all"
+        public int maxRoutes();
+    }
+
+    public RelayMemoBuilderForHistogram(final Action2<String, Func0<Map<String, Object>>> register, final Timer timer) {
+        this._register = register;
+        this._timer = timer;
+    }
+
+    @Override
+    public String toString() {
+        return "RelayMemoBuilderForHistogram [recording=" + this._recording + "]";
+    }
+
+    /**
+     * @return action to disable histogram recording
+     */
+    public Action0 enable(final Settings settings) {
+        final Recording recording = new Recording(settings);
+        final Recording prev = this._recording;
+        this._recording = recording;
+        if (null != prev) {
+            prev.stop();
+        }
+        recording.start();
+        LOG.info("enable latency histogram with {}", settings);
+        return () -> {
+            if (this._recording == recording) {
+                this._recording = null;
+            }
+            recording.stop();
+            LOG.info("disable latency histogram with {}", settings);
+        };
+    }
+
+    @Override
+    public RelayMemo build(final Target target, final RoutingInfo info) {
+        final Recording recording = this._recording;
+        return null != recording ? recording.memoOf(normalizeString(info.getPath())) : null;
+    }
+
+    private static final String normalizeString(final String input) {
+        return input.replace(':', '-');
+    }
+
+    // all recorders & meters created with one settings
+    final class Recording {
+        Recording(final Settings settings) {
+            this._settings = settings;
+            this._all = new HistogramMemo(ALL, null);
+        }
+
+        @Override
+        public String toString() {
+            return "Recording [settings=" + this._settings + ", routes=" + this._memos.size() + "]";
+        }
+
+        RelayMemo memoOf(final String path) {
+            final HistogramMemo memo = this._memos.get(path);
+            if (null != memo) {
+                return memo;
+            }
+            if (this._memos.size() >= this._settings.maxRoutes()) {
+                return this._all;
+            }
+            return this._memos.computeIfAbsent(path, any -> new HistogramMemo(path, this._all));
+        }
+
+        void start() {
+            this._timeout = _timer.newTimeout(this::onInterval, this._settings.intervalSeconds(), TimeUnit.SECONDS);
+        }
+
+        void stop() {
+            this._stopped = true;
+            final Timeout timeout = this._timeout;
+            if (null != timeout) {
+                timeout.cancel();
+            }
+            for (final Meter meter : this._meters) {
+                _meterRegistry.remove(meter);
+            }
+            this._meters.clear();
+        }
+
+        private void onInterval(final Timeout timeout) {
+            if (this._stopped) {
+                return;
+            }
+            try {
+                roll();
+            } catch (final Exception e) {
+                LOG.warn("exception when roll latency histograms", e);
+            }
+            this._timeout = _timer.newTimeout(this::onInterval, this._settings.intervalSeconds(), TimeUnit.SECONDS);
+        }
+
+        void roll() {
+            for (final Latency latency : this._latencies) {
+                latency.roll();
+            }
+        }
+
+        Latency newLatency(final String path, final Enum<?> stepOrResult) {
+            final Latency latency = new Latency(this._settings);
+            final String category = stepOrResult.getClass().getSimpleName();
+            final String ttl = stepOrResult.name();
+            this._latencies.add(latency);
+            if (null != _register) {
+                _register.call("path=" + path + ",category=" + category + ",hdr=" + ttl,
+                        () -> this._stopped ? null : latency.stats());
+            }
+            for (int idx = 0; idx < STATS.length; idx++) {
+                final int stat = idx;
+                this._meters.add(Gauge.builder("jocean.xharbor.relay.latency", latency, l -> l.stat(stat))
+                    .tags("path", path, "category", category, "ttl", ttl, "stat", STATS[stat])
+                    .description("The last interval's ttl percentiles of jocean xharbor relay")
+                    .baseUnit(0 == stat ? null : "milliseconds")
+                    .register(_meterRegistry));
+            }
+            return latency;
+        }
+
+        private final Settings _settings;
+        private final HistogramMemo _all;
+        private final ConcurrentMap<String, HistogramMemo> _memos = new ConcurrentHashMap<>();
+        private final List<Latency> _latencies = new CopyOnWriteArrayList<>();
+        private final List<Meter> _meters = new CopyOnWriteArrayList<>();
+        private volatile Timeout _timeout = null;
+        private volatile boolean _stopped = false;
+
+        // record into path's latency & parent's ("all") latency
+        private final class HistogramMemo implements RelayMemo {
+            HistogramMemo(final String path, final HistogramMemo parent) {
+                this._path = path;
+                this._parent = parent;
+            }
+
+            @Override
+            public void beginBizStep(final STEP step) {
+            }
+
+            @Override
+            public void endBizStep(final STEP step, final long ttl) {
+                record(step.ordinal(), step, ttl);
+            }
+
+            @Override
+            public void incBizResult(final RESULT result, final long ttl) {
+                record(STEPS + result.ordinal(), result, ttl);
+            }
+
+            private void record(final int slot, final Enum<?> stepOrResult, final long ttl) {
+                latencyOf(slot, stepOrResult).record(ttl);
+                if (null != this._parent) {
+                    this._parent.record(slot, stepOrResult, ttl);
+                }
+            }
+
+            private Latency latencyOf(final int slot, final Enum<?> stepOrResult) {
+                final Latency latency = this._latencies.get(slot);
+                if (null != latency) {
+                    return latency;
+                }
+                synchronized (this) {
+                    if (null == this._latencies.get(slot)) {
+                        this._latencies.set(slot, newLatency(this._path, stepOrResult));
+                    }
+                    return this._latencies.get(slot);
+                }
+            }
+
+            private final String _path;
+            private final HistogramMemo _parent;
+            // steps then results, created when first recorded
+            private final AtomicReferenceArray<Latency> _latencies = new AtomicReferenceArray<>(SLOTS);
+        }
+    }
+
+    static final class Latency {
+        Latency(final Settings settings) {
+            this._highest = settings.highestMs();
+            this._recorder = new Recorder(settings.lowestMs(), settings.highestMs(), settings.significantDigits());
+        }
+
+        void record(final long ttl) {
+            this._recorder.recordValue(Math.max(0, Math.min(ttl, this._highest)));
+        }
+
+        // swap interval histogram and compute stats of it, called by timer thread only
+        void roll() {
+            this._interval = this._recorder.getIntervalHistogram(this._interval);
+            final long[] stats = new long[STATS.length];
+            stats[0] = this._interval.getTotalCount();
+            for (int idx = 0; idx < PERCENTILES.length; idx++) {
+                stats[idx + 1] = this._interval.getValueAtPercentile(PERCENTILES[idx]);
+            }
+            stats[STATS.length - 1] = this._interval.getMaxValue();
+            this._stats = stats;
+        }
+
+        double stat(final int idx) {
+            return this._stats[idx];
+        }
+
+        Map<String, Object> stats() {
+            final long[] stats = this._stats;
+            if (0 == stats[0]) {
+                return null;
+            }
+            final Map<String, Object> indicator = Maps.newLinkedHashMap();
+            for (int idx = 0; idx < STATS.length; idx++) {
+                indicator.put(STATS[idx], stats[idx]);
+            }
+            return indicator;
+        }
+
+        private final long _highest;
+        private final Recorder _recorder;
+        private Histogram _interval = null;
+        private volatile long[] _stats = new long[STATS.length];
+    }
+
+    Recording recording() {
+        return this._recording;
+    }
+
+    private final Action2<String, Func0<Map<String, Object>>> _register;
+    private final Timer _timer;
+    private volatile Recording _recording = null;
+
+    @Inject
+    MeterRegistry _meterRegistry = Metrics.globalRegistry;
+}
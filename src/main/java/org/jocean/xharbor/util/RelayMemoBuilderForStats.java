@@ -3,13 +3,16 @@
  */
 package org.jocean.xharbor.util;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.jocean.idiom.InterfaceUtils;
 import org.jocean.idiom.SimpleCache;
 import org.jocean.idiom.Tuple;
 import org.jocean.idiom.stats.TimeIntervalMemo;
-import org.jocean.j2se.stats.BizMemoSupportMBean;
 import org.jocean.j2se.stats.TIMemos;
 import org.jocean.j2se.stats.TIMemos.CounterableTIMemo;
 import org.jocean.j2se.stats.TIMemos.OnCounter;
@@ -33,72 +36,170 @@ public class RelayMemoBuilderForStats implements RelayMemo.Builder {
 
     public RelayMemoBuilderForStats(final Action2<String, Func0<Map<String, Object>>> register) throws Exception {
         this._register = register;
-        this._level0Memo = new RelayMemoImpl()
-        .fillTimeIntervalMemoWith(new Func1<Enum<?>, TimeIntervalMemo>() {
-            @Override
-            public TimeIntervalMemo call(final Enum<?> e) {
-                return _ttlMemos.get(Tuple.of(e));
-            }});
+        this._level0Memo = new RelayMemoImpl(null, null);
         this._register.call("all", this._level0Memo);
     }
-    
+
     @Override
     public RelayMemo build(final Target target, final RoutingInfo info) {
-        return InterfaceUtils.combineImpls(
-            RelayMemo.class, 
-            this._level0Memo,
-            this._bizMemos.get(Tuple.of(normalizeString(info.getPath())))
-//            ,
-//            this._bizMemos.get(Tuple.of(normalizeString(info.getPath()), info.getMethod())),
-//            this._bizMemos.get(Tuple.of(normalizeString(info.getPath()), info.getMethod(), 
-//                    normalizeString(target.serviceUri().toString())))
-            );
+        // path's memo record into level0 memo too, so no combined memo created per build,
+        // keyed by normalized path: paths normalized to same name share one registered memo
+        final String path = normalizeString(info.getPath());
+        final RelayMemoImpl memo = this._bizMemos.get(path);
+        return null != memo ? memo : this._bizMemos.computeIfAbsent(path, this::newBizMemo);
     }
 
     private static final String[] _OBJNAME_KEYS = new String[]{"path", "method", "dest"};
 
     private static final String normalizeString(final String input) {
-        return input.replaceAll(":", "-");
+        return input.replace(':', '-');
     }
-    
-    private static class RelayMemoImpl extends BizMemoSupportMBean<RelayMemoImpl, STEP, RESULT> 
-        implements RelayMemo, Func0<Map<String, Object>> {
-        
-        public RelayMemoImpl() {
-            super(STEP.class, RESULT.class);
+
+    private static final STEP[] _STEPS = STEP.values();
+    private static final RESULT[] _RESULTS = RESULT.values();
+
+    /**
+     * step (in progress) & result counters and result ttl sums kept in striped LongAdder cells,
+     * trades on all cores never contend on one cache line, cells are merged only when read (call())
+     */
+    private class RelayMemoImpl implements RelayMemo, Func0<Map<String, Object>> {
+
+        RelayMemoImpl(final Tuple tuple, final RelayMemoImpl parent) {
+            this._tuple = tuple;
+            this._parent = parent;
         }
-        
+
+        @Override
+        public void beginBizStep(final STEP step) {
+            this._stepCounters[step.ordinal()].increment();
+            if (null != this._parent) {
+                this._parent.beginBizStep(step);
+            }
+        }
+
+        @Override
+        public void endBizStep(final STEP step, final long ttl) {
+            this._stepCounters[step.ordinal()].decrement();
+            recordInterval(step.ordinal(), step, ttl);
+            if (null != this._parent) {
+                this._parent.endBizStep(step, ttl);
+            }
+        }
+
+        @Override
+        public void incBizResult(final RESULT result, final long ttl) {
+            this._resultCounters[result.ordinal()].increment();
+            this._resultTTLSums[result.ordinal()].add(ttl);
+            recordInterval(_STEPS.length + result.ordinal(), result, ttl);
+            if (null != this._parent) {
+                this._parent.incBizResult(result, ttl);
+            }
+        }
+
         @Override
         public Map<String, Object> call() {
-            if (isRecorded()) {
-                final Map<String, Object> counter = Maps.newHashMap();
-                for (STEP step : this._steps) {
-                    final int cnt = this._stepCounters[step.ordinal()].get();
-                    if (cnt > 0) {
-                        counter.put(step.name(), cnt);
-                    }
+            final Map<String, Object> counter = Maps.newHashMap();
+            for (final STEP step : _STEPS) {
+                final long cnt = this._stepCounters[step.ordinal()].sum();
+                if (cnt > 0) {
+                    counter.put(step.name(), cnt);
                 }
-                for (RESULT result : this._results) {
-                    final int cnt = this._resultCounters[result.ordinal()].get();
-                    if (cnt > 0) {
-                        counter.put(result.name(), cnt);
-                    }
+            }
+            for (final RESULT result : _RESULTS) {
+                final long cnt = this._resultCounters[result.ordinal()].sum();
+                if (cnt > 0) {
+                    counter.put(result.name(), cnt);
+                    counter.put(result.name() + "_TTL", this._resultTTLSums[result.ordinal()].sum());
                 }
-                
-                return counter;
-            } else {
-                return null;
             }
+            return counter.isEmpty() ? null : counter;
+        }
+
+        private void recordInterval(final int slot, final Enum<?> stepOrResult, final long ttl) {
+            TimeIntervalMemo memo = this._ttlMemoOf.get(slot);
+            if (null == memo) {
+                memo = _ttlMemos.get(null != this._tuple ? this._tuple.append(stepOrResult) : Tuple.of(stepOrResult));
+                this._ttlMemoOf.set(slot, memo);
+            }
+            if (null != memo) {
+                memo.recordInterval(ttl);
+            }
+        }
+
+        // null for level0 memo
+        private final Tuple _tuple;
+        private final RelayMemoImpl _parent;
+        private final LongAdder[] _stepCounters = adders(_STEPS.length);
+        private final LongAdder[] _resultCounters = adders(_RESULTS.length);
+        private final LongAdder[] _resultTTLSums = adders(_RESULTS.length);
+        // steps then results, resolved from _ttlMemos when first recorded
+        private final AtomicReferenceArray<TimeIntervalMemo> _ttlMemoOf =
+                new AtomicReferenceArray<>(_STEPS.length + _RESULTS.length);
+    }
+
+    private static LongAdder[] adders(final int size) {
+        final LongAdder[] adders = new LongAdder[size];
+        for (int idx = 0; idx < size; idx++) {
+            adders[idx] = new LongAdder();
         }
+        return adders;
     }
-    
+
+    private RelayMemoImpl newBizMemo(final String normalized) {
+        final RelayMemoImpl memo = new RelayMemoImpl(Tuple.of(normalized), this._level0Memo);
+        if ( null!=_register) {
+            _register.call(_OBJNAME_KEYS[0] + "=" + normalized, memo);
+        }
+        return memo;
+    }
+
     private final Action2<String, Func0<Map<String, Object>>> _register;
     
+    // level0 memo's ttl memos are recorded by every trade, so striped
     private Func1<Tuple, CounterableTIMemo> _ttlMemoMaker = new Func1<Tuple, CounterableTIMemo>() {
         @Override
         public CounterableTIMemo call(final Tuple tuple) {
-            return TIMemos.memo_10ms_30S();
+            return 1 == tuple.size() ? new StripedTIMemo() : TIMemos.memo_10ms_30S();
         }};
+
+    private static final int TTL_STRIPES = stripesOf(Runtime.getRuntime().availableProcessors());
+
+    private static int stripesOf(final int cpus) {
+        int stripes = 1;
+        while (stripes < cpus) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * ttl memo striped by recording thread, each stripe's bucket counters are merged by name when read
+     */
+    static class StripedTIMemo implements CounterableTIMemo {
+        StripedTIMemo() {
+            for (int idx = 0; idx < this._stripes.length; idx++) {
+                this._stripes[idx] = TIMemos.memo_10ms_30S();
+            }
+        }
+
+        @Override
+        public void recordInterval(final long interval) {
+            this._stripes[(int)Thread.currentThread().getId() & (this._stripes.length - 1)].recordInterval(interval);
+        }
+
+        @Override
+        public void call(final OnCounter onCounter) {
+            final Map<String, Integer> merged = new LinkedHashMap<>();
+            for (final CounterableTIMemo stripe : this._stripes) {
+                stripe.call((name, counter) -> merged.merge(name, null != counter ? counter : 0, Integer::sum));
+            }
+            for (final Map.Entry<String, Integer> entry : merged.entrySet()) {
+                onCounter.call(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private final CounterableTIMemo[] _stripes = new CounterableTIMemo[TTL_STRIPES];
+    }
         
     private Action2<Tuple, CounterableTIMemo> _ttlMemoRegister = new Action2<Tuple, CounterableTIMemo>() {
         @Override
@@ -147,40 +248,7 @@ public class RelayMemoBuilderForStats implements RelayMemo.Builder {
     private SimpleCache<Tuple, CounterableTIMemo> _ttlMemos  = 
             new SimpleCache<Tuple, CounterableTIMemo>(this._ttlMemoMaker, this._ttlMemoRegister);
     
-    private final Func1<Tuple, RelayMemoImpl> _bizMemoMaker = 
-            new Func1<Tuple, RelayMemoImpl>() {
-        @Override
-        public RelayMemoImpl call(final Tuple tuple) {
-            return new RelayMemoImpl()
-                .fillTimeIntervalMemoWith(new Func1<Enum<?>, TimeIntervalMemo>() {
-                    @Override
-                    public TimeIntervalMemo call(final Enum<?> e) {
-                        return _ttlMemos.get(tuple.append(e));
-                    }});
-        }};
+    private final ConcurrentMap<String, RelayMemoImpl> _bizMemos = new ConcurrentHashMap<>();
 
-    private final Action2<Tuple, RelayMemoImpl> _bizMemoRegister = 
-            new Action2<Tuple, RelayMemoImpl>() {
-        @Override
-        public void call(final Tuple tuple, final RelayMemoImpl newMemo) {
-            final StringBuilder sb = new StringBuilder();
-            Character splitter = null;
-            for ( int idx = 0; idx < tuple.size(); idx++) {
-                if (null != splitter) {
-                    sb.append(splitter);
-                }
-                sb.append(_OBJNAME_KEYS[idx]);
-                sb.append("=");
-                sb.append((String)tuple.getAt(idx));
-                splitter = ',';
-            }
-            if ( null!=_register) {
-                _register.call(sb.toString(), newMemo);
-            }
-        }};
-        
-    private final SimpleCache<Tuple, RelayMemoImpl> _bizMemos = 
-            new SimpleCache<Tuple, RelayMemoImpl>(this._bizMemoMaker, this._bizMemoRegister);
-    
     private final RelayMemoImpl _level0Memo;
 }
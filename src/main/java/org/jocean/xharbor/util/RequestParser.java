@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jocean.xharbor.api.ParsedRequest;
+import org.jocean.xharbor.api.TradeReactor.ReactContext;
+
+import io.netty.handler.codec.http.HttpRequest;
+
+/**
+ * hand-written scanner for request uri, same result as QueryStringDecoder.path()
+ * but without decoder or regex allocation
+ * @author isdom
+ *
+ */
+public class RequestParser {
+
+    private RequestParser() {
+        throw new IllegalStateException("No instances!");
+    }
+
+    public static ParsedRequest parse(final HttpRequest request) {
+        return new ParsedRequestImpl(request.method().name(), request.uri(),
+                firstIp(request.headers().get("x-forwarded-for")));
+    }
+
+    /**
+     * reuse ctx's parsed request when request's uri & method not changed (eg: by RewriteRequest)
+     */
+    public static ParsedRequest parsedOf(final ReactContext ctx, final HttpRequest request) {
+        final ParsedRequest parsed = null != ctx ? ctx.request() : null;
+        if (null == request) {
+            return parsed;
+        }
+        if (null != parsed
+            && parsed.uri().equals(request.uri())
+            && parsed.getMethod().equals(request.method().name())) {
+            return parsed;
+        }
+        return parse(request);
+    }
+
+    public static String firstIp(final String peerips) {
+        if (null == peerips) {
+            return null;
+        }
+        final int idx = peerips.indexOf(',');
+        return idx >= 0 ? peerips.substring(0, idx) : peerips;
+    }
+
+    private static int pathEndOf(final String uri) {
+        for (int idx = 0; idx < uri.length(); idx++) {
+            final char c = uri.charAt(idx);
+            if (c == '?' || c == '#') {
+                return idx;
+            }
+        }
+        return uri.length();
+    }
+
+    static String decodePath(final String uri, final int end) {
+        final int first = uri.indexOf('%');
+        if (first < 0 || first >= end) {
+            return end == uri.length() ? uri : uri.substring(0, end);
+        }
+
+        final StringBuilder sb = new StringBuilder(end);
+        sb.append(uri, 0, first);
+        byte[] bytes = null;
+        int idx = first;
+        while (idx < end) {
+            final char c = uri.charAt(idx);
+            if (c == '%' && isEscape(uri, idx, end)) {
+                // decode a run of %XX as UTF-8 bytes
+                if (null == bytes) {
+                    bytes = new byte[(end - idx) / 3];
+                }
+                int len = 0;
+                while (idx < end && uri.charAt(idx) == '%' && isEscape(uri, idx, end)) {
+                    bytes[len++] = (byte) ((hexOf(uri.charAt(idx + 1)) << 4) + hexOf(uri.charAt(idx + 2)));
+                    idx += 3;
+                }
+                sb.append(new String(bytes, 0, len, StandardCharsets.UTF_8));
+            } else {
+                // keep '+' as '+' for path, and keep invalid escape as is
+                sb.append(c);
+                idx++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isEscape(final String uri, final int idx, final int end) {
+        return idx + 2 < end && hexOf(uri.charAt(idx + 1)) >= 0 && hexOf(uri.charAt(idx + 2)) >= 0;
+    }
+
+    private static int hexOf(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else {
+            return -1;
+        }
+    }
+
+    private static class ParsedRequestImpl implements ParsedRequest {
+
+        ParsedRequestImpl(final String method, final String uri, final String peerip) {
+            final int end = pathEndOf(uri);
+            this._method = method;
+            this._uri = uri;
+            this._peerip = peerip;
+            this._path = decodePath(uri, end);
+            final int matrix = this._path.indexOf(';');
+            this._pathWithoutMatrix = matrix > -1 ? this._path.substring(0, matrix) : this._path;
+            if (end < uri.length() && uri.charAt(end) == '?') {
+                final int fragment = uri.indexOf('#', end + 1);
+                this._query = uri.substring(end + 1, fragment > -1 ? fragment : uri.length());
+            } else {
+                this._query = "";
+            }
+        }
+
+        @Override
+        public String getMethod() {
+            return this._method;
+        }
+
+        @Override
+        public String getPath() {
+            return this._pathWithoutMatrix;
+        }
+
+        @Override
+        public String uri() {
+            return this._uri;
+        }
+
+        @Override
+        public String path() {
+            return this._path;
+        }
+
+        @Override
+        public String query() {
+            return this._query;
+        }
+
+        @Override
+        public String peerip() {
+            return this._peerip;
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder().append("ParsedRequest [method=").append(_method)
+                    .append(", path=").append(_path)
+                    .append(", query=").append(_query)
+                    .append(", peerip=").append(_peerip)
+                    .append("]").toString();
+        }
+
+        private final String _method;
+        private final String _uri;
+        private final String _path;
+        private final String _pathWithoutMatrix;
+        private final String _query;
+        private final String _peerip;
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+/**
+ * retry budget: retries within rolling window (10 seconds) are capped to percent of requests within it,
+ * plus min retries per second, so retries can't multiply load when upstream partial outage.
+ * also used as hedge budget of ForwardTrade.
+ * @author isdom
+ *
+ */
+public class RetryBudget {
+
+    private static final int REQUEST = 0;
+    private static final int RETRY = 1;
+
+    private static final long WINDOW_MS = 10 * 1000L;
+
+    public RetryBudget(final int percent, final int minPerSecond) {
+        this._percent = percent;
+        this._minPerSecond = minPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "[percent=" + this._percent + ",minPerSecond=" + this._minPerSecond + ",window(requests/retries)="
+                + this._window.sum(REQUEST) + "/" + this._window.sum(RETRY) + "]";
+    }
+
+    public void onRequest() {
+        this._window.increment(REQUEST);
+    }
+
+    /**
+     * @return true and record retry if budget left, else false
+     */
+    public boolean tryRetry() {
+        final long budget = this._minPerSecond * WINDOW_MS / 1000L + this._window.sum(REQUEST) * this._percent / 100;
+        if (this._window.sum(RETRY) < budget) {
+            this._window.increment(RETRY);
+            return true;
+        }
+        return false;
+    }
+
+    private final int _percent;
+    private final int _minPerSecond;
+    private final RollingWindow _window = new RollingWindow(WINDOW_MS, 10, 2);
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * event counters over sliding time window, window is split into buckets of striped counters (LongAdder),
+ * so increment from many threads is cheap; expired bucket is reset when it's reused.
+ * counts are approximate when increment race with bucket reset.
+ * @author isdom
+ *
+ */
+public class RollingWindow {
+
+    public RollingWindow(final long windowMs, final int bucketCount, final int eventCount) {
+        this._bucketMs = Math.max(1, windowMs / bucketCount);
+        this._buckets = new Bucket[bucketCount];
+        for (int idx = 0; idx < bucketCount; idx++) {
+            this._buckets[idx] = new Bucket(eventCount);
+        }
+    }
+
+    public void increment(final int event) {
+        current(System.currentTimeMillis())._counters[event].increment();
+    }
+
+    /**
+     * @return count of event within window
+     */
+    public long sum(final int event) {
+        final long epoch = System.currentTimeMillis() / this._bucketMs;
+        long sum = 0;
+        for (final Bucket bucket : this._buckets) {
+            if (epoch - bucket._epoch.get() < this._buckets.length) {
+                sum += bucket._counters[event].sum();
+            }
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (final Bucket bucket : this._buckets) {
+            bucket._epoch.set(-1);
+            for (final LongAdder counter : bucket._counters) {
+                counter.reset();
+            }
+        }
+    }
+
+    private Bucket current(final long now) {
+        final long epoch = now / this._bucketMs;
+        final Bucket bucket = this._buckets[(int)(epoch % this._buckets.length)];
+        final long old = bucket._epoch.get();
+        if (old != epoch && bucket._epoch.compareAndSet(old, epoch)) {
+            // bucket reused for new epoch
+            for (final LongAdder counter : bucket._counters) {
+                counter.reset();
+            }
+        }
+        return bucket;
+    }
+
+    private static final class Bucket {
+        Bucket(final int eventCount) {
+            this._counters = new LongAdder[eventCount];
+            for (int idx = 0; idx < eventCount; idx++) {
+                this._counters[idx] = new LongAdder();
+            }
+        }
+
+        final AtomicLong _epoch = new AtomicLong(-1);
+        final LongAdder[] _counters;
+    }
+
+    private final long _bucketMs;
+    private final Bucket[] _buckets;
+}
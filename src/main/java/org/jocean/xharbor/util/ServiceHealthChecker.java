@@ -0,0 +1,212 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.inject.Inject;
+
+import org.jocean.http.Feature;
+import org.jocean.http.client.HttpClient;
+import org.jocean.idiom.BeanFinder;
+import org.jocean.idiom.ExceptionUtils;
+import org.jocean.xharbor.api.Target;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+/**
+ * active health check for upstream services: probe each watched service uri once per interval (deduplicated by uri),
+ * mark service down in ServiceMemo after unhealthy threshold consecutive failed probes,
+ * and keep it down (not expired as outlier ejection) until healthy threshold consecutive succeed probes.
+ * disabled until enable() with settings, see healthcheck.xml
+ * @author isdom
+ *
+ */
+public class ServiceHealthChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceHealthChecker.class);
+
+    public interface Settings {
+        public String path();
+        public long intervalMs();
+        public long timeoutMs();
+        public int healthyThreshold();
+        public int unhealthyThreshold();
+    }
+
+    public ServiceHealthChecker(final Timer timer, final ServiceMemoImpl serviceMemo) {
+        this._timer = timer;
+        this._serviceMemo = serviceMemo;
+    }
+
+    /**
+     * @return action to disable health check
+     */
+    public Action0 enable(final Settings settings) {
+        this._settingsRef.set(settings);
+        LOG.info("enable health check with path {}, interval {} ms", settings.path(), settings.intervalMs());
+        schedule(settings);
+        return () -> {
+            if (this._settingsRef.compareAndSet(settings, null)) {
+                LOG.info("disable health check with path {}", settings.path());
+                for (final Probe probe : this._probes.values()) {
+                    probe.reset();
+                }
+            }
+        };
+    }
+
+    /**
+     * watch target's service uri, watch same uri many times only probe once per interval
+     */
+    public void watch(final Target target) {
+        this._probes.computeIfAbsent(target.serviceUri(), uri -> new Probe(uri, target.features()))._refs.incrementAndGet();
+    }
+
+    public void unwatch(final URI uri) {
+        this._probes.computeIfPresent(uri, (key, probe) -> {
+            if (probe._refs.decrementAndGet() <= 0) {
+                probe.reset();
+                return null;
+            } else {
+                return probe;
+            }
+        });
+    }
+
+    private void schedule(final Settings settings) {
+        this._timer.newTimeout(timeout -> probeAll(settings, timeout), settings.intervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    private void probeAll(final Settings settings, final Timeout timeout) {
+        if (this._settingsRef.get() != settings) {
+            // disabled or enabled with other settings
+            return;
+        }
+        for (final Probe probe : this._probes.values()) {
+            probe.probe(settings);
+        }
+        schedule(settings);
+    }
+
+    class Probe {
+        Probe(final URI uri, final Func0<Feature[]> features) {
+            this._uri = uri;
+            this._features = features;
+        }
+
+        void probe(final Settings settings) {
+            // skip when last probe not completed
+            if (!this._probing.compareAndSet(false, true)) {
+                return;
+            }
+            _finder.find(HttpClient.class).flatMap(client -> client.initiator()
+                    .remoteAddress(new InetSocketAddress(this._uri.getHost(), this._uri.getPort()))
+                    .feature(this._features.call())
+                    .build())
+                .flatMap(initiator -> initiator.defineInteraction(Observable.just(buildRequest(settings), LastHttpContent.EMPTY_LAST_CONTENT))
+                        .doAfterTerminate(() -> initiator.close())
+                        .doOnUnsubscribe(() -> initiator.close()))
+                .first()
+                .map(fullresp -> fullresp.message().status().code())
+                .timeout(settings.timeoutMs(), TimeUnit.MILLISECONDS)
+                .doAfterTerminate(() -> this._probing.set(false))
+                .subscribe(code -> {
+                        if (isChecking(settings)) {
+                            onResult(settings, code >= 200 && code < 400, "status " + code);
+                        }
+                    }, e -> {
+                        if (isChecking(settings)) {
+                            onResult(settings, false, ExceptionUtils.exception2detail(e));
+                        }
+                    });
+        }
+
+        // result after health check disabled or service unwatched is dropped, not mark down again
+        private boolean isChecking(final Settings settings) {
+            return _settingsRef.get() == settings && _probes.get(this._uri) == this;
+        }
+
+        HttpRequest buildRequest(final Settings settings) {
+            final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, settings.path());
+            request.headers().set(HttpHeaderNames.HOST, hostOf(this._uri));
+            request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+            return request;
+        }
+
+        void onResult(final Settings settings, final boolean healthy, final String detail) {
+            if (healthy) {
+                this._failures.set(0);
+                if (this._successes.incrementAndGet() >= settings.healthyThreshold() && this._down.compareAndSet(true, false)) {
+                    LOG.info("HEALTH_CHECK: service {} is healthy now", this._uri);
+                    _serviceMemo.markHealthDown(this._uri, false);
+                    // restore passive outlier ejection too
+                    _serviceMemo.markServiceDownStatus(this._uri, false);
+                }
+            } else {
+                this._successes.set(0);
+                // mark down only when up -> down
+                if (this._failures.incrementAndGet() >= settings.unhealthyThreshold() && this._down.compareAndSet(false, true)) {
+                    LOG.warn("HEALTH_CHECK: service {} is unhealthy now, detail: {}", this._uri, detail);
+                    _serviceMemo.markHealthDown(this._uri, true);
+                }
+            }
+            _serviceMemo.updateHealthStatus(this._uri, (this._down.get() ? "DOWN" : "UP")
+                    + "(successes=" + this._successes.get() + ",failures=" + this._failures.get() + ",last=" + detail + ")");
+        }
+
+        // health check disabled or service unwatched, forget checked status
+        void reset() {
+            if (this._down.compareAndSet(true, false)) {
+                _serviceMemo.markHealthDown(this._uri, false);
+            }
+            this._successes.set(0);
+            this._failures.set(0);
+            _serviceMemo.updateHealthStatus(this._uri, null);
+        }
+
+        private final URI _uri;
+        private final Func0<Feature[]> _features;
+        private final AtomicInteger _refs = new AtomicInteger(0);
+        private final AtomicBoolean _probing = new AtomicBoolean(false);
+        private final AtomicBoolean _down = new AtomicBoolean(false);
+        private final AtomicInteger _successes = new AtomicInteger(0);
+        private final AtomicInteger _failures = new AtomicInteger(0);
+    }
+
+    // host with port when port is not scheme's default
+    static String hostOf(final URI uri) {
+        final int port = uri.getPort();
+        final int defaultPort = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return -1 == port || defaultPort == port ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    @Inject
+    private BeanFinder _finder;
+
+    private final Timer _timer;
+    private final ServiceMemoImpl _serviceMemo;
+    private final AtomicReference<Settings> _settingsRef = new AtomicReference<>(null);
+    private final ConcurrentMap<URI, Probe> _probes = new ConcurrentHashMap<>();
+}
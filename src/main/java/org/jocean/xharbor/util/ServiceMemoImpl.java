@@ -7,26 +7,48 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.jocean.idiom.SimpleCache;
 import org.jocean.xharbor.api.ServiceMemo;
 
+import rx.functions.Action0;
 import rx.functions.Func1;
 
 /**
  * @author isdom
  *
  */
-public class ServiceMemoImpl implements ServiceMemo {
+public class ServiceMemoImpl implements ServiceMemo, OutlierDetector.Settings {
     @Override
     public boolean isServiceDown(final URI uri) {
-        return this._statusCache.get(uri).get();
+        return this._healthDowns.contains(uri) || !this._statusCache.get(uri).isAvailable();
     }
 
     @Override
     public void markServiceDownStatus(final URI uri, final boolean isDown) {
-        this._statusCache.get(uri).set(isDown);
+        if (isDown) {
+            this._statusCache.get(uri).eject();
+        } else {
+            this._statusCache.get(uri).restore();
+        }
+    }
+
+    @Override
+    public Action0 beginRequest(final URI uri) {
+        return this._statusCache.get(uri).beginRequest();
+    }
+
+    @Override
+    public void markServiceSuccess(final URI uri) {
+        this._statusCache.get(uri).onSuccess();
+    }
+
+    @Override
+    public void markServiceFailure(final URI uri) {
+        this._statusCache.get(uri).onFailure();
     }
 
     public void resetAll() {
@@ -37,20 +59,94 @@ public class ServiceMemoImpl implements ServiceMemo {
         return new ArrayList<String>() {
             private static final long serialVersionUID = 1L;
         {
-            final Iterator<Map.Entry<URI, AtomicBoolean>> itr = _statusCache.snapshot().entrySet().iterator();
+            final Iterator<Map.Entry<URI, OutlierDetector>> itr = _statusCache.snapshot().entrySet().iterator();
             while (itr.hasNext()) {
-                final Map.Entry<URI, AtomicBoolean> entry = itr.next();
-                this.add(entry.getKey() + ":(" + entry.getValue() + ")");
+                final Map.Entry<URI, OutlierDetector> entry = itr.next();
+                final String health = _healthStatus.get(entry.getKey());
+                this.add(entry.getKey() + ":(" + entry.getValue() + ")" + (null != health ? ",health:" + health : ""));
             }
         }}.toArray(new String[0]);
     }
-    
-    private final SimpleCache<URI, AtomicBoolean> _statusCache = 
-        new SimpleCache<URI, AtomicBoolean>(
-            new Func1<URI, AtomicBoolean>() {
+
+    // down by active health check until it's healthy again, not expired as outlier ejection
+    void markHealthDown(final URI uri, final boolean isDown) {
+        if (isDown) {
+            this._healthDowns.add(uri);
+        } else {
+            this._healthDowns.remove(uri);
+        }
+    }
+
+    // status of active health check, null means not checked
+    void updateHealthStatus(final URI uri, final String status) {
+        if (null != status) {
+            this._healthStatus.put(uri, status);
+        } else {
+            this._healthStatus.remove(uri);
+        }
+    }
+
+    // service failure means communication failure, eg: connect refused, so no error rate check
+    @Override
+    public int consecutiveFailures() {
+        return this._consecutiveFailures;
+    }
+
+    @Override
+    public int errorPercentage() {
+        return 0;
+    }
+
+    @Override
+    public int minRequests() {
+        return 0;
+    }
+
+    @Override
+    public long baseEjectionMs() {
+        return this._baseEjectionMs;
+    }
+
+    @Override
+    public long maxEjectionMs() {
+        return this._maxEjectionMs;
+    }
+
+    @Override
+    public int maxProbes() {
+        return this._maxProbes;
+    }
+
+    public void setConsecutiveFailures(final int consecutiveFailures) {
+        this._consecutiveFailures = consecutiveFailures;
+    }
+
+    public void setBaseEjectionMs(final long baseEjectionMs) {
+        this._baseEjectionMs = baseEjectionMs;
+    }
+
+    public void setMaxEjectionMs(final long maxEjectionMs) {
+        this._maxEjectionMs = maxEjectionMs;
+    }
+
+    public void setMaxProbes(final int maxProbes) {
+        this._maxProbes = maxProbes;
+    }
+
+    private volatile int _consecutiveFailures = 3;
+    private volatile long _baseEjectionMs = 5 * 1000L;
+    private volatile long _maxEjectionMs = 5 * 60 * 1000L;
+    private volatile int _maxProbes = 1;
+
+    private final ConcurrentMap<URI, String> _healthStatus = new ConcurrentHashMap<>();
+    private final Set<URI> _healthDowns = ConcurrentHashMap.newKeySet();
+
+    private final SimpleCache<URI, OutlierDetector> _statusCache = 
+        new SimpleCache<URI, OutlierDetector>(
+            new Func1<URI, OutlierDetector>() {
                 @Override
-                public AtomicBoolean call(final URI input) {
-                    return new AtomicBoolean(false);
+                public OutlierDetector call(final URI input) {
+                    return new OutlierDetector("service " + input, ServiceMemoImpl.this);
                 }
             });
 }
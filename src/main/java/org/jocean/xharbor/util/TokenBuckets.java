@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token buckets keyed by string (eg: client ip, api key or path), each key refill rate tokens per second up to burst.
+ * keys are spread to stripes, each stripe is LRU map with max keys / stripes entries guarded by its own lock,
+ * so memory is bounded and no global lock. evicted (least recently used) key start with full bucket again,
+ * same as bucket idle for burst / rate seconds.
+ * @author isdom
+ *
+ */
+public class TokenBuckets {
+
+    private static final int STRIPES = 64;
+
+    public TokenBuckets(final double ratePerSecond, final int burst, final int maxKeys) {
+        this._tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this._burst = Math.max(1, burst);
+        final int perStripe = Math.max(1, maxKeys / STRIPES);
+        this._stripes = new Stripe[STRIPES];
+        for (int idx = 0; idx < STRIPES; idx++) {
+            this._stripes[idx] = new Stripe(perStripe);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[rate=" + (this._tokensPerNano * TimeUnit.SECONDS.toNanos(1)) + "/s,burst=" + this._burst
+                + ",keys=" + size() + "]";
+    }
+
+    /**
+     * @return true and take one token if key's bucket has token, else false
+     */
+    public boolean tryAcquire(final String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    boolean tryAcquire(final String key, final long now) {
+        final Stripe stripe = this._stripes[stripeOf(key)];
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (null == bucket) {
+                bucket = new Bucket(this._burst, now);
+                stripe.put(key, bucket);
+            } else {
+                bucket.refill(now, this._tokensPerNano, this._burst);
+            }
+            if (bucket._tokens >= 1.0d) {
+                bucket._tokens -= 1.0d;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return seconds until next token available for rejected key
+     */
+    public long retryAfterSeconds() {
+        return Math.max(1, (long)Math.ceil(1.0d / (this._tokensPerNano * TimeUnit.SECONDS.toNanos(1))));
+    }
+
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : this._stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    private static int stripeOf(final String key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private static final class Bucket {
+        Bucket(final double tokens, final long now) {
+            this._tokens = tokens;
+            this._refillAt = now;
+        }
+
+        void refill(final long now, final double tokensPerNano, final int burst) {
+            if (now > this._refillAt) {
+                this._tokens = Math.min(burst, this._tokens + (now - this._refillAt) * tokensPerNano);
+                this._refillAt = now;
+            }
+        }
+
+        private double _tokens;
+        private long _refillAt;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Stripe extends LinkedHashMap<String, Bucket> {
+        Stripe(final int maxKeys) {
+            super(16, 0.75f, true);
+            this._maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Bucket> eldest) {
+            return size() > this._maxKeys;
+        }
+
+        private final int _maxKeys;
+    }
+
+    private final double _tokensPerNano;
+    private final int _burst;
+    private final Stripe[] _stripes;
+}
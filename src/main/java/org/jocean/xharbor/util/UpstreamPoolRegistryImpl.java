@@ -0,0 +1,417 @@
+/**
+ *
+ */
+package org.jocean.xharbor.util;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.http.TransportException;
+import org.jocean.http.client.HttpClient.HttpInitiator;
+import org.jocean.idiom.ExceptionUtils;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Func0;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * per upstream URI pool layer over HttpClient: HttpClient recycle keep-alive channel itself,
+ * here we limit in-use initiators, trim idle channels by closing them, and count reuse.
+ * channel's STATE is owned by pool: release() mark it IDLE before recycle it to HttpClient,
+ * acquire take it back by CAS IDLE -> IN_USE, idle trimming close it only by CAS IDLE -> CLOSING,
+ * so channel acquired again is never closed as idle.
+ * @author isdom
+ *
+ */
+public class UpstreamPoolRegistryImpl implements UpstreamPool.Registry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UpstreamPoolRegistryImpl.class);
+
+    // pool owned state of channel, channel with state when acquired is reused (hit)
+    private static final AttributeKey<Integer> STATE = AttributeKey.valueOf("xharbor.upstream.state");
+    private static final Integer IN_USE = 0;
+    private static final Integer IDLE = 1;
+    private static final Integer CLOSING = 2;
+
+    // acquired channel is closing as idle, connect again at most these times
+    private static final int MAX_CLOSING_RETRIES = 3;
+
+    public UpstreamPoolRegistryImpl(final Timer timer) {
+        this._timer = timer;
+    }
+
+    @Override
+    public UpstreamPool retain(final URI uri, final UpstreamPool.Settings settings) {
+        final PoolImpl pool = this._pools.computeIfAbsent(uri, key -> new PoolImpl(key));
+        pool._settings = settings;
+        pool._refs.incrementAndGet();
+        return pool;
+    }
+
+    @Override
+    public void release(final URI uri) {
+        this._pools.computeIfPresent(uri, (key, pool) -> {
+            if (pool._refs.decrementAndGet() <= 0) {
+                LOG.info("upstream pool {} has no reference, remove it", pool);
+                pool.closeIdles();
+                return null;
+            } else {
+                return pool;
+            }
+        });
+    }
+
+    public String[] getPools() {
+        final List<String> pools = new ArrayList<>();
+        for (final PoolImpl pool : this._pools.values()) {
+            pools.add(pool.toString());
+        }
+        return pools.toArray(new String[0]);
+    }
+
+    private class PoolImpl implements UpstreamPool {
+
+        PoolImpl(final URI uri) {
+            this._uri = uri;
+        }
+
+        @Override
+        public Observable<? extends HttpInitiator> acquire(final Func0<Observable<? extends HttpInitiator>> connector) {
+            return Observable.unsafeCreate(subscriber -> {
+                if (tryTakeSlot()) {
+                    connect(connector, subscriber);
+                } else {
+                    waitSlot(connector, subscriber);
+                }
+            });
+        }
+
+        @Override
+        public void release(final HttpInitiator initiator) {
+            recycle(initiator);
+            releaseSlot();
+        }
+
+        @Override
+        public void discard(final HttpInitiator initiator) {
+            final Channel channel = channelOf(initiator);
+            if (null != channel) {
+                // never acquired again even if HttpClient recycle it
+                channel.attr(STATE).set(CLOSING);
+                channel.close();
+            }
+            initiator.close();
+            releaseSlot();
+        }
+
+        // mark channel idle (owned by pool) first, then recycle it to HttpClient
+        private void recycle(final HttpInitiator initiator) {
+            final Channel channel = channelOf(initiator);
+            if (null != channel && channel.isActive()) {
+                addIdle(channel);
+            }
+            initiator.close();
+        }
+
+        @Override
+        public void warmup(final Func0<Observable<? extends HttpInitiator>> connector) {
+            final int count = this._settings.warmupCount();
+            if (count > 0 && this._warmuped.compareAndSet(false, true)) {
+                LOG.info("warm up {} connections for upstream {}", count, this._uri);
+                for (int idx = 0; idx < count; idx++) {
+                    // released initiator's channel is retained as idle here and recycled by HttpClient
+                    acquire(connector).subscribe(this::release, e -> LOG.warn("warm up connection for upstream {} failed, detail: {}", this._uri,
+                            ExceptionUtils.exception2detail(e)));
+                }
+            }
+        }
+
+        private boolean tryTakeSlot() {
+            final int maxTotal = this._settings.maxTotal();
+            for (;;) {
+                final int inuse = this._inuse.get();
+                if (maxTotal >= 0 && inuse >= maxTotal) {
+                    return false;
+                }
+                if (this._inuse.compareAndSet(inuse, inuse + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void releaseSlot() {
+            // hand over slot to waiter directly
+            Waiter waiter;
+            while (null != (waiter = this._waiters.poll())) {
+                this._waiting.decrementAndGet();
+                if (waiter.assign()) {
+                    return;
+                }
+            }
+            this._inuse.decrementAndGet();
+        }
+
+        private void waitSlot(final Func0<Observable<? extends HttpInitiator>> connector,
+                final Subscriber<? super HttpInitiator> subscriber) {
+            this._waits.incrementAndGet();
+            final Waiter waiter = new Waiter(connector, subscriber);
+            this._waiting.incrementAndGet();
+            this._waiters.add(waiter);
+            subscriber.add(Subscriptions.create(() -> {
+                if (waiter.cancel()) {
+                    removeWaiter(waiter);
+                }
+            }));
+
+            // slot maybe released before waiter queued
+            if (tryTakeSlot()) {
+                if (waiter.assign()) {
+                    removeWaiter(waiter);
+                } else {
+                    releaseSlot();
+                }
+                return;
+            }
+            final long maxWaitMs = this._settings.maxWaitMs();
+            if (maxWaitMs > 0) {
+                _timer.newTimeout(timeout -> {
+                    if (waiter.cancel()) {
+                        removeWaiter(waiter);
+                        this._waitTimeouts.incrementAndGet();
+                        subscriber.onError(new TransportException("wait upstream " + this._uri + " pool timeout("
+                                + maxWaitMs + "ms)"));
+                    }
+                }, maxWaitMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void removeWaiter(final Waiter waiter) {
+            if (this._waiters.remove(waiter)) {
+                this._waiting.decrementAndGet();
+            }
+        }
+
+        private class Waiter {
+            Waiter(final Func0<Observable<? extends HttpInitiator>> connector,
+                    final Subscriber<? super HttpInitiator> subscriber) {
+                this._connector = connector;
+                this._subscriber = subscriber;
+            }
+
+            // assign slot to this waiter, return false if waiter has been canceled or assigned
+            boolean assign() {
+                if (this._done.compareAndSet(false, true)) {
+                    _waitMs.addAndGet(System.currentTimeMillis() - this._begin);
+                    connect(this._connector, this._subscriber);
+                    return true;
+                }
+                return false;
+            }
+
+            boolean cancel() {
+                return this._done.compareAndSet(false, true);
+            }
+
+            private final long _begin = System.currentTimeMillis();
+            private final AtomicBoolean _done = new AtomicBoolean(false);
+            private final Func0<Observable<? extends HttpInitiator>> _connector;
+            private final Subscriber<? super HttpInitiator> _subscriber;
+        }
+
+        private void connect(final Func0<Observable<? extends HttpInitiator>> connector,
+                final Subscriber<? super HttpInitiator> subscriber) {
+            final AtomicBoolean delivered = new AtomicBoolean(false);
+            subscriber.add(Subscriptions.create(() -> {
+                if (delivered.compareAndSet(false, true)) {
+                    // unsubscribed before got initiator
+                    releaseSlot();
+                }
+            }));
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            connect(connector, subscriber, delivered, MAX_CLOSING_RETRIES);
+        }
+
+        private void connect(final Func0<Observable<? extends HttpInitiator>> connector,
+                final Subscriber<? super HttpInitiator> subscriber,
+                final AtomicBoolean delivered,
+                final int retries) {
+            connector.call().subscribe(initiator -> {
+                if (!onAcquired(initiator)) {
+                    // channel is closing as idle, drop it and connect again
+                    initiator.close();
+                    if (retries > 0 && !subscriber.isUnsubscribed()) {
+                        connect(connector, subscriber, delivered, retries - 1);
+                    } else if (delivered.compareAndSet(false, true)) {
+                        releaseSlot();
+                        subscriber.onError(new TransportException("upstream " + this._uri + "'s channel is closing"));
+                    }
+                    return;
+                }
+                if (delivered.compareAndSet(false, true)) {
+                    subscriber.onNext(initiator);
+                    subscriber.onCompleted();
+                } else {
+                    // unsubscribed and slot released, channel still retained as idle
+                    recycle(initiator);
+                }
+            }, e -> {
+                if (delivered.compareAndSet(false, true)) {
+                    releaseSlot();
+                }
+                subscriber.onError(e);
+            });
+        }
+
+        /**
+         * @return false if channel is closing as idle
+         */
+        private boolean onAcquired(final HttpInitiator initiator) {
+            final Channel channel = channelOf(initiator);
+            if (null == channel) {
+                return true;
+            }
+            final Attribute<Integer> state = channel.attr(STATE);
+            for (;;) {
+                final Integer current = state.get();
+                if (null == current) {
+                    if (null == state.setIfAbsent(IN_USE)) {
+                        this._misses.incrementAndGet();
+                        return true;
+                    }
+                } else if (CLOSING.equals(current)) {
+                    return false;
+                } else if (state.compareAndSet(current, IN_USE)) {
+                    if (IDLE.equals(current)) {
+                        final IdleEntry idle = this._idles.remove(channel);
+                        if (null != idle) {
+                            idle.cancel();
+                        }
+                    }
+                    this._hits.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        private void addIdle(final Channel channel) {
+            final Attribute<Integer> state = channel.attr(STATE);
+            final int maxIdle = this._settings.maxIdle();
+            if (maxIdle >= 0 && this._idles.size() >= maxIdle) {
+                state.set(CLOSING);
+                this._idleCloses.incrementAndGet();
+                channel.close();
+                return;
+            }
+            state.set(IDLE);
+            final IdleEntry idle = new IdleEntry();
+            final IdleEntry old = this._idles.put(channel, idle);
+            if (null != old) {
+                old.cancel();
+            } else {
+                channel.closeFuture().addListener(future -> {
+                    final IdleEntry entry = this._idles.remove(channel);
+                    if (null != entry) {
+                        entry.cancel();
+                    }
+                });
+            }
+            final long idleTimeoutMs = this._settings.idleTimeoutMs();
+            if (idleTimeoutMs > 0) {
+                idle._timeout = _timer.newTimeout(t -> {
+                    if (this._idles.remove(channel, idle) && state.compareAndSet(IDLE, CLOSING)) {
+                        LOG.debug("upstream {}'s channel {} idle exceed {}ms, close it", this._uri, channel, idleTimeoutMs);
+                        this._idleCloses.incrementAndGet();
+                        channel.close();
+                    }
+                }, idleTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        void closeIdles() {
+            for (final Map.Entry<Channel, IdleEntry> entry : this._idles.entrySet()) {
+                if (this._idles.remove(entry.getKey(), entry.getValue())) {
+                    entry.getValue().cancel();
+                    if (entry.getKey().attr(STATE).compareAndSet(IDLE, CLOSING)) {
+                        entry.getKey().close();
+                    }
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            final long waits = this._waits.get();
+            final StringBuilder sb = new StringBuilder();
+            sb.append(this._uri)
+                .append(":refs=").append(this._refs.get())
+                .append(",inuse=").append(this._inuse.get())
+                .append(",idle=").append(this._idles.size())
+                .append(",waiting=").append(this._waiting.get())
+                .append(",hits=").append(this._hits.get())
+                .append(",misses=").append(this._misses.get())
+                .append(",waits=").append(waits)
+                .append(",avgWaitMs=").append(waits > 0 ? this._waitMs.get() / waits : 0)
+                .append(",waitTimeouts=").append(this._waitTimeouts.get())
+                .append(",idleCloses=").append(this._idleCloses.get())
+                .append(",maxTotal=").append(this._settings.maxTotal())
+                .append(",maxIdle=").append(this._settings.maxIdle())
+                .append(",idleTimeoutMs=").append(this._settings.idleTimeoutMs());
+            return sb.toString();
+        }
+
+        private final URI _uri;
+        private volatile UpstreamPool.Settings _settings;
+        private final AtomicInteger _refs = new AtomicInteger(0);
+        private final AtomicInteger _inuse = new AtomicInteger(0);
+        private final AtomicInteger _waiting = new AtomicInteger(0);
+        private final Queue<Waiter> _waiters = new ConcurrentLinkedQueue<>();
+        private final ConcurrentMap<Channel, IdleEntry> _idles = new ConcurrentHashMap<>();
+        private final AtomicBoolean _warmuped = new AtomicBoolean(false);
+        private final AtomicLong _hits = new AtomicLong(0);
+        private final AtomicLong _misses = new AtomicLong(0);
+        private final AtomicLong _waits = new AtomicLong(0);
+        private final AtomicLong _waitMs = new AtomicLong(0);
+        private final AtomicLong _waitTimeouts = new AtomicLong(0);
+        private final AtomicLong _idleCloses = new AtomicLong(0);
+    }
+
+    private static Channel channelOf(final HttpInitiator initiator) {
+        final Object transport = initiator.transport();
+        return transport instanceof Channel ? (Channel)transport : null;
+    }
+
+    private static class IdleEntry {
+        void cancel() {
+            final Timeout timeout = this._timeout;
+            if (null != timeout) {
+                timeout.cancel();
+            }
+        }
+
+        volatile Timeout _timeout;
+    }
+
+    private final Timer _timer;
+    private final ConcurrentMap<URI, PoolImpl> _pools = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,290 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jocean.http.ByteBufSlice;
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.idiom.DisposableWrapper;
+import org.jocean.idiom.DisposableWrapperUtil;
+import org.jocean.xharbor.api.TradeReactor;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+import rx.Observable;
+
+public class CacheResponseTestCase {
+
+    private static <M> FullMessage<M> fullmsg(final M message) {
+        return new FullMessage<M>() {
+            @Override
+            public M message() {
+                return message;
+            }
+            @Override
+            public Observable<? extends MessageBody> body() {
+                return Observable.empty();
+            }};
+    }
+
+    private static ByteBufSlice slice(final String content) {
+        final DisposableWrapper<ByteBuf> dwb =
+                DisposableWrapperUtil.wrap(Unpooled.copiedBuffer(content, CharsetUtil.UTF_8), null);
+        return new ByteBufSlice() {
+            @Override
+            public void step() {
+            }
+            @Override
+            public Iterable<? extends DisposableWrapper<? extends ByteBuf>> element() {
+                return Collections.singletonList(dwb);
+            }};
+    }
+
+    // response's body with content as slices
+    static FullMessage<HttpResponse> fullresp(final HttpResponse response, final String... slices) {
+        final List<ByteBufSlice> content = new ArrayList<>();
+        for (final String s : slices) {
+            content.add(slice(s));
+        }
+        return new FullMessage<HttpResponse>() {
+            @Override
+            public HttpResponse message() {
+                return response;
+            }
+            @Override
+            public Observable<? extends MessageBody> body() {
+                return Observable.just(new MessageBody() {
+                    @Override
+                    public HttpHeaders headers() {
+                        return EmptyHttpHeaders.INSTANCE;
+                    }
+                    @Override
+                    public String contentType() {
+                        return null;
+                    }
+                    @Override
+                    public int contentLength() {
+                        return HttpUtil.getContentLength(response, -1);
+                    }
+                    @Override
+                    public Observable<? extends ByteBufSlice> content() {
+                        return Observable.from(content);
+                    }});
+            }};
+    }
+
+    // read all bytes of body's content
+    static String contentOf(final FullMessage<HttpResponse> fullresp) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fullresp.body().concatMap(body -> body.content()).toBlocking().forEach(slice -> {
+            for (final DisposableWrapper<? extends ByteBuf> dwb : slice.element()) {
+                final ByteBuf buf = dwb.unwrap();
+                final byte[] bytes = new byte[buf.readableBytes()];
+                buf.getBytes(buf.readerIndex(), bytes);
+                out.write(bytes, 0, bytes.length);
+            }
+        });
+        return new String(out.toByteArray(), CharsetUtil.UTF_8);
+    }
+
+    private static InOut ioOf(final HttpRequest request, final FullMessage<HttpResponse> fullresp) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return Observable.just(fullmsg(request));
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return Observable.just(fullresp);
+            }};
+    }
+
+    private static InOut io(final HttpRequest request, final HttpResponse response) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return Observable.just(fullmsg(request));
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return null != response ? Observable.just(fullmsg(response)) : null;
+            }};
+    }
+
+    private static CacheResponse cache() {
+        final CacheResponse cache = new CacheResponse();
+        cache._matcher = new MatchRule();
+        cache._matcher.setPath("^/static/");
+        return cache;
+    }
+
+    @Test
+    public final void testTtlOf() {
+        final CacheResponse cache = cache();
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        assertEquals(0, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "public, max-age=30");
+        assertEquals(30000, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=30, s-maxage=5");
+        assertEquals(5000, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "private, max-age=30");
+        assertEquals(0, cache.ttlOf(response));
+
+        response.headers().remove(HttpHeaderNames.CACHE_CONTROL);
+        response.headers().set(HttpHeaderNames.DATE, "Wed, 21 Oct 2015 07:28:00 GMT");
+        response.headers().set(HttpHeaderNames.EXPIRES, "Wed, 21 Oct 2015 07:29:00 GMT");
+        assertEquals(60000, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.EXPIRES, "0");
+        assertEquals(0, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "public, max-age=30");
+        response.headers().set(HttpHeaderNames.SET_COOKIE, "sid=1");
+        assertEquals(0, cache.ttlOf(response));
+    }
+
+    @Test
+    public final void testNotCacheVaryNotInKey() {
+        final CacheResponse cache = cache();
+        cache.setVary("Accept-Encoding");
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=30");
+
+        response.headers().set(HttpHeaderNames.VARY, "accept-encoding");
+        assertEquals(30000, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.VARY, "Accept-Encoding, Accept-Language");
+        assertEquals(0, cache.ttlOf(response));
+
+        response.headers().set(HttpHeaderNames.VARY, "*");
+        assertEquals(0, cache.ttlOf(response));
+
+        // vary header of response is not in key at all
+        response.headers().set(HttpHeaderNames.VARY, "Accept-Encoding");
+        assertEquals(0, cache().ttlOf(response));
+    }
+
+    private static HttpResponse cacheable(final int contentLength) {
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=60");
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        return response;
+    }
+
+    @Test
+    public final void testStoreMultiSliceBody() {
+        final CacheResponse cache = cache();
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/static/b.js");
+
+        final InOut stored = cache.store().react(TestReactorUtil.nullctx(),
+                ioOf(request, fullresp(cacheable(11), "hello", " ", "world"))).toBlocking().value();
+        final FullMessage<HttpResponse> forwarded = stored.outbound().toBlocking().single();
+        // body emitted but content not consumed yet: not stored
+        forwarded.body().toBlocking().subscribe();
+        assertNull(cache.lookup().react(TestReactorUtil.nullctx(), io(request, null)).toBlocking().value());
+
+        assertEquals("hello world", contentOf(forwarded));
+        final InOut hit = cache.lookup().react(TestReactorUtil.nullctx(), io(request, null)).toBlocking().value();
+        assertNotNull(hit);
+        assertEquals("hello world", contentOf(hit.outbound().toBlocking().single()));
+    }
+
+    @Test
+    public final void testNotReplayHopByHopHeaders() {
+        final CacheResponse cache = cache();
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/static/d.js");
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=60");
+        response.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        // forced close for one non keep-alive client
+        response.headers().set(HttpHeaderNames.CONNECTION, "close, X-Hop");
+        response.headers().set("X-Hop", "1");
+        response.headers().set(HttpHeaderNames.KEEP_ALIVE, "timeout=5");
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/javascript");
+
+        final InOut stored = cache.store().react(TestReactorUtil.nullctx(),
+                ioOf(request, fullresp(response, "hello", " world"))).toBlocking().value();
+        contentOf(stored.outbound().toBlocking().single());
+
+        final FullMessage<HttpResponse> hit = cache.lookup().react(TestReactorUtil.nullctx(), io(request, null))
+                .toBlocking().value().outbound().toBlocking().single();
+        final HttpHeaders headers = hit.message().headers();
+        assertFalse(headers.contains(HttpHeaderNames.CONNECTION));
+        assertFalse(headers.contains(HttpHeaderNames.KEEP_ALIVE));
+        assertFalse(headers.contains(HttpHeaderNames.TRANSFER_ENCODING));
+        assertFalse(headers.contains("X-Hop"));
+        assertEquals("text/javascript", headers.get(HttpHeaderNames.CONTENT_TYPE));
+        // content length from buffered body
+        assertEquals("11", headers.get(HttpHeaderNames.CONTENT_LENGTH));
+        assertEquals("hello world", contentOf(hit));
+    }
+
+    @Test
+    public final void testNotStoreTruncatedBody() {
+        final CacheResponse cache = cache();
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/static/c.js");
+
+        final InOut stored = cache.store().react(TestReactorUtil.nullctx(),
+                ioOf(request, fullresp(cacheable(11), "hello", " "))).toBlocking().value();
+        assertEquals("hello ", contentOf(stored.outbound().toBlocking().single()));
+        assertNull(cache.lookup().react(TestReactorUtil.nullctx(), io(request, null)).toBlocking().value());
+    }
+
+    @Test
+    public final void testStoreThenLookup() {
+        final CacheResponse cache = cache();
+        final TradeReactor lookup = cache.lookup();
+        final TradeReactor store = cache.store();
+
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/static/a.js");
+        assertNull(lookup.react(TestReactorUtil.nullctx(), io(request, null)).toBlocking().value());
+
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "max-age=60");
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        final InOut stored = store.react(TestReactorUtil.nullctx(), io(request, response)).toBlocking().value();
+        assertNotNull(stored);
+        // consume forwarded response, so it's stored
+        stored.outbound().flatMap(fullresp -> fullresp.body()).toBlocking().subscribe();
+
+        final InOut hit = lookup.react(TestReactorUtil.nullctx(), io(request, null)).toBlocking().value();
+        assertNotNull(hit);
+        final HttpResponse cached = hit.outbound().toBlocking().single().message();
+        assertEquals(HttpResponseStatus.OK, cached.status());
+        assertEquals("max-age=60", cached.headers().get(HttpHeaderNames.CACHE_CONTROL));
+        assertNotNull(cached.headers().get(HttpHeaderNames.AGE));
+
+        // hit is not stored again
+        assertNull(store.react(TestReactorUtil.nullctx(), hit).toBlocking().value());
+        // POST never cached
+        assertNull(lookup.react(TestReactorUtil.nullctx(),
+                io(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/static/a.js"), null))
+                .toBlocking().value());
+    }
+}
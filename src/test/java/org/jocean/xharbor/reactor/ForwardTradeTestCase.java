@@ -0,0 +1,295 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.http.Feature;
+import org.jocean.http.client.HttpClient.HttpInitiator;
+import org.jocean.xharbor.api.Target;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.functions.Func0;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+public class ForwardTradeTestCase {
+
+    // pool stand-in record released and discarded initiators
+    private static class RecordPool implements UpstreamPool {
+        @Override
+        public Observable<? extends HttpInitiator> acquire(final Func0<Observable<? extends HttpInitiator>> connector) {
+            return connector.call();
+        }
+
+        @Override
+        public void release(final HttpInitiator initiator) {
+            this._released.add(initiator);
+        }
+
+        @Override
+        public void discard(final HttpInitiator initiator) {
+            this._discarded.add(initiator);
+        }
+
+        @Override
+        public void warmup(final Func0<Observable<? extends HttpInitiator>> connector) {
+        }
+
+        final List<HttpInitiator> _released = new ArrayList<>();
+        final List<HttpInitiator> _discarded = new ArrayList<>();
+    }
+
+    private static MarkableTarget target(final String uri, final UpstreamPool pool) {
+        return new MarkableTarget(new Target() {
+            @Override
+            public URI serviceUri() {
+                return URI.create(uri);
+            }
+            @Override
+            public Func0<Feature[]> features() {
+                return null;
+            }}, pool, null, null);
+    }
+
+    private static ForwardTrade.Attempt attempt(final MarkableTarget target) {
+        final ForwardTrade.Attempt attempt = new ForwardTrade.Attempt(target);
+        attempt.upstream = (HttpInitiator)Proxy.newProxyInstance(HttpInitiator.class.getClassLoader(),
+                new Class<?>[]{HttpInitiator.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+        return attempt;
+    }
+
+    @Test
+    public final void testFailedAttemptDiscardedAndRespondedIsFinal() {
+        final RecordPool pool = new RecordPool();
+        final ForwardTrade.Attempts attempts = new ForwardTrade.Attempts();
+        final ForwardTrade.Attempt failed = attempt(target("http://a", pool));
+        final ForwardTrade.Attempt responded = attempt(target("http://b", pool));
+
+        assertTrue(attempts.onUpstream(failed));
+        // 5xx from a: discard it's upstream at once, slot not held until trade halt
+        failed.release(true);
+        assertEquals(1, pool._discarded.size());
+
+        assertTrue(attempts.onUpstream(responded));
+        attempts.onResponded(responded);
+        assertTrue(attempts.isFinal(responded));
+        assertFalse(attempts.isFinal(failed));
+
+        // only responded attempt is recorded, and it's upstream recycled by record
+        assertSame(responded, attempts.halt());
+        assertEquals(1, pool._discarded.size());
+        assertTrue(pool._released.isEmpty());
+        responded.release(false);
+        responded.release(true);
+        assertEquals(1, pool._released.size());
+        assertEquals(1, pool._discarded.size());
+    }
+
+    @Test
+    public final void testLastAttemptIsFinalWhenAllFailed() {
+        final RecordPool pool = new RecordPool();
+        final ForwardTrade.Attempts attempts = new ForwardTrade.Attempts();
+        final ForwardTrade.Attempt first = attempt(target("http://a", pool));
+        final ForwardTrade.Attempt last = attempt(target("http://b", pool));
+
+        attempts.onUpstream(first);
+        attempts.onUpstream(last);
+        // not released attempt is discarded at halt, except the final one
+        assertSame(last, attempts.halt());
+        assertEquals(1, pool._discarded.size());
+        assertSame(first.upstream, pool._discarded.get(0));
+
+        // upstream got after trade halted
+        final ForwardTrade.Attempt late = attempt(target("http://c", pool));
+        assertFalse(attempts.onUpstream(late));
+    }
+
+    @Test
+    public final void testNoneAttemptGotUpstream() {
+        assertNull(new ForwardTrade.Attempts().halt());
+    }
+
+    @Test
+    public final void testPrimaryRespondBeforeDelayNotHedge() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final AtomicInteger hedges = new AtomicInteger(0);
+        final List<String> responses = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> {
+            hedges.incrementAndGet();
+            return Observable.just("hedged");
+        }, scheduler).subscribe(responses::add);
+
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        primary.onNext("primary");
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, responses.size());
+        assertEquals("primary", responses.get(0));
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public final void testHedgedWinCancelPrimary() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final PublishSubject<String> hedged = PublishSubject.create();
+        final AtomicBoolean primaryCanceled = new AtomicBoolean(false);
+        final List<String> responses = new ArrayList<>();
+
+        ForwardTrade.hedge(primary.doOnUnsubscribe(() -> primaryCanceled.set(true)), 100, () -> hedged, scheduler)
+            .subscribe(responses::add);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertTrue(hedged.hasObservers());
+        hedged.onNext("hedged");
+
+        assertEquals(1, responses.size());
+        assertEquals("hedged", responses.get(0));
+        assertTrue(primaryCanceled.get());
+        assertFalse(primary.hasObservers());
+        // late primary response is ignored
+        primary.onNext("primary");
+        assertEquals(1, responses.size());
+    }
+
+    @Test
+    public final void testPrimaryWinCancelHedged() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final PublishSubject<String> hedged = PublishSubject.create();
+        final List<String> responses = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> hedged, scheduler).subscribe(responses::add);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertTrue(hedged.hasObservers());
+        primary.onNext("primary");
+
+        assertEquals("primary", responses.get(0));
+        assertFalse(hedged.hasObservers());
+    }
+
+    @Test
+    public final void testUnsubscribeCancelBoth() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final PublishSubject<String> hedged = PublishSubject.create();
+
+        ForwardTrade.hedge(primary, 100, () -> hedged, scheduler).subscribe().unsubscribe();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertFalse(primary.hasObservers());
+        assertFalse(hedged.hasObservers());
+    }
+
+    @Test
+    public final void testPrimaryFailedAfterHedgedSentHedgedWin() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final PublishSubject<String> hedged = PublishSubject.create();
+        final List<String> responses = new ArrayList<>();
+        final List<Throwable> errors = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> hedged, scheduler).subscribe(responses::add, errors::add);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        primary.onError(new RuntimeException("primary failed"));
+        // in flight hedged is not canceled by primary's error
+        assertTrue(hedged.hasObservers());
+        assertTrue(errors.isEmpty());
+
+        hedged.onNext("hedged");
+        assertEquals("hedged", responses.get(0));
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public final void testPrimaryFailedBeforeDelayNotHedge() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final AtomicInteger hedges = new AtomicInteger(0);
+        final List<Throwable> errors = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> {
+            hedges.incrementAndGet();
+            return Observable.just("hedged");
+        }, scheduler).subscribe(any -> {}, errors::add);
+
+        primary.onError(new RuntimeException("primary failed"));
+        assertEquals(1, errors.size());
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public final void testErrorWhenBothFailed() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final PublishSubject<String> hedged = PublishSubject.create();
+        final List<Throwable> errors = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> hedged, scheduler).subscribe(any -> {}, errors::add);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        hedged.onError(new RuntimeException("hedged failed"));
+        assertTrue(errors.isEmpty());
+        final RuntimeException last = new RuntimeException("primary failed");
+        primary.onError(last);
+        assertEquals(1, errors.size());
+        assertSame(last, errors.get(0));
+    }
+
+    @Test
+    public final void testPrimaryErrorWhenNotHedged() {
+        final TestScheduler scheduler = new TestScheduler();
+        final PublishSubject<String> primary = PublishSubject.create();
+        final List<Throwable> errors = new ArrayList<>();
+
+        ForwardTrade.hedge(primary, 100, () -> null, scheduler).subscribe(any -> {}, errors::add);
+
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        primary.onError(new RuntimeException("primary failed"));
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public final void testOnlyFirstRespondedAttemptIsFinal() {
+        final RecordPool pool = new RecordPool();
+        final ForwardTrade.Attempts attempts = new ForwardTrade.Attempts();
+        final ForwardTrade.Attempt primary = attempt(target("http://a", pool));
+        final ForwardTrade.Attempt hedged = attempt(target("http://b", pool));
+
+        attempts.onUpstream(primary);
+        attempts.onUpstream(hedged);
+        assertTrue(attempts.onResponded(hedged));
+        // late response of primary is dropped, it's upstream is discarded as loser
+        assertFalse(attempts.onResponded(primary));
+        assertFalse(attempts.isFinal(primary));
+        assertSame(hedged, attempts.halt());
+        assertEquals(1, pool._discarded.size());
+        assertSame(primary.upstream, pool._discarded.get(0));
+    }
+}
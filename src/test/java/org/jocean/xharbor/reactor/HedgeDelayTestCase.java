@@ -0,0 +1,50 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class HedgeDelayTestCase {
+
+    @Test
+    public final void testFixedDelay() {
+        final HedgeDelay delay = new HedgeDelay(20, 95);
+        delay.record(TimeUnit.MILLISECONDS.toNanos(1000));
+        assertEquals(20, delay.delayMs());
+    }
+
+    @Test
+    public final void testNotHedgeWithoutEnoughSamples() {
+        final HedgeDelay delay = new HedgeDelay(-1, 95);
+        for (int idx = 0; idx < 99; idx++) {
+            delay.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertEquals(-1, delay.delayMs());
+    }
+
+    @Test
+    public final void testPercentileOfRecentLatencies() {
+        final HedgeDelay delay = new HedgeDelay(-1, 90);
+        for (int ms = 1; ms <= 100; ms++) {
+            delay.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        assertEquals(91, delay.delayMs());
+
+        // recomputed at most once per second
+        for (int idx = 0; idx < 1024; idx++) {
+            delay.record(TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        assertEquals(91, delay.delayMs());
+    }
+
+    @Test
+    public final void testPercentileClamped() {
+        final HedgeDelay delay = new HedgeDelay(-1, 200);
+        for (int ms = 1; ms <= 100; ms++) {
+            delay.record(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        assertEquals(100, delay.delayMs());
+    }
+}
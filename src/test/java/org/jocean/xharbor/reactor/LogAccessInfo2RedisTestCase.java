@@ -0,0 +1,176 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.idiom.BeanHolder;
+import org.jocean.redis.RedisClient;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.redis.ArrayRedisMessage;
+import io.netty.handler.codec.redis.FullBulkStringRedisMessage;
+import io.netty.handler.codec.redis.RedisMessage;
+import io.netty.handler.codec.redis.SimpleStringRedisMessage;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+public class LogAccessInfo2RedisTestCase {
+
+    // flush is called by test, not by timer
+    private static final Timer NEVER = new Timer() {
+        @Override
+        public Timeout newTimeout(final TimerTask task, final long delay, final TimeUnit unit) {
+            return null;
+        }
+        @Override
+        public Set<Timeout> stop() {
+            return Collections.emptySet();
+        }};
+
+    // redis stand-in: record each command, reply when test call onNext/onCompleted or onError
+    static class RedisStandIn extends LogAccessInfo2Redis {
+        @Override
+        Observable<? extends RedisMessage> interact(final RedisClient redisclient, final RedisMessage cmd) {
+            final PublishSubject<RedisMessage> reply = PublishSubject.create();
+            this._cmds.add(cmd);
+            this._replies.add(reply);
+            return reply;
+        }
+
+        void reply(final int idx) {
+            this._replies.get(idx).onNext(new SimpleStringRedisMessage("OK"));
+            this._replies.get(idx).onCompleted();
+        }
+
+        final List<RedisMessage> _cmds = new ArrayList<>();
+        final List<PublishSubject<RedisMessage>> _replies = new ArrayList<>();
+    }
+
+    private static RedisStandIn logger(final int queueSize, final int batchSize, final boolean hasRedis) {
+        final RedisStandIn logger = new RedisStandIn();
+        logger._timer = NEVER;
+        logger._meterRegistry = new SimpleMeterRegistry();
+        logger._queueSize = queueSize;
+        logger._batchSize = batchSize;
+        final RedisClient redisclient = hasRedis
+                ? (RedisClient)Proxy.newProxyInstance(RedisClient.class.getClassLoader(),
+                        new Class<?>[]{RedisClient.class}, (proxy, method, args) -> null)
+                : null;
+        logger.setBeanHolder((BeanHolder)Proxy.newProxyInstance(BeanHolder.class.getClassLoader(),
+                new Class<?>[]{BeanHolder.class}, (proxy, method, args) -> redisclient));
+        logger.start();
+        return logger;
+    }
+
+    private static void enqueue(final LogAccessInfo2Redis logger, final String... remoteips) {
+        for (final String remoteip : remoteips) {
+            final HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api");
+            req.headers().set("remoteip", remoteip);
+            logger.enqueue(req, new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+        }
+    }
+
+    private static double records(final LogAccessInfo2Redis logger, final String result) {
+        return logger._meterRegistry.get("jocean.xharbor.accesslog.records").tag("result", result).counter().count();
+    }
+
+    private static String bulk(final RedisMessage cmd, final int idx) {
+        return ((FullBulkStringRedisMessage)((ArrayRedisMessage)cmd).children().get(idx)).content()
+                .toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public final void testOneMsetPerBatch() {
+        final RedisStandIn logger = logger(100, 3, true);
+        enqueue(logger, "1.1.1.1", "2.2.2.2", "3.3.3.3", "4.4.4.4", "5.5.5.5");
+
+        logger.flush();
+        assertEquals(1, logger._cmds.size());
+        final ArrayRedisMessage mset = (ArrayRedisMessage)logger._cmds.get(0);
+        // MSET key1 value1 ... key3 value3
+        assertEquals(7, mset.children().size());
+        assertEquals("MSET", bulk(mset, 0));
+        assertEquals("1.1.1.1", bulk(mset, 1));
+        assertTrue(bulk(mset, 2).contains("\"uri\":\"/api\""));
+        assertEquals("3.3.3.3", bulk(mset, 5));
+
+        logger.reply(0);
+        assertEquals(3.0, records(logger, "written"), 0.0);
+        // backlog less than batch size, wait for next tick
+        assertEquals(1, logger._cmds.size());
+
+        logger.flush();
+        assertEquals(5, ((ArrayRedisMessage)logger._cmds.get(1)).children().size());
+        logger.reply(1);
+        assertEquals(5.0, records(logger, "written"), 0.0);
+        logger.stop();
+    }
+
+    @Test
+    public final void testSingleBatchInFlight() {
+        final RedisStandIn logger = logger(100, 2, true);
+        enqueue(logger, "1.1.1.1", "2.2.2.2");
+        logger.flush();
+        enqueue(logger, "3.3.3.3", "4.4.4.4", "5.5.5.5");
+
+        // last batch not replied
+        logger.flush();
+        logger.flush();
+        assertEquals(1, logger._cmds.size());
+
+        // backlog not less than batch size, flush again when replied
+        logger.reply(0);
+        assertEquals(2, logger._cmds.size());
+        assertEquals("3.3.3.3", bulk(logger._cmds.get(1), 1));
+        logger.reply(1);
+        assertEquals(2, logger._cmds.size());
+        assertEquals(4.0, records(logger, "written"), 0.0);
+        logger.stop();
+    }
+
+    @Test
+    public final void testFailedAndDropped() {
+        final RedisStandIn logger = logger(2, 10, true);
+        // queue full
+        enqueue(logger, "1.1.1.1", "2.2.2.2", "3.3.3.3");
+        assertEquals(1.0, records(logger, "dropped"), 0.0);
+
+        logger.flush();
+        logger._replies.get(0).onError(new RuntimeException("redis down"));
+        assertEquals(2.0, records(logger, "failed"), 0.0);
+
+        // next batch flushed after failed one
+        enqueue(logger, "4.4.4.4");
+        logger.flush();
+        assertEquals(2, logger._cmds.size());
+        logger.stop();
+    }
+
+    @Test
+    public final void testDroppedWithoutRedisClient() {
+        final RedisStandIn logger = logger(100, 10, false);
+        enqueue(logger, "1.1.1.1", "2.2.2.2");
+        logger.flush();
+        assertTrue(logger._cmds.isEmpty());
+        assertEquals(2.0, records(logger, "dropped"), 0.0);
+        logger.stop();
+    }
+}
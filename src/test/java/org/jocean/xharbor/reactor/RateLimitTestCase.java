@@ -0,0 +1,125 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.xharbor.api.TradeReactor;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.jocean.xharbor.api.TradeReactor.ReactContext;
+import org.jocean.xharbor.relay.ReactUtil;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import rx.Observable;
+import rx.Single;
+import rx.schedulers.Schedulers;
+
+public class RateLimitTestCase {
+
+    private static InOut io(final String apikey) {
+        final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/api");
+        if (null != apikey) {
+            request.headers().set("x-api-key", apikey);
+        }
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return Observable.just(new FullMessage<HttpRequest>() {
+                    @Override
+                    public HttpRequest message() {
+                        return request;
+                    }
+                    @Override
+                    public Observable<? extends MessageBody> body() {
+                        return Observable.empty();
+                    }});
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return null;
+            }};
+    }
+
+    private static RateLimit limit(final int burst) {
+        final RateLimit limit = new RateLimit();
+        limit._matcher = new MatchRule();
+        limit._matcher.setPath("^/api");
+        limit._keyType = RateLimit.KEY_HEADER;
+        limit._ratePerSecond = 0.001;
+        limit._burst = burst;
+        return limit;
+    }
+
+    // forward stand-in: handle every trade
+    private static class Handled extends SingleReactor {
+        @Override
+        public Single<Boolean> match(final ReactContext ctx, final InOut io) {
+            return Single.just(true);
+        }
+
+        @Override
+        public Single<? extends InOut> react(final ReactContext ctx, final InOut io) {
+            this._reacts.incrementAndGet();
+            return Single.just(io);
+        }
+
+        final AtomicInteger _reacts = new AtomicInteger(0);
+    }
+
+    @Test
+    public final void testMatchOnlyWhenRejected() {
+        final RateLimit limit = limit(2);
+        final ReactContext ctx = TestReactorUtil.nullctx();
+
+        assertFalse(limit.match(ctx, io("k1")).toBlocking().value());
+        assertFalse(limit.match(ctx, io("k1")).toBlocking().value());
+        final InOut third = io("k1");
+        assertTrue(limit.match(ctx, third).toBlocking().value());
+        // other key and request without key not limited
+        assertFalse(limit.match(ctx, io("k2")).toBlocking().value());
+        assertFalse(limit.match(ctx, io(null)).toBlocking().value());
+
+        final InOut rejected = limit.react(ctx, third).toBlocking().value();
+        assertEquals(HttpResponseStatus.TOO_MANY_REQUESTS, rejected.outbound().toBlocking().single().message().status());
+    }
+
+    @Test
+    public final void testParallelFirstPassUnderLimitToLaterReactors() {
+        final RateLimit limit = limit(2);
+        final Handled forward = new Handled();
+        final TradeReactor[] reactors = new TradeReactor[]{limit, forward};
+        final ReactContext ctx = TestReactorUtil.ctxOf(2, Schedulers.immediate());
+
+        for (int idx = 0; idx < 2; idx++) {
+            final InOut io = io("k1");
+            assertSame(io, ReactUtil.parallelFirst(reactors, ctx, io).toBlocking().value());
+        }
+        assertEquals(2, forward._reacts.get());
+
+        final InOut limited = ReactUtil.parallelFirst(reactors, ctx, io("k1")).toBlocking().value();
+        assertEquals(HttpResponseStatus.TOO_MANY_REQUESTS, limited.outbound().toBlocking().single().message().status());
+        assertEquals(2, forward._reacts.get());
+    }
+
+    @Test
+    public final void testReactWithoutMatchTakeOneToken() {
+        final RateLimit limit = limit(1);
+        final ReactContext ctx = TestReactorUtil.nullctx();
+
+        assertNull(limit.react(ctx, io("k1")).toBlocking().value());
+        final InOut rejected = limit.react(ctx, io("k1")).toBlocking().value();
+        assertEquals(HttpResponseStatus.TOO_MANY_REQUESTS, rejected.outbound().toBlocking().single().message().status());
+    }
+}
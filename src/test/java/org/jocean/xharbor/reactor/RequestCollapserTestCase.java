@@ -0,0 +1,213 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.http.FullMessage;
+import org.jocean.http.MessageBody;
+import org.jocean.http.server.HttpServerBuilder.HttpTrade;
+import org.jocean.xharbor.api.TradeReactor.InOut;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import rx.Observable;
+import rx.functions.Action0;
+import rx.functions.Func0;
+import rx.subjects.PublishSubject;
+
+public class RequestCollapserTestCase {
+
+    // trade only record halt actions
+    private static HttpTrade trade(final List<Action0> onHalts) {
+        return (HttpTrade)Proxy.newProxyInstance(HttpTrade.class.getClassLoader(),
+                new Class<?>[]{HttpTrade.class}, (proxy, method, args) -> {
+                    if ("doOnHalt".equals(method.getName())) {
+                        onHalts.add((Action0)args[0]);
+                    }
+                    return null;
+                });
+    }
+
+    private static InOut io(final HttpRequest request, final Observable<FullMessage<HttpResponse>> outbound) {
+        return new InOut() {
+            @Override
+            public Observable<FullMessage<HttpRequest>> inbound() {
+                return Observable.just(new FullMessage<HttpRequest>() {
+                    @Override
+                    public HttpRequest message() {
+                        return request;
+                    }
+                    @Override
+                    public Observable<? extends MessageBody> body() {
+                        return Observable.empty();
+                    }});
+            }
+            @Override
+            public Observable<FullMessage<HttpResponse>> outbound() {
+                return outbound;
+            }};
+    }
+
+    private static HttpRequest get(final String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    private static HttpResponse response(final HttpResponseStatus status, final int contentLength) {
+        final HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, contentLength);
+        return response;
+    }
+
+    // upstream stand-in: leader's response emitted when test call onNext
+    private static Func0<Observable<InOut>> forward(final HttpRequest request,
+            final Observable<FullMessage<HttpResponse>> outbound,
+            final AtomicInteger forwards) {
+        return () -> {
+            forwards.incrementAndGet();
+            return Observable.just(io(request, outbound));
+        };
+    }
+
+    @Test
+    public final void testIsCollapsible() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        assertTrue(collapser.isCollapsible(get("/api")));
+        assertFalse(collapser.isCollapsible(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/api")));
+
+        final HttpRequest auth = get("/api");
+        auth.headers().set(HttpHeaderNames.AUTHORIZATION, "Basic xxx");
+        assertFalse(collapser.isCollapsible(auth));
+
+        final HttpRequest cookie = get("/api");
+        cookie.headers().set(HttpHeaderNames.COOKIE, "sid=1");
+        assertFalse(collapser.isCollapsible(cookie));
+    }
+
+    @Test
+    public final void testFollowerShareLeader2xx() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        final HttpRequest request = get("/api");
+        final PublishSubject<FullMessage<HttpResponse>> upstream = PublishSubject.create();
+        final AtomicInteger forwards = new AtomicInteger(0);
+        final List<Action0> onHalts = new ArrayList<>();
+
+        final InOut leader = collapser.collapse(trade(onHalts), io(request, null), request,
+                forward(request, upstream, forwards), status -> {}).toBlocking().single();
+        final List<FullMessage<HttpResponse>> followed = new ArrayList<>();
+        collapser.collapse(trade(onHalts), io(request, null), request, forward(request, upstream, forwards), status -> {})
+            .flatMap(io -> io.outbound()).subscribe(followed::add);
+
+        final List<String> leaderContent = new ArrayList<>();
+        leader.outbound().subscribe(fullresp -> leaderContent.add(CacheResponseTestCase.contentOf(fullresp)));
+        upstream.onNext(CacheResponseTestCase.fullresp(response(HttpResponseStatus.OK, 5), "he", "llo"));
+
+        assertEquals("hello", leaderContent.get(0));
+        assertEquals(1, followed.size());
+        assertEquals(HttpResponseStatus.OK, followed.get(0).message().status());
+        assertEquals("hello", CacheResponseTestCase.contentOf(followed.get(0)));
+        assertEquals(1, forwards.get());
+    }
+
+    @Test
+    public final void testFollowedCalledOnlyForFollower() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        final HttpRequest request = get("/api");
+        final PublishSubject<FullMessage<HttpResponse>> upstream = PublishSubject.create();
+        final AtomicInteger forwards = new AtomicInteger(0);
+        final List<Action0> onHalts = new ArrayList<>();
+        final List<HttpResponseStatus> followed = new ArrayList<>();
+
+        final InOut leader = collapser.collapse(trade(onHalts), io(request, null), request,
+                forward(request, upstream, forwards), followed::add).toBlocking().single();
+        collapser.collapse(trade(onHalts), io(request, null), request, forward(request, upstream, forwards),
+                followed::add).subscribe();
+        collapser.collapse(trade(onHalts), io(request, null), request, forward(request, upstream, forwards),
+                followed::add).subscribe();
+
+        leader.outbound().subscribe(fullresp -> CacheResponseTestCase.contentOf(fullresp));
+        upstream.onNext(CacheResponseTestCase.fullresp(response(HttpResponseStatus.OK, 5), "hello"));
+
+        // each follower recorded, leader recorded by forward itself
+        assertEquals(2, followed.size());
+        assertEquals(HttpResponseStatus.OK, followed.get(0));
+    }
+
+    @Test
+    public final void testFollowerForwardWhenLeaderNot2xx() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        final HttpRequest request = get("/api");
+        final PublishSubject<FullMessage<HttpResponse>> upstream = PublishSubject.create();
+        final AtomicInteger forwards = new AtomicInteger(0);
+        final List<Action0> onHalts = new ArrayList<>();
+
+        final InOut leader = collapser.collapse(trade(onHalts), io(request, null), request,
+                forward(request, upstream, forwards), status -> {}).toBlocking().single();
+        final List<InOut> followers = new ArrayList<>();
+        collapser.collapse(trade(onHalts), io(request, null), request, forward(request, upstream, forwards), status -> {})
+            .subscribe(followers::add);
+        assertTrue(followers.isEmpty());
+
+        final List<FullMessage<HttpResponse>> leaderResps = new ArrayList<>();
+        leader.outbound().subscribe(leaderResps::add);
+        upstream.onNext(CacheResponseTestCase.fullresp(response(HttpResponseStatus.NOT_FOUND, 0)));
+
+        assertEquals(HttpResponseStatus.NOT_FOUND, leaderResps.get(0).message().status());
+        // follower forward by itself, not got leader's 404
+        assertEquals(1, followers.size());
+        assertEquals(2, forwards.get());
+    }
+
+    @Test
+    public final void testFollowerForwardWhenLeaderTruncated() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        final HttpRequest request = get("/api");
+        final PublishSubject<FullMessage<HttpResponse>> upstream = PublishSubject.create();
+        final AtomicInteger forwards = new AtomicInteger(0);
+        final List<Action0> onHalts = new ArrayList<>();
+
+        final InOut leader = collapser.collapse(trade(onHalts), io(request, null), request,
+                forward(request, upstream, forwards), status -> {}).toBlocking().single();
+        final List<InOut> followers = new ArrayList<>();
+        collapser.collapse(trade(onHalts), io(request, null), request, forward(request, upstream, forwards), status -> {})
+            .subscribe(followers::add);
+
+        leader.outbound().subscribe(fullresp -> CacheResponseTestCase.contentOf(fullresp));
+        upstream.onNext(CacheResponseTestCase.fullresp(response(HttpResponseStatus.OK, 5), "he"));
+        assertEquals(1, followers.size());
+        assertEquals(2, forwards.get());
+    }
+
+    @Test
+    public final void testFollowerForwardWhenLeaderHalted() {
+        final RequestCollapser collapser = new RequestCollapser(Collections.<String>emptyList(), 1024);
+        final HttpRequest request = get("/api");
+        final AtomicInteger forwards = new AtomicInteger(0);
+        final List<Action0> onHalts = new ArrayList<>();
+
+        collapser.collapse(trade(onHalts), io(request, null), request,
+                forward(request, Observable.never(), forwards), status -> {}).toBlocking().single();
+        final List<InOut> followers = new ArrayList<>();
+        collapser.collapse(trade(new ArrayList<>()), io(request, null), request,
+                forward(request, Observable.never(), forwards), status -> {}).subscribe(followers::add);
+        assertTrue(followers.isEmpty());
+
+        // leader's trade closed before response
+        onHalts.get(0).call();
+        assertEquals(1, followers.size());
+        assertEquals(2, forwards.get());
+    }
+}
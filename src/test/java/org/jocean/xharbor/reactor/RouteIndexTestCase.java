@@ -0,0 +1,104 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+
+public class RouteIndexTestCase {
+
+    private static ForwardTrade fwdt(final String method, final String path) {
+        final MatchRule matcher = new MatchRule();
+        matcher.setMethod(method);
+        matcher.setPath(path);
+        final ForwardData data = new ForwardData();
+        data._matcher = matcher;
+        return new ForwardTrade(data, null, null, null, null, null, null);
+    }
+
+    private static ForwardTrade firstMatched(final ForwardTrade[] fwdts, final HttpRequest req) {
+        for (final ForwardTrade fwdt : fwdts) {
+            if (fwdt.matcher().match(req)) {
+                return fwdt;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public final void testLiteralPrefixOf() {
+        assertEquals("", MatchRule.literalPrefixOf(""));
+        assertEquals("", MatchRule.literalPrefixOf("/api/"));
+        assertEquals("/api/", MatchRule.literalPrefixOf("^/api/"));
+        assertEquals("/api/v1", MatchRule.literalPrefixOf("^/api/v1.0"));
+        assertEquals("/api/v1.0", MatchRule.literalPrefixOf("^/api/v1\\.0"));
+        assertEquals("/api", MatchRule.literalPrefixOf("^/apis?/"));
+        assertEquals("/apis", MatchRule.literalPrefixOf("^/apis+/"));
+        assertEquals("/api/", MatchRule.literalPrefixOf("^/api/(\\w)*"));
+        assertEquals("/api/", MatchRule.literalPrefixOf("^/api/(a|b)"));
+        assertEquals("", MatchRule.literalPrefixOf("^/api/a|^/api/b"));
+        assertEquals("", MatchRule.literalPrefixOf("^(?i)/api"));
+    }
+
+    @Test
+    public final void testCandidatesKeepOrder() {
+        final ForwardTrade[] fwdts = new ForwardTrade[] {
+                fwdt("GET", "^/api/user"),
+                fwdt("", "/common/"),
+                fwdt("POST", "^/api/"),
+                fwdt("GET|POST", "^/api/"),
+                fwdt("", "^/static/"),
+        };
+        final RouteIndex index = new RouteIndex(fwdts);
+
+        assertArrayEquals(new ForwardTrade[]{fwdts[0], fwdts[1], fwdts[3]},
+                index.candidatesOf("GET", "/api/user/1"));
+        assertArrayEquals(new ForwardTrade[]{fwdts[1], fwdts[2], fwdts[3]},
+                index.candidatesOf("POST", "/api/user/1"));
+        assertArrayEquals(new ForwardTrade[]{fwdts[1], fwdts[4]},
+                index.candidatesOf("DELETE", "/static/a.js"));
+        // non-standard method only filtered by path prefix
+        assertArrayEquals(new ForwardTrade[]{fwdts[0], fwdts[1], fwdts[2], fwdts[3]},
+                index.candidatesOf("PURGE", "/api/user/1"));
+    }
+
+    @Test
+    public final void testAllCandidatesReturnForwards() {
+        final ForwardTrade[] fwdts = new ForwardTrade[] {
+                fwdt("", "/a"),
+                fwdt("", ""),
+        };
+        final RouteIndex index = new RouteIndex(fwdts);
+        assertSame(fwdts, index.candidatesOf("GET", "/b"));
+    }
+
+    @Test
+    public final void testSameFirstMatchAsLinearScan() {
+        final ForwardTrade[] fwdts = new ForwardTrade[] {
+                fwdt("GET", "^/api/order/(\\d)+"),
+                fwdt("", "^/api/order"),
+                fwdt("POST|PUT", "^/api/"),
+                fwdt("", "order"),
+                fwdt("", "^/api/user\\.json"),
+                fwdt("GET", "^/"),
+                fwdt("", "^/api/o?rder"),
+        };
+        final RouteIndex index = new RouteIndex(fwdts);
+        final String[] uris = new String[] {"/api/order/12", "/api/order", "/api/rder", "/api/user.json",
+                "/api/userXjson", "/v2/order", "/", "", "/api/order?x=1"};
+        for (final HttpMethod method : new HttpMethod[]{HttpMethod.GET, HttpMethod.POST, HttpMethod.DELETE,
+                HttpMethod.valueOf("PURGE")}) {
+            for (final String uri : uris) {
+                final HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+                assertSame(method + " " + uri, firstMatched(fwdts, req),
+                        firstMatched(index.candidatesOf(method.name(), uri), req));
+            }
+        }
+    }
+}
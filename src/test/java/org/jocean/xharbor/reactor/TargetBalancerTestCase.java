@@ -0,0 +1,147 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jocean.http.Feature;
+import org.jocean.xharbor.api.Target;
+import org.junit.Test;
+
+import rx.functions.Action0;
+import rx.functions.Func0;
+
+public class TargetBalancerTestCase {
+
+    private static MarkableTarget target(final String uri) {
+        return new MarkableTarget(new Target() {
+            @Override
+            public URI serviceUri() {
+                return URI.create(uri);
+            }
+            @Override
+            public Func0<Feature[]> features() {
+                return null;
+            }}, null, null, null);
+    }
+
+    private static TargetBalancer balancer(final String policy, final List<MarkableTarget> targets) {
+        final TargetBalancer balancer = TargetBalancer.of(policy);
+        balancer.update(targets);
+        return balancer;
+    }
+
+    @Test
+    public final void testLeastOutstanding() {
+        final MarkableTarget a = target("http://a");
+        final MarkableTarget b = target("http://b");
+        final TargetBalancer balancer = balancer(TargetBalancer.LEAST_OUTSTANDING, Arrays.asList(a, b));
+
+        final Action0 end = a.beginRequest();
+        for (int idx = 0; idx < 4; idx++) {
+            assertSame(b, balancer.select(t -> true));
+        }
+        end.call();
+        end.call();
+        assertEquals(0, a.outstanding());
+        assertSame(a, balancer.select(t -> t != b));
+    }
+
+    @Test
+    public final void testP2CPreferLessOutstanding() {
+        final MarkableTarget a = target("http://a");
+        final MarkableTarget b = target("http://b");
+        final TargetBalancer balancer = balancer(TargetBalancer.P2C, Arrays.asList(a, b));
+
+        a.beginRequest();
+        for (int idx = 0; idx < 10; idx++) {
+            assertSame(b, balancer.select(t -> true));
+        }
+    }
+
+    @Test
+    public final void testPeakEwmaPreferLowLatency() {
+        final MarkableTarget slow = target("http://slow");
+        final MarkableTarget fast = target("http://fast");
+        slow.observeLatency(500 * 1000 * 1000L);
+        fast.observeLatency(5 * 1000 * 1000L);
+        final TargetBalancer balancer = balancer(TargetBalancer.PEAK_EWMA, Arrays.asList(slow, fast));
+
+        for (int idx = 0; idx < 10; idx++) {
+            assertSame(fast, balancer.select(t -> true));
+        }
+        // only slow one is active
+        assertSame(slow, balancer.select(t -> t == slow));
+    }
+
+    @Test
+    public final void testPeakEwma() {
+        final MarkableTarget a = target("http://a");
+        a.observeLatency(100);
+        assertEquals(100.0, a.ewmaNanos(), 0.0);
+        // peak replace average immediately
+        a.observeLatency(1000);
+        assertEquals(1000.0, a.ewmaNanos(), 0.0);
+        // lower sample decay slowly
+        a.observeLatency(10);
+        assertEquals(1000.0, a.ewmaNanos(), 1.0);
+    }
+
+    @Test
+    public final void testFailureNotLowerPeakEwma() {
+        final MarkableTarget broken = target("http://broken");
+        final MarkableTarget healthy = target("http://healthy");
+        healthy.observeLatency(50 * 1000 * 1000L);
+        // request end itself is not latency sample
+        broken.beginRequest().call();
+        assertEquals(0.0, broken.ewmaNanos(), 0.0);
+
+        // fail fast is sampled as penalty
+        broken.observeFailure();
+        assertTrue(broken.ewmaNanos() >= 1000 * 1000 * 1000L);
+        final TargetBalancer balancer = balancer(TargetBalancer.PEAK_EWMA, Arrays.asList(broken, healthy));
+        for (int idx = 0; idx < 10; idx++) {
+            assertSame(healthy, balancer.select(t -> true));
+        }
+        // penalty grow with current average
+        final double ewma = broken.ewmaNanos();
+        broken.observeFailure();
+        assertTrue(broken.ewmaNanos() > ewma);
+    }
+
+    @Test
+    public final void testPeakEwmaConcurrent() throws Exception {
+        final MarkableTarget a = target("http://a");
+        final Thread[] threads = new Thread[4];
+        for (int idx = 0; idx < threads.length; idx++) {
+            final long latency = (idx + 1) * 100L;
+            threads[idx] = new Thread(() -> {
+                for (int cnt = 0; cnt < 10000; cnt++) {
+                    a.observeLatency(latency);
+                }
+            });
+            threads[idx].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        // peak is never lost by concurrent update, lower samples decay it slowly
+        assertTrue(a.ewmaNanos() > 300.0 && a.ewmaNanos() <= 400.0);
+    }
+
+    @Test
+    public final void testNoneActive() {
+        for (final String policy : new String[]{TargetBalancer.ROUND_ROBIN, TargetBalancer.LEAST_OUTSTANDING,
+                TargetBalancer.P2C, TargetBalancer.PEAK_EWMA, "unknown"}) {
+            final TargetBalancer balancer = balancer(policy,
+                    Arrays.asList(target("http://a"), target("http://b"), target("http://c")));
+            assertNull(policy, balancer.select(t -> false));
+            assertNull(policy, TargetBalancer.of(policy).select(t -> true));
+        }
+    }
+}
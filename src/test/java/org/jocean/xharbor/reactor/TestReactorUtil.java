@@ -2,6 +2,7 @@ package org.jocean.xharbor.reactor;
 
 import org.jocean.http.server.HttpServerBuilder.HttpTrade;
 import org.jocean.idiom.StopWatch;
+import org.jocean.xharbor.api.ParsedRequest;
 import org.jocean.xharbor.api.TradeReactor.ReactContext;
 
 import io.opentracing.Span;
@@ -12,6 +13,10 @@ import rx.Scheduler;
 
 class TestReactorUtil {
     static ReactContext nullctx() {
+        return ctxOf(0, null);
+    }
+
+    static ReactContext ctxOf(final int concurrent, final Scheduler scheduler) {
         return new ReactContext() {
 
             @Override
@@ -19,6 +24,11 @@ class TestReactorUtil {
                 return null;
             }
 
+            @Override
+            public ParsedRequest request() {
+                return null;
+            }
+
             @Override
             public StopWatch watch() {
                 return null;
@@ -36,12 +46,16 @@ class TestReactorUtil {
 
             @Override
             public Scheduler scheduler() {
-                return null;
+                return scheduler;
             }
 
             @Override
             public int concurrent() {
-                return 0;
+                return concurrent;
+            }
+
+            @Override
+            public void bindOperation(final String operation) {
             }};
     }
 }
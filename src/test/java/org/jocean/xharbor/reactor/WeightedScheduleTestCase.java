@@ -0,0 +1,81 @@
+package org.jocean.xharbor.reactor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class WeightedScheduleTestCase {
+
+    private static String[] walk(final WeightedSchedule<String> schedule, final int count) {
+        final String[] picked = new String[count];
+        for (int idx = 0; idx < count; idx++) {
+            picked[idx] = schedule.next(peer -> true);
+        }
+        return picked;
+    }
+
+    @Test
+    public final void testSameSequenceAsNginxSWRR() {
+        final Map<String, Integer> weights = new ConcurrentHashMap<>();
+        weights.put("a", 5);
+        weights.put("b", 1);
+        weights.put("c", 1);
+        final WeightedSchedule<String> schedule = WeightedSchedule.build(Arrays.asList("a", "b", "c"), weights::get);
+
+        assertEquals(7, schedule.size());
+        assertArrayEquals(new String[]{"a", "a", "b", "a", "c", "a", "a"}, walk(schedule, 7));
+    }
+
+    @Test
+    public final void testWeightsReducedByGcd() {
+        final WeightedSchedule<String> schedule = WeightedSchedule.build(Arrays.asList("a", "b"),
+                peer -> peer.equals("a") ? 400 : 200);
+
+        assertEquals(3, schedule.size());
+        assertArrayEquals(new String[]{"a", "b", "a", "a", "b", "a"}, walk(schedule, 6));
+    }
+
+    @Test
+    public final void testSkipInactivePeer() {
+        final WeightedSchedule<String> schedule = WeightedSchedule.build(Arrays.asList("a", "b"), peer -> 1);
+
+        for (int idx = 0; idx < 4; idx++) {
+            assertEquals("b", schedule.next(peer -> !peer.equals("a")));
+        }
+        assertNull(schedule.next(peer -> false));
+        assertNull(WeightedSchedule.<String>empty().next(peer -> true));
+    }
+
+    @Test
+    public final void testDistributionUnderConcurrency() throws Exception {
+        final WeightedSchedule<String> schedule = WeightedSchedule.build(Arrays.asList("a", "b", "c"),
+                peer -> peer.equals("a") ? 3 : 1);
+        final int threads = 8;
+        final int rounds = 5 * 10000;
+        final Map<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int idx = 0; idx < rounds; idx++) {
+                    counters.computeIfAbsent(schedule.next(peer -> true), peer -> new AtomicInteger()).incrementAndGet();
+                }
+                latch.countDown();
+            }).start();
+        }
+        latch.await();
+
+        // every full sequence holds a * 3, b * 1, c * 1
+        final int total = threads * rounds;
+        assertEquals(total / 5 * 3, counters.get("a").get());
+        assertEquals(total / 5, counters.get("b").get());
+        assertEquals(total / 5, counters.get("c").get());
+    }
+}
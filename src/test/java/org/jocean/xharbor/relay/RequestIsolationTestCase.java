@@ -0,0 +1,160 @@
+package org.jocean.xharbor.relay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Action0;
+
+public class RequestIsolationTestCase {
+
+    private static RequestIsolation isolation(final int maxConcurrent) {
+        final RequestIsolation isolation = new RequestIsolation();
+        isolation._path = "/test";
+        isolation._maxConcurrent = maxConcurrent;
+        isolation._circuitRequestVolume = 4;
+        isolation._circuitErrorPercentage = 50;
+        isolation._circuitSleepWindowMs = 60 * 1000L;
+        return isolation;
+    }
+
+    @Test
+    public final void testRejectWhenExceedMaxConcurrent() {
+        final RequestIsolation isolation = isolation(1);
+
+        final Subscription running = isolation.execute(Observable.<String>never(), () -> Observable.just("fallback"))
+                .subscribe();
+        assertEquals("fallback", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"))
+                .toBlocking().single());
+
+        // release semaphore when unsubscribed
+        running.unsubscribe();
+        assertEquals("normal", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"))
+                .toBlocking().single());
+    }
+
+    @Test
+    public final void testFallbackWhenTimeout() {
+        final RequestIsolation isolation = isolation(10);
+        isolation._timeoutInMs = 10;
+
+        assertEquals("fallback", isolation.execute(Observable.just("normal").delay(1, TimeUnit.SECONDS),
+                () -> Observable.just("fallback")).toBlocking().single());
+    }
+
+    @Test
+    public final void testCircuitOpenWhenErrorsReachThreshold() {
+        final RequestIsolation isolation = isolation(10);
+
+        for (int idx = 0; idx < 2; idx++) {
+            assertEquals("normal", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"))
+                    .toBlocking().single());
+        }
+        for (int idx = 0; idx < 2; idx++) {
+            assertEquals("fallback", isolation.execute(Observable.<String>error(new RuntimeException()),
+                    () -> Observable.just("fallback")).toBlocking().single());
+        }
+        // circuit open: normal not executed
+        assertEquals("fallback", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"))
+                .toBlocking().single());
+    }
+
+    @Test
+    public final void testAimdLimitAdaptToLatency() {
+        final ConcurrencyLimit limit = ConcurrencyLimit.of(ConcurrencyLimit.AIMD, 10, 2, 20, 100);
+
+        limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), 10, false);
+        assertEquals(11, limit.limit());
+
+        // limit not used, keep it
+        limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), 1, false);
+        assertEquals(11, limit.limit());
+
+        for (int idx = 0; idx < 100; idx++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(200), 10, false);
+        }
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    public final void testGradientLimitDecreaseWhenLatencyIncrease() {
+        final ConcurrencyLimit limit = ConcurrencyLimit.of(ConcurrencyLimit.GRADIENT, 100, 1, 1000, 0);
+
+        limit.onSample(TimeUnit.MILLISECONDS.toNanos(10), 100, false);
+        final int base = limit.limit();
+        for (int idx = 0; idx < 20; idx++) {
+            limit.onSample(TimeUnit.MILLISECONDS.toNanos(100), 100, false);
+        }
+        assertTrue(limit.limit() < base);
+    }
+
+    @Test
+    public final void testRejectAboveAdaptiveLimit() {
+        final RequestIsolation isolation = isolation(1);
+        isolation._limitMode = ConcurrencyLimit.AIMD;
+        isolation._limitMin = 1;
+
+        final Subscription running = isolation.execute(Observable.<String>never(), () -> Observable.just("fallback"))
+                .subscribe();
+        assertEquals("fallback", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"))
+                .toBlocking().single());
+        running.unsubscribe();
+    }
+
+    @Test
+    public final void testSampleOnceWithFailureAsDropped() {
+        final RequestIsolation isolation = isolation(10);
+        isolation._limitMode = ConcurrencyLimit.AIMD;
+        final List<Action0> samples = new ArrayList<>();
+
+        assertEquals("normal", isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"), samples::add)
+                .toBlocking().single());
+        assertEquals("fallback", isolation.execute(Observable.<String>error(new RuntimeException()),
+                () -> Observable.just("fallback"), samples::add).toBlocking().single());
+        // sampled only when trade is done
+        assertEquals(2, samples.size());
+        assertEquals(10, isolation.limit().limit());
+
+        // failed execution shrink limit
+        samples.get(1).call();
+        final int limit = isolation.limit().limit();
+        assertTrue(limit < 10);
+        samples.get(1).call();
+        assertEquals(limit, isolation.limit().limit());
+    }
+
+    @Test
+    public final void testTimeoutSampledOnce() {
+        final RequestIsolation isolation = isolation(10);
+        isolation._limitMode = ConcurrencyLimit.AIMD;
+        isolation._timeoutInMs = 10;
+        final List<Action0> samples = new ArrayList<>();
+
+        assertEquals("fallback", isolation.execute(Observable.just("normal").delay(1, TimeUnit.SECONDS),
+                () -> Observable.just("fallback"), samples::add).toBlocking().single());
+        // not sampled by timeout itself
+        assertEquals(10, isolation.limit().limit());
+        samples.get(0).call();
+        assertTrue(isolation.limit().limit() < 10);
+    }
+
+    @Test
+    public final void testRejectedNotSampled() {
+        final RequestIsolation isolation = isolation(1);
+        final List<Action0> samples = new ArrayList<>();
+
+        final Subscription running = isolation.execute(Observable.<String>never(), () -> Observable.just("fallback"),
+                samples::add).subscribe();
+        isolation.execute(Observable.just("normal"), () -> Observable.just("fallback"), samples::add)
+            .toBlocking().single();
+        assertEquals(1, samples.size());
+        running.unsubscribe();
+    }
+}
@@ -0,0 +1,45 @@
+package org.jocean.xharbor.relay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TraceSamplingTestCase {
+
+    @Test
+    public final void testLongestRouteWin() {
+        final TraceSampling sampling = new TraceSampling();
+        sampling.set("/api", 0, 0);
+        sampling.set("/api/order", 1.0, 0);
+
+        assertTrue(sampling.sample("/other"));
+        assertFalse(sampling.sample("/api/user"));
+        assertFalse(sampling.sample("/api"));
+        assertTrue(sampling.sample("/api/order/1"));
+        // prefix on '/' boundary only
+        assertTrue(sampling.sample("/apis"));
+
+        sampling.remove("/api");
+        assertTrue(sampling.sample("/api/user"));
+        assertSame(sampling.samplerOf("/"), sampling.samplerOf(null));
+    }
+
+    @Test
+    public final void testMaxPerSecond() {
+        final TraceSampling sampling = new TraceSampling();
+        sampling.set(TraceSampling.DEFAULT_ROUTE, 1.0, 10);
+
+        int sampled = 0;
+        for (int idx = 0; idx < 100; idx++) {
+            if (sampling.sample("/api")) {
+                sampled++;
+            }
+        }
+        // maybe cross second boundary
+        assertTrue(sampled >= 10 && sampled <= 20);
+        assertEquals(1, sampling.routes().size());
+    }
+}
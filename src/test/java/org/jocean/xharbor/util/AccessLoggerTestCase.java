@@ -0,0 +1,123 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import rx.functions.Action0;
+
+public class AccessLoggerTestCase {
+
+    private static AccessLogData settings(final File file) {
+        final AccessLogData data = new AccessLogData();
+        data._file = file.getAbsolutePath();
+        data._ringSize = 16;
+        return data;
+    }
+
+    @Test
+    public final void testLogToFile() throws Exception {
+        final File dir = Files.createTempDirectory("accesslog").toFile();
+        final File file = new File(dir, "access.log");
+        final AccessLogger logger = new AccessLogger();
+        logger._meterRegistry = new SimpleMeterRegistry();
+
+        assertFalse(logger.log(0, 0, "GET", "/", 200, "/.*", null, 0, 0, 0, 0));
+
+        final Action0 disable = logger.enable(settings(file));
+        assertTrue(logger.log(1000L, 12, "GET", "/api/中\t1", 200, "/api/.*", new URI("http://127.0.0.1:8080"),
+                100, 200, 110, 190));
+        // return after pending records written
+        disable.call();
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals("1000\t12\tGET\t/api/中 1\t200\t/api/.*\thttp://127.0.0.1:8080\t100\t200\t110\t190", lines.get(0));
+        assertFalse(logger.log(0, 0, "GET", "/", 200, "/.*", null, 0, 0, 0, 0));
+    }
+
+    // lines of file, empty if not exist (or rolled when reading)
+    private static List<String> linesOf(final File file) throws Exception {
+        try {
+            return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (final NoSuchFileException e) {
+            return Collections.<String>emptyList();
+        }
+    }
+
+    // written to file or rolled ones
+    private static void awaitWritten(final File dir, final String uri) throws Exception {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            for (final File file : dir.listFiles()) {
+                if (urisOf(file).contains(uri)) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError(uri + " not written to " + dir);
+    }
+
+    private static List<String> urisOf(final File file) throws Exception {
+        return linesOf(file).stream().map(line -> line.split("\t")).filter(fields -> fields.length > 3)
+                .map(fields -> fields[3]).collect(Collectors.toList());
+    }
+
+    @Test
+    public final void testRollFiles() throws Exception {
+        final File dir = Files.createTempDirectory("accesslog").toFile();
+        final File file = new File(dir, "access.log");
+        final AccessLogger logger = new AccessLogger();
+        logger._meterRegistry = new SimpleMeterRegistry();
+        final AccessLogData settings = settings(file);
+        // each record is about 34 bytes, roll after 2 records
+        settings._maxFileBytes = 60;
+        settings._maxFiles = 3;
+
+        final Action0 disable = logger.enable(settings);
+        for (int idx = 1; idx <= 7; idx++) {
+            assertTrue(logger.log(1000L, 1, "GET", "/r" + idx, 200, "/.*", null, 0, 0, 0, 0));
+            awaitWritten(dir, "/r" + idx);
+        }
+        disable.call();
+
+        assertEquals(Arrays.asList("/r7"), urisOf(file));
+        assertEquals(Arrays.asList("/r5", "/r6"), urisOf(new File(dir, "access.log.1")));
+        assertEquals(Arrays.asList("/r3", "/r4"), urisOf(new File(dir, "access.log.2")));
+        // oldest is deleted
+        assertFalse(new File(dir, "access.log.3").exists());
+    }
+
+    @Test
+    public final void testDisabledWhenWriteFailed() throws Exception {
+        final File dir = Files.createTempDirectory("accesslog").toFile();
+        final AccessLogger logger = new AccessLogger();
+        logger._meterRegistry = new SimpleMeterRegistry();
+
+        // directory can't be opened as file
+        final Action0 disable = logger.enable(settings(dir));
+        assertNotNull(disable);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (logger.log(0, 0, "GET", "/", 200, "/.*", null, 0, 0, 0, 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // fallback by caller
+        assertFalse(logger.log(0, 0, "GET", "/", 200, "/.*", null, 0, 0, 0, 0));
+        disable.call();
+    }
+}
@@ -0,0 +1,45 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.idiom.BeanFinder;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+
+import rx.Observable;
+
+public class BeanCacheTestCase {
+
+    @Test
+    public final void testResolveOnceUntilUnitChanged() {
+        final AtomicInteger lookups = new AtomicInteger(0);
+        final BeanCache cache = new BeanCache();
+        cache._finder = new BeanFinder() {
+            @Override
+            public <T> Observable<T> find(final Class<T> type) {
+                return find("default", type);
+            }
+            @Override
+            public <T> Observable<T> find(final String name, final Class<T> type) {
+                lookups.incrementAndGet();
+                return Observable.just(type.cast(name + lookups.get()));
+            }};
+
+        assertEquals("configs1", cache.find("configs", String.class).toBlocking().single());
+        assertSame(cache.find("configs", String.class).toBlocking().single(),
+                cache.find("configs", String.class).toBlocking().single());
+        assertEquals("default2", cache.find(String.class).toBlocking().single());
+        assertEquals(2, lookups.get());
+
+        final ApplicationContext unit = (ApplicationContext)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ApplicationContext.class}, (proxy, method, args) -> null);
+        cache.onApplicationEvent(new ContextClosedEvent(unit));
+        assertEquals("configs3", cache.find("configs", String.class).toBlocking().single());
+        assertEquals(3, lookups.get());
+    }
+}
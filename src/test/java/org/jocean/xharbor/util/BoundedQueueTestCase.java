@@ -0,0 +1,54 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BoundedQueueTestCase {
+
+    @Test
+    public final void testOfferFailedWhenFull() {
+        final BoundedQueue<Integer> queue = new BoundedQueue<>(3);
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+
+        final List<Integer> batch = new ArrayList<>();
+        assertEquals(2, queue.drainTo(batch, 2));
+        assertEquals(Arrays.asList(1, 2), batch);
+        assertEquals(1, queue.size());
+
+        assertTrue(queue.offer(5));
+        assertEquals(2, queue.drainTo(batch, 10));
+        assertEquals(Arrays.asList(1, 2, 3, 5), batch);
+        assertEquals(0, queue.drainTo(batch, 10));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public final void testConcurrentOffer() throws Exception {
+        final BoundedQueue<Integer> queue = new BoundedQueue<>(1000);
+        final Thread[] threads = new Thread[4];
+        for (int idx = 0; idx < threads.length; idx++) {
+            threads[idx] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    queue.offer(i);
+                }
+            });
+            threads[idx].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, queue.size());
+        assertEquals(1000, queue.drainTo(new ArrayList<>(), 2000));
+    }
+}
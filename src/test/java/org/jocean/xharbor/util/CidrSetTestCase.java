@@ -0,0 +1,57 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CidrSetTestCase {
+
+    @Test
+    public final void testIPv4Prefixes() {
+        final CidrSet cidrs = new CidrSet.Builder().addLines(Arrays.asList(
+                "# scanners",
+                "10.0.0.0/8",
+                "192.168.1.0/24",
+                "",
+                "1.2.3.4",
+                "bad/24",
+                "1.1.1.1/33")).build();
+
+        assertEquals(3, cidrs.size());
+        assertTrue(cidrs.contains("10.255.0.1"));
+        assertTrue(cidrs.contains("192.168.1.200"));
+        assertFalse(cidrs.contains("192.168.2.1"));
+        assertTrue(cidrs.contains("1.2.3.4"));
+        assertFalse(cidrs.contains("1.2.3.5"));
+        assertFalse(cidrs.contains((String)null));
+        assertFalse(cidrs.contains("unknown"));
+    }
+
+    @Test
+    public final void testShorterPrefixCoversLonger() {
+        final CidrSet.Builder builder = new CidrSet.Builder();
+        builder.add("172.16.1.0/24");
+        builder.add("172.16.0.0/12");
+        final CidrSet cidrs = builder.build();
+
+        assertTrue(cidrs.contains("172.16.1.1"));
+        assertTrue(cidrs.contains("172.31.255.255"));
+        assertFalse(cidrs.contains("172.32.0.0"));
+    }
+
+    @Test
+    public final void testIPv6() {
+        final CidrSet.Builder builder = new CidrSet.Builder();
+        assertTrue(builder.add("2001:db8::/32"));
+        final CidrSet cidrs = builder.build();
+
+        assertTrue(cidrs.contains("2001:db8:1::1"));
+        assertFalse(cidrs.contains("2001:db9::1"));
+        // v4 not matched by v6 block
+        assertFalse(cidrs.contains("32.1.13.184"));
+    }
+}
@@ -0,0 +1,71 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import rx.functions.Action0;
+
+public class ConfigViewTestCase {
+
+    @Test
+    public final void testPutAndRemove() {
+        final ConfigView view = new ConfigView();
+        assertSame(ConfigView.Settings.EMPTY, view.settingsOf("/api"));
+
+        final long version = view.version();
+        final Action0 remove = view.put("/api", "disable_dbs", "true");
+        assertNotEquals(version, view.version());
+        assertTrue(view.settingsOf("/api").getBoolean("disable_dbs", false));
+        assertFalse(view.settingsOf("/other").getBoolean("disable_dbs", false));
+
+        remove.call();
+        assertFalse(view.settingsOf("/api").getBoolean("disable_dbs", false));
+        assertSame(ConfigView.Settings.EMPTY, view.settingsOf("/api"));
+    }
+
+    @Test
+    public final void testRemoveOverriddenKeepNewer() {
+        final ConfigView view = new ConfigView();
+        final Action0 remove1 = view.put("/api", "timeout", "100");
+        final Action0 remove2 = view.put("/api", "timeout", "200");
+        remove1.call();
+        assertEquals(200, view.settingsOf("/api").getInt("timeout", 0));
+        remove2.call();
+        assertEquals(0, view.settingsOf("/api").getInt("timeout", 0));
+    }
+
+    @Test
+    public final void testTypedDefaults() {
+        final ConfigView view = new ConfigView();
+        view.put("/api", "max", "abc");
+        assertEquals(7, view.settingsOf("/api").getInt("max", 7));
+        assertEquals(7L, view.settingsOf("/api").getLong("max", 7L));
+        assertEquals("abc", view.settingsOf("/api").getString("max", null));
+        assertTrue(view.settingsOf("/api").getBoolean("none", true));
+    }
+
+    @Test
+    public final void testWatchOnlyOwnRoute() {
+        final ConfigView view = new ConfigView();
+        final List<ConfigView.Settings> changes = new ArrayList<>();
+        final Action0 unwatch = view.watch("/api", changes::add);
+        assertEquals(1, changes.size());
+
+        view.put("/api", "disable_dbs", "true");
+        view.put("/other", "disable_dbs", "true");
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(1).getBoolean("disable_dbs", false));
+
+        unwatch.call();
+        view.put("/api", "disable_dbs", "false");
+        assertEquals(2, changes.size());
+    }
+}
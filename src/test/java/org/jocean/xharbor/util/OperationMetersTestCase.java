@@ -0,0 +1,76 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OperationMetersTestCase {
+
+    @Test
+    public final void testFactoryCacheAndRecord() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final OperationMeters.Factory factory = new OperationMeters.Factory("test", "test", null, registry, 1);
+
+        final OperationMeters api = factory.get("/api");
+        assertSame(api, factory.get("/api"));
+        // beyond max cached: build each time, but same registered meters
+        assertNotSame(factory.get("/other"), factory.get("/other"));
+
+        api.record(1000, 10, 20);
+        factory.get("/other").record(2000, 30, 40);
+        factory.get("/other").record(2000, 30, 40);
+        assertEquals(1, registry.get("test.duration").tag("operation", "/api").timer().count());
+        assertEquals(2, registry.get("test.duration").tag("operation", "/other").timer().count());
+        assertEquals(60.0, registry.get("test.inbound").tag("operation", "/other").summary().totalAmount(), 0.0);
+        assertEquals(20.0, registry.get("test.outbound").tag("operation", "/api").summary().totalAmount(), 0.0);
+    }
+
+    @Test
+    public final void testByPathResolveOnceAndBounded() {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final AtomicInteger resolves = new AtomicInteger(0);
+        final OperationMeters.ByPath byPath = new OperationMeters.ByPath(path -> {
+                resolves.incrementAndGet();
+                return path.startsWith("/api/") ? "/api/" : "httpin";
+            }, new OperationMeters.Factory("test", "test", null, registry, 16), 4);
+
+        final OperationMeters meters = byPath.get("/api/users");
+        assertEquals("/api/", meters.operation());
+        assertSame(meters, byPath.get("/api/users"));
+        assertEquals(1, resolves.get());
+        // other path with same operation share meters
+        assertSame(meters, byPath.get("/api/orders"));
+        assertEquals("httpin", byPath.get("/").operation());
+
+        for (int idx = 0; idx < 100; idx++) {
+            byPath.get("/api/" + idx);
+        }
+        assertEquals(4, byPath.size());
+    }
+
+    @Test
+    public final void testByPathEvictLeastRecentlyUsed() {
+        final AtomicInteger resolves = new AtomicInteger(0);
+        final OperationMeters.ByPath byPath = new OperationMeters.ByPath(path -> {
+                resolves.incrementAndGet();
+                return path;
+            }, new OperationMeters.Factory("test", "test", null, new SimpleMeterRegistry(), 16), 2);
+
+        byPath.get("/a");
+        byPath.get("/b");
+        // "/a" recently used, "/b" evicted by "/c"
+        byPath.get("/a");
+        byPath.get("/c");
+        assertEquals(3, resolves.get());
+        byPath.get("/a");
+        assertEquals(3, resolves.get());
+        byPath.get("/b");
+        assertEquals(4, resolves.get());
+    }
+}
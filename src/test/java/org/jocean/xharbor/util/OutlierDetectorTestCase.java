@@ -0,0 +1,158 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import rx.functions.Action0;
+
+public class OutlierDetectorTestCase {
+
+    private static OutlierDetector.Settings settings(final int consecutiveFailures, final int errorPercentage,
+            final long baseEjectionMs) {
+        return new OutlierDetector.Settings() {
+            @Override
+            public int consecutiveFailures() {
+                return consecutiveFailures;
+            }
+            @Override
+            public int errorPercentage() {
+                return errorPercentage;
+            }
+            @Override
+            public int minRequests() {
+                return 10;
+            }
+            @Override
+            public long baseEjectionMs() {
+                return baseEjectionMs;
+            }
+            @Override
+            public long maxEjectionMs() {
+                return baseEjectionMs * 4;
+            }
+            @Override
+            public int maxProbes() {
+                return 2;
+            }};
+    }
+
+    @Test
+    public final void testEjectAfterConsecutiveFailures() {
+        final OutlierDetector detector = new OutlierDetector("test", settings(3, 0, 60 * 1000L));
+
+        detector.onFailure();
+        detector.onFailure();
+        detector.onSuccess();
+        detector.onFailure();
+        detector.onFailure();
+        assertTrue(detector.isAvailable());
+
+        detector.onFailure();
+        assertFalse(detector.isAvailable());
+    }
+
+    @Test
+    public final void testEjectByErrorPercentage() {
+        final OutlierDetector detector = new OutlierDetector("test", settings(0, 50, 60 * 1000L));
+
+        for (int idx = 0; idx < 4; idx++) {
+            detector.onSuccess();
+            detector.onFailure();
+        }
+        // 8 requests less than min requests
+        assertTrue(detector.isAvailable());
+
+        detector.onSuccess();
+        detector.onFailure();
+        assertFalse(detector.isAvailable());
+    }
+
+    @Test
+    public final void testProbeThenRestore() throws InterruptedException {
+        final OutlierDetector detector = new OutlierDetector("test", settings(1, 0, 50));
+
+        detector.onFailure();
+        assertFalse(detector.isAvailable());
+
+        Thread.sleep(100);
+        // half-open: at most 2 probes
+        assertTrue(detector.isAvailable());
+        final Action0 probe1 = detector.beginRequest();
+        final Action0 probe2 = detector.beginRequest();
+        assertFalse(detector.isAvailable());
+        // no probe slot left
+        assertNull(detector.beginRequest());
+
+        probe1.call();
+        detector.onSuccess();
+        probe2.call();
+        detector.onSuccess();
+        assertTrue(detector.isAvailable());
+        assertTrue(detector.toString().startsWith("HEALTHY"));
+    }
+
+    @Test
+    public final void testProbeFailedThenEjectLonger() throws InterruptedException {
+        final OutlierDetector detector = new OutlierDetector("test", settings(1, 0, 50));
+
+        detector.onFailure();
+        Thread.sleep(80);
+        assertTrue(detector.isAvailable());
+
+        // probe failed, eject for 100ms
+        detector.onFailure();
+        Thread.sleep(80);
+        assertFalse(detector.isAvailable());
+        Thread.sleep(60);
+        assertTrue(detector.isAvailable());
+    }
+
+    @Test
+    public final void testConcurrentProbesNotExceedMaxProbes() throws Exception {
+        final OutlierDetector detector = new OutlierDetector("test", settings(1, 0, 50));
+        detector.onFailure();
+        Thread.sleep(80);
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Queue<Action0> probes = new ConcurrentLinkedQueue<>();
+        for (int idx = 0; idx < threads; idx++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    final Action0 probe = detector.beginRequest();
+                    if (null != probe) {
+                        probes.add(probe);
+                    }
+                } catch (final InterruptedException e) {
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        assertEquals(2, probes.size());
+
+        // released slot reserved by next request
+        probes.poll().call();
+        final Action0 probe = detector.beginRequest();
+        assertNotNull(probe);
+        assertNull(detector.beginRequest());
+        // end more than once release only one slot
+        probe.call();
+        probe.call();
+        assertNotNull(detector.beginRequest());
+        assertNull(detector.beginRequest());
+    }
+}
@@ -0,0 +1,105 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.jocean.xharbor.api.RelayMemo;
+import org.jocean.xharbor.api.RelayMemo.RESULT;
+import org.jocean.xharbor.api.RoutingInfo;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import rx.functions.Action0;
+
+public class RelayMemoBuilderForHistogramTestCase {
+
+    private static RoutingInfo routing(final String path) {
+        return new RoutingInfo() {
+            @Override
+            public String getMethod() {
+                return "GET";
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }};
+    }
+
+    private static LatencyHistogramData settings(final int maxRoutes) {
+        final LatencyHistogramData data = new LatencyHistogramData();
+        data._highestMs = 10000;
+        data._intervalSeconds = 3600;
+        data._maxRoutes = maxRoutes;
+        return data;
+    }
+
+    @Test
+    public final void testRecordAndRoll() {
+        final StatsImpl stats = new StatsImpl();
+        final HashedWheelTimer timer = new HashedWheelTimer();
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try {
+            final RelayMemoBuilderForHistogram builder = new RelayMemoBuilderForHistogram(stats, timer);
+            builder._meterRegistry = registry;
+            assertNull(builder.build(null, routing("/api")));
+
+            final Action0 disable = builder.enable(settings(16));
+            final RelayMemo memo = builder.build(null, routing("/api"));
+            assertSame(memo, builder.build(null, routing("/api")));
+            for (int ttl = 1; ttl <= 100; ttl++) {
+                memo.incBizResult(RESULT.RELAY_SUCCESS, ttl);
+            }
+            // above highest is recorded as highest
+            memo.incBizResult(RESULT.RELAY_SUCCESS, 20000);
+
+            // not rolled yet
+            assertTrue(stats.getRoutingRules().isEmpty());
+            builder.recording().roll();
+
+            final Map<String, Object> api = stats.getRoutingRules().get("path=/api,category=RESULT,hdr=RELAY_SUCCESS");
+            assertNotNull(api);
+            assertEquals(101L, api.get("count"));
+            assertEquals(51L, api.get("p50"));
+            assertEquals(100L, api.get("p99"));
+            assertTrue((Long)api.get("max") >= 10000L);
+            assertEquals(101L, stats.getRoutingRules().get("path=all,category=RESULT,hdr=RELAY_SUCCESS").get("count"));
+            assertEquals(51.0, registry.get("jocean.xharbor.relay.latency")
+                    .tags("path", "/api", "ttl", "RELAY_SUCCESS", "stat", "p50").gauge().value(), 0.0);
+
+            // next interval is empty
+            builder.recording().roll();
+            assertNull(stats.getRoutingRules().get("path=/api,category=RESULT,hdr=RELAY_SUCCESS"));
+
+            disable.call();
+            assertNull(builder.build(null, routing("/api")));
+            assertTrue(registry.getMeters().isEmpty());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Test
+    public final void testRoutesBeyondMaxRecordIntoAll() {
+        final HashedWheelTimer timer = new HashedWheelTimer();
+        final RelayMemoBuilderForHistogram builder = new RelayMemoBuilderForHistogram(null, timer);
+        builder._meterRegistry = new SimpleMeterRegistry();
+        final Action0 disable = builder.enable(settings(1));
+        try {
+            final RelayMemo api = builder.build(null, routing("/api"));
+            final RelayMemo other = builder.build(null, routing("/other"));
+            assertSame(other, builder.build(null, routing("/more")));
+            api.incBizResult(RESULT.RELAY_SUCCESS, 10);
+            other.incBizResult(RESULT.RELAY_SUCCESS, 10);
+        } finally {
+            disable.call();
+            timer.stop();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.jocean.xharbor.api.RelayMemo;
+import org.jocean.xharbor.api.RelayMemo.RESULT;
+import org.jocean.xharbor.api.RelayMemo.STEP;
+import org.jocean.xharbor.api.RoutingInfo;
+import org.junit.Test;
+
+public class RelayMemoBuilderForStatsTestCase {
+
+    private static RoutingInfo routing(final String path) {
+        return new RoutingInfo() {
+            @Override
+            public String getMethod() {
+                return "GET";
+            }
+
+            @Override
+            public String getPath() {
+                return path;
+            }};
+    }
+
+    @Test
+    public final void testCountersMergedWhenRead() throws Exception {
+        final StatsImpl stats = new StatsImpl();
+        final RelayMemoBuilderForStats builder = new RelayMemoBuilderForStats(stats);
+        assertSame(builder.build(null, routing("/api")), builder.build(null, routing("/api")));
+
+        final int threads = 4;
+        final int times = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int idx = 0; idx < threads; idx++) {
+            new Thread(() -> {
+                final RelayMemo memo = builder.build(null, routing("/api"));
+                for (int cnt = 0; cnt < times; cnt++) {
+                    memo.beginBizStep(STEP.ROUTING);
+                    memo.endBizStep(STEP.ROUTING, 1);
+                    memo.incBizResult(RESULT.RELAY_SUCCESS, 2);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        builder.build(null, routing("/other:x")).incBizResult(RESULT.HTTP_SERVER_ERROR, 5);
+
+        final Map<String, Map<String, Object>> rules = stats.getRoutingRules();
+        final Map<String, Object> api = rules.get("path=/api");
+        assertEquals(4000L, api.get("RELAY_SUCCESS"));
+        assertEquals(8000L, api.get("RELAY_SUCCESS_TTL"));
+        // no step in progress
+        assertNull(api.get("ROUTING"));
+        assertEquals(1L, rules.get("path=/other-x").get("HTTP_SERVER_ERROR"));
+
+        final Map<String, Object> all = rules.get("all");
+        assertEquals(4000L, all.get("RELAY_SUCCESS"));
+        assertEquals(1L, all.get("HTTP_SERVER_ERROR"));
+    }
+
+    @Test
+    public final void testPathsNormalizedToSameNameShareMemo() throws Exception {
+        final StatsImpl stats = new StatsImpl();
+        final RelayMemoBuilderForStats builder = new RelayMemoBuilderForStats(stats);
+        assertSame(builder.build(null, routing("/a:b")), builder.build(null, routing("/a-b")));
+
+        builder.build(null, routing("/a:b")).incBizResult(RESULT.RELAY_SUCCESS, 1);
+        builder.build(null, routing("/a-b")).incBizResult(RESULT.RELAY_SUCCESS, 1);
+        assertEquals(2L, stats.getRoutingRules().get("path=/a-b").get("RELAY_SUCCESS"));
+    }
+
+    @Test
+    public final void testCompositeBuilderUseSingleMemoDirectly() throws Exception {
+        final RelayMemoBuilderForStats stats = new RelayMemoBuilderForStats(new StatsImpl());
+        final RelayMemo.Builder builder = RelayMemo.Utils.compositeBuilder(stats, null);
+        assertSame(stats.build(null, routing("/api")), builder.build(null, routing("/api")));
+    }
+
+    @Test
+    public final void testStripedTTLMemoMergedWhenRead() throws Exception {
+        final RelayMemoBuilderForStats.StripedTIMemo memo = new RelayMemoBuilderForStats.StripedTIMemo();
+        final int threads = 4;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int idx = 0; idx < threads; idx++) {
+            new Thread(() -> {
+                for (int cnt = 0; cnt < 1000; cnt++) {
+                    memo.recordInterval(1);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        final Map<String, Integer> counters = new HashMap<>();
+        memo.call((name, counter) -> assertNull(counters.put(name, counter)));
+        int total = 0;
+        for (final Integer counter : counters.values()) {
+            total += counter;
+        }
+        assertEquals(4000, total);
+    }
+}
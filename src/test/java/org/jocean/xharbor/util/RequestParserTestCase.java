@@ -0,0 +1,79 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jocean.xharbor.api.ParsedRequest;
+import org.junit.Test;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.QueryStringDecoder;
+
+public class RequestParserTestCase {
+
+    private static HttpRequest request(final String uri) {
+        return new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+    }
+
+    @Test
+    public final void testPercentDecodedSameAsQueryStringDecoder() {
+        final String[] uris = new String[]{
+            "/api/users",
+            "/api/a%20b/%E4%B8%AD%E6%96%87?name=%E4%B8%AD",
+            "/api/a+b%2Fc#frag",
+            "/api/%41%42;jsessionid=1?q=1",
+        };
+        for (final String uri : uris) {
+            assertEquals(uri, new QueryStringDecoder(uri).path(), RequestParser.parse(request(uri)).path());
+        }
+
+        final ParsedRequest parsed = RequestParser.parse(request("/api/a%20b/%E4%B8%AD;v=1?name=x#top"));
+        assertEquals("GET", parsed.getMethod());
+        assertEquals("/api/a b/中;v=1", parsed.path());
+        assertEquals("/api/a b/中", parsed.getPath());
+        assertEquals("name=x", parsed.query());
+    }
+
+    @Test
+    public final void testUndecodedPathReturnedAsIs() {
+        final String uri = "/api/users";
+        assertSame(uri, RequestParser.decodePath(uri, uri.length()));
+        assertEquals("", RequestParser.parse(request(uri)).query());
+    }
+
+    @Test
+    public final void testMalformedEscapeKeptAsIs() {
+        assertEquals("/a%zzb", RequestParser.parse(request("/a%zzb")).path());
+        assertEquals("/a%4", RequestParser.parse(request("/a%4?x=1")).path());
+        assertEquals("/a b%", RequestParser.parse(request("/a%20b%")).path());
+        assertEquals("/%G1A", RequestParser.parse(request("/%G1%41")).path());
+    }
+
+    @Test
+    public final void testPeeripIsFirstOfForwardedFor() {
+        final HttpRequest req = request("/api");
+        req.headers().set("x-forwarded-for", "10.0.0.1,192.168.1.1, 172.16.0.1");
+        assertEquals("10.0.0.1", RequestParser.parse(req).peerip());
+
+        req.headers().set("x-forwarded-for", "10.0.0.2");
+        assertEquals("10.0.0.2", RequestParser.parse(req).peerip());
+    }
+
+    @Test
+    public final void testMissingPeerip() {
+        assertNull(RequestParser.parse(request("/api")).peerip());
+        assertNull(RequestParser.firstIp(null));
+    }
+
+    @Test
+    public final void testParsedOfWithoutCtx() {
+        final HttpRequest req = request("/api?x=1");
+        assertNull(RequestParser.parsedOf(null, null));
+        final ParsedRequest parsed = RequestParser.parsedOf(null, req);
+        assertEquals("/api", parsed.path());
+    }
+}
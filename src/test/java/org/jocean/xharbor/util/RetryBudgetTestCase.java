@@ -0,0 +1,39 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RetryBudgetTestCase {
+
+    private static int retries(final RetryBudget budget, final int times) {
+        int retries = 0;
+        for (int idx = 0; idx < times; idx++) {
+            if (budget.tryRetry()) {
+                retries++;
+            }
+        }
+        return retries;
+    }
+
+    @Test
+    public final void testMinRetriesWithoutRequest() {
+        final RetryBudget budget = new RetryBudget(20, 1);
+        // 1 per second within 10 seconds window
+        assertEquals(10, retries(budget, 100));
+    }
+
+    @Test
+    public final void testRetriesCappedByPercentOfRequests() {
+        final RetryBudget budget = new RetryBudget(20, 0);
+        for (int idx = 0; idx < 100; idx++) {
+            budget.onRequest();
+        }
+        assertEquals(20, retries(budget, 100));
+
+        for (int idx = 0; idx < 10; idx++) {
+            budget.onRequest();
+        }
+        assertEquals(2, retries(budget, 100));
+    }
+}
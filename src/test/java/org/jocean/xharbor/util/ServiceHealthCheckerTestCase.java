@@ -0,0 +1,138 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+public class ServiceHealthCheckerTestCase {
+
+    private static ServiceHealthChecker.Settings settings(final int healthyThreshold, final int unhealthyThreshold) {
+        return new ServiceHealthChecker.Settings() {
+            @Override
+            public String path() {
+                return "/health";
+            }
+            @Override
+            public long intervalMs() {
+                return 1000;
+            }
+            @Override
+            public long timeoutMs() {
+                return 1000;
+            }
+            @Override
+            public int healthyThreshold() {
+                return healthyThreshold;
+            }
+            @Override
+            public int unhealthyThreshold() {
+                return unhealthyThreshold;
+            }};
+    }
+
+    // record marked down status only
+    static class MarkedMemo extends ServiceMemoImpl {
+        @Override
+        public void markServiceDownStatus(final URI uri, final boolean isDown) {
+            this._marks.add(isDown);
+        }
+
+        @Override
+        void markHealthDown(final URI uri, final boolean isDown) {
+            super.markHealthDown(uri, isDown);
+            this._healthMarks.add(isDown);
+        }
+
+        final List<Boolean> _marks = new ArrayList<>();
+        final List<Boolean> _healthMarks = new ArrayList<>();
+    }
+
+    @Test
+    public final void testMarkDownOnlyWhenUpToDown() {
+        final MarkedMemo memo = new MarkedMemo();
+        final ServiceHealthChecker.Probe probe =
+                new ServiceHealthChecker(null, memo).new Probe(URI.create("http://127.0.0.1:8080"), null);
+        final ServiceHealthChecker.Settings settings = settings(2, 2);
+
+        probe.onResult(settings, false, "refused");
+        assertEquals(0, memo._healthMarks.size());
+        for (int idx = 0; idx < 5; idx++) {
+            probe.onResult(settings, false, "refused");
+        }
+        // marked once, not by each failed probe, and never as time limited ejection
+        assertEquals(1, memo._healthMarks.size());
+        assertEquals(true, memo._healthMarks.get(0));
+        assertEquals(0, memo._marks.size());
+
+        probe.onResult(settings, true, "status 200");
+        assertEquals(1, memo._healthMarks.size());
+        probe.onResult(settings, true, "status 200");
+        probe.onResult(settings, true, "status 200");
+        assertEquals(2, memo._healthMarks.size());
+        assertEquals(false, memo._healthMarks.get(1));
+        // passive ejection restored too
+        assertEquals(1, memo._marks.size());
+        assertEquals(false, memo._marks.get(0));
+
+        // down again after unhealthy threshold
+        probe.onResult(settings, false, "status 500");
+        probe.onResult(settings, false, "status 500");
+        assertEquals(3, memo._healthMarks.size());
+        assertEquals(true, memo._healthMarks.get(2));
+    }
+
+    @Test
+    public final void testKeepDownUntilHealthy() {
+        final URI uri = URI.create("http://127.0.0.1:8080");
+        final ServiceMemoImpl memo = new ServiceMemoImpl();
+        final ServiceHealthChecker.Probe probe = new ServiceHealthChecker(null, memo).new Probe(uri, null);
+        final ServiceHealthChecker.Settings settings = settings(2, 1);
+
+        probe.onResult(settings, false, "refused");
+        assertTrue(memo.isServiceDown(uri));
+        // outlier detector restored (as ejection expired), still down by health check
+        memo.markServiceDownStatus(uri, false);
+        assertTrue(memo.isServiceDown(uri));
+
+        probe.onResult(settings, true, "status 200");
+        assertTrue(memo.isServiceDown(uri));
+        probe.onResult(settings, true, "status 200");
+        assertFalse(memo.isServiceDown(uri));
+    }
+
+    @Test
+    public final void testResetClearDown() {
+        final URI uri = URI.create("http://127.0.0.1:8080");
+        final ServiceMemoImpl memo = new ServiceMemoImpl();
+        final ServiceHealthChecker.Probe probe = new ServiceHealthChecker(null, memo).new Probe(uri, null);
+
+        probe.onResult(settings(1, 1), false, "refused");
+        assertTrue(memo.isServiceDown(uri));
+        // unwatched or health check disabled
+        probe.reset();
+        assertFalse(memo.isServiceDown(uri));
+        assertEquals(0, memo.getAllServiceStatus()[0].indexOf(uri.toString()));
+        assertFalse(memo.getAllServiceStatus()[0].contains("health:"));
+    }
+
+    @Test
+    public final void testHostWithNonDefaultPort() {
+        assertEquals("127.0.0.1:8080", ServiceHealthChecker.hostOf(URI.create("http://127.0.0.1:8080")));
+        assertEquals("example.com", ServiceHealthChecker.hostOf(URI.create("http://example.com:80")));
+        assertEquals("example.com", ServiceHealthChecker.hostOf(URI.create("http://example.com")));
+        assertEquals("example.com", ServiceHealthChecker.hostOf(URI.create("https://example.com:443")));
+        assertEquals("example.com:80", ServiceHealthChecker.hostOf(URI.create("https://example.com:80")));
+
+        final ServiceHealthChecker.Probe probe =
+                new ServiceHealthChecker(null, new MarkedMemo()).new Probe(URI.create("http://10.0.0.1:9090"), null);
+        assertEquals("10.0.0.1:9090", probe.buildRequest(settings(1, 1)).headers().get(HttpHeaderNames.HOST));
+    }
+}
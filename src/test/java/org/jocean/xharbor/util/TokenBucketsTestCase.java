@@ -0,0 +1,45 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketsTestCase {
+
+    @Test
+    public final void testBurstThenRefill() {
+        final TokenBuckets buckets = new TokenBuckets(10, 5, 1024);
+        final long now = 0;
+        for (int idx = 0; idx < 5; idx++) {
+            assertTrue(buckets.tryAcquire("1.2.3.4", now));
+        }
+        assertFalse(buckets.tryAcquire("1.2.3.4", now));
+        // other key has its own bucket
+        assertTrue(buckets.tryAcquire("5.6.7.8", now));
+
+        // 10 per second: one token after 100ms
+        assertTrue(buckets.tryAcquire("1.2.3.4", now + TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(buckets.tryAcquire("1.2.3.4", now + TimeUnit.MILLISECONDS.toNanos(100)));
+
+        // refill capped by burst
+        final long later = now + TimeUnit.SECONDS.toNanos(10);
+        for (int idx = 0; idx < 5; idx++) {
+            assertTrue(buckets.tryAcquire("1.2.3.4", later));
+        }
+        assertFalse(buckets.tryAcquire("1.2.3.4", later));
+    }
+
+    @Test
+    public final void testKeysBounded() {
+        final TokenBuckets buckets = new TokenBuckets(1, 1, 64 * 16);
+        for (int idx = 0; idx < 100000; idx++) {
+            buckets.tryAcquire("key" + idx, 0);
+        }
+        assertTrue(buckets.size() <= 64 * 16);
+        assertEquals(1, buckets.retryAfterSeconds());
+    }
+}
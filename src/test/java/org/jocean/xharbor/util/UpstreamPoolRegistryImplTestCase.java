@@ -0,0 +1,304 @@
+package org.jocean.xharbor.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jocean.http.client.HttpClient.HttpInitiator;
+import org.jocean.xharbor.api.UpstreamPool;
+import org.junit.Test;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Func0;
+
+public class UpstreamPoolRegistryImplTestCase {
+
+    // timer's tasks are run by test manually
+    static class ManualTimer implements Timer {
+        @Override
+        public Timeout newTimeout(final TimerTask task, final long delay, final TimeUnit unit) {
+            final ManualTimeout timeout = new ManualTimeout(this, task);
+            this._timeouts.add(timeout);
+            return timeout;
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            return Collections.emptySet();
+        }
+
+        void runAll() throws Exception {
+            final List<ManualTimeout> timeouts = new ArrayList<>(this._timeouts);
+            this._timeouts.clear();
+            for (final ManualTimeout timeout : timeouts) {
+                if (!timeout.isCancelled()) {
+                    timeout._expired = true;
+                    timeout.task().run(timeout);
+                }
+            }
+        }
+
+        private final List<ManualTimeout> _timeouts = new ArrayList<>();
+    }
+
+    static class ManualTimeout implements Timeout {
+        ManualTimeout(final Timer timer, final TimerTask task) {
+            this._timer = timer;
+            this._task = task;
+        }
+
+        @Override
+        public Timer timer() {
+            return this._timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return this._task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this._expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this._cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            this._cancelled = true;
+            return true;
+        }
+
+        private final Timer _timer;
+        private final TimerTask _task;
+        private volatile boolean _expired = false;
+        private volatile boolean _cancelled = false;
+    }
+
+    static class Settings implements UpstreamPool.Settings {
+        @Override
+        public int maxTotal() {
+            return this._maxTotal;
+        }
+
+        @Override
+        public int maxIdle() {
+            return this._maxIdle;
+        }
+
+        @Override
+        public long idleTimeoutMs() {
+            return this._idleTimeoutMs;
+        }
+
+        @Override
+        public long maxWaitMs() {
+            return 0;
+        }
+
+        @Override
+        public int warmupCount() {
+            return 0;
+        }
+
+        int _maxTotal = -1;
+        int _maxIdle = -1;
+        long _idleTimeoutMs = 1000;
+    }
+
+    // initiator over channel, close() only count: HttpClient recycle channel itself
+    private static HttpInitiator initiator(final Channel channel, final AtomicInteger closed) {
+        return (HttpInitiator)Proxy.newProxyInstance(HttpInitiator.class.getClassLoader(),
+                new Class<?>[]{HttpInitiator.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "transport":
+                        return channel;
+                    case "close":
+                        closed.incrementAndGet();
+                        return null;
+                    case "toString":
+                        return "initiator of " + channel;
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    // HttpClient stand-in: reuse recycled channels in order
+    private static Func0<Observable<? extends HttpInitiator>> connector(final List<Channel> channels, final AtomicInteger closed) {
+        return () -> {
+            final Channel channel = channels.isEmpty() ? new EmbeddedChannel() : channels.remove(0);
+            return Observable.just(initiator(channel, closed));
+        };
+    }
+
+    private static HttpInitiator acquire(final UpstreamPool pool, final Func0<Observable<? extends HttpInitiator>> connector) {
+        final AtomicReference<HttpInitiator> ref = new AtomicReference<>();
+        pool.acquire(connector).subscribe(ref::set);
+        return ref.get();
+    }
+
+    private static UpstreamPool pool(final UpstreamPoolRegistryImpl registry, final Settings settings) {
+        return registry.retain(URI.create("http://127.0.0.1:8080"), settings);
+    }
+
+    @Test
+    public final void testReleaseRetainIdleThenReuse() {
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(new ManualTimer());
+        final UpstreamPool pool = pool(registry, new Settings());
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final List<Channel> channels = new ArrayList<>();
+        channels.add(channel);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        final HttpInitiator first = acquire(pool, connector(channels, closed));
+        pool.release(first);
+        // release recycle initiator by close
+        assertEquals(1, closed.get());
+        assertTrue(registry.getPools()[0].contains("idle=1"));
+
+        channels.add(channel);
+        final HttpInitiator second = acquire(pool, connector(channels, closed));
+        assertSame(channel, second.transport());
+        assertTrue(registry.getPools()[0].contains("idle=0"));
+        assertTrue(registry.getPools()[0].contains("hits=1,misses=1"));
+    }
+
+    @Test
+    public final void testIdleTimeoutNotCloseReacquiredChannel() throws Exception {
+        final ManualTimer timer = new ManualTimer();
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(timer);
+        final UpstreamPool pool = pool(registry, new Settings());
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final List<Channel> channels = new ArrayList<>();
+        channels.add(channel);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        pool.release(acquire(pool, connector(channels, closed)));
+        // HttpClient hand recycled channel to next trade
+        channels.add(channel);
+        final HttpInitiator inuse = acquire(pool, connector(channels, closed));
+        assertNotNull(inuse);
+
+        timer.runAll();
+        assertTrue(channel.isActive());
+
+        // idle timeout close idle channel
+        pool.release(inuse);
+        timer.runAll();
+        assertFalse(channel.isActive());
+        assertTrue(registry.getPools()[0].contains("idleCloses=1"));
+    }
+
+    @Test
+    public final void testChannelClosingAsIdleNotAcquired() throws Exception {
+        final ManualTimer timer = new ManualTimer();
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(timer);
+        final UpstreamPool pool = pool(registry, new Settings());
+        final EmbeddedChannel stale = new EmbeddedChannel();
+        final EmbeddedChannel fresh = new EmbeddedChannel();
+        final List<Channel> channels = new ArrayList<>();
+        channels.add(stale);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        pool.release(acquire(pool, connector(channels, closed)));
+        timer.runAll();
+
+        // HttpClient hand out channel before it's close processed, pool connect again
+        channels.add(stale);
+        channels.add(fresh);
+        final HttpInitiator initiator = acquire(pool, connector(channels, closed));
+        assertSame(fresh, initiator.transport());
+    }
+
+    @Test
+    public final void testMaxIdleCloseExceeded() {
+        final Settings settings = new Settings();
+        settings._maxIdle = 1;
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(new ManualTimer());
+        final UpstreamPool pool = pool(registry, settings);
+        final EmbeddedChannel channel1 = new EmbeddedChannel();
+        final EmbeddedChannel channel2 = new EmbeddedChannel();
+        final List<Channel> channels = new ArrayList<>();
+        channels.add(channel1);
+        channels.add(channel2);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        final HttpInitiator initiator1 = acquire(pool, connector(channels, closed));
+        final HttpInitiator initiator2 = acquire(pool, connector(channels, closed));
+        pool.release(initiator1);
+        pool.release(initiator2);
+        assertTrue(channel1.isActive());
+        assertFalse(channel2.isActive());
+        assertEquals(2, closed.get());
+    }
+
+    @Test
+    public final void testMaxTotalWaitSlot() {
+        final Settings settings = new Settings();
+        settings._maxTotal = 1;
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(new ManualTimer());
+        final UpstreamPool pool = pool(registry, settings);
+        final AtomicInteger closed = new AtomicInteger(0);
+        final Func0<Observable<? extends HttpInitiator>> connector = connector(new ArrayList<>(), closed);
+
+        final HttpInitiator first = acquire(pool, connector);
+        final AtomicReference<HttpInitiator> waited = new AtomicReference<>();
+        final Subscription subscription = pool.acquire(connector).subscribe(waited::set);
+        assertNull(waited.get());
+        assertTrue(registry.getPools()[0].contains("waiting=1"));
+
+        // slot handed to waiter directly
+        pool.release(first);
+        assertNotNull(waited.get());
+        assertTrue(registry.getPools()[0].contains("inuse=1"));
+        subscription.unsubscribe();
+    }
+
+    @Test
+    public final void testDiscardNotRetainIdle() {
+        final Settings settings = new Settings();
+        settings._maxTotal = 1;
+        final UpstreamPoolRegistryImpl registry = new UpstreamPoolRegistryImpl(new ManualTimer());
+        final UpstreamPool pool = pool(registry, settings);
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final List<Channel> channels = new ArrayList<>();
+        channels.add(channel);
+        final AtomicInteger closed = new AtomicInteger(0);
+
+        pool.discard(acquire(pool, connector(channels, closed)));
+        assertFalse(channel.isActive());
+        assertEquals(1, closed.get());
+        assertTrue(registry.getPools()[0].contains("inuse=0,idle=0"));
+
+        // slot is freed
+        assertNotNull(acquire(pool, connector(channels, closed)));
+    }
+}